@@ -0,0 +1,157 @@
+package com.github.menglanyan.airline_booking.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Every kind of background work gets its own bounded pool, so a slow SMTP server holding up ticket mails
+// can't starve welcome mails or anything else, and a backlog shows up in metrics instead of in memory.
+// Per executor (tag "executor"): async.executor.queued and async.executor.active gauges, async.task.wait
+// (time in the queue) and async.task.execution timers, and an async.task.rejected counter.
+// Scheduled jobs are not covered here, they share Boot's scheduler sized by spring.task.scheduling.pool.size.
+@Configuration
+@RequiredArgsConstructor
+public class AsyncConfig {
+
+    public static final String TICKET_MAIL_EXECUTOR = "ticketMailExecutor";
+
+    public static final String WELCOME_MAIL_EXECUTOR = "welcomeMailExecutor";
+
+    // The name @Async falls back to when no executor is given
+    public static final String BACKGROUND_EXECUTOR = "taskExecutor";
+
+    // Spring MVC runs StreamingResponseBody responses (booking exports) on the executor with this name.
+    // Boot only creates its own when no other executor exists, so it has to be defined here too.
+    public static final String WEB_ASYNC_EXECUTOR = "applicationTaskExecutor";
+
+    // BCrypt hashing and verification for login, registration and password changes
+    public static final String PASSWORD_HASHING_EXECUTOR = "passwordHashingExecutor";
+
+    // Loads the flight search index in id ranges, see FlightSearchIndex
+    public static final String FLIGHT_INDEX_EXECUTOR = "flightIndexExecutor";
+
+    // Smaller ranges than threads, so one range full of flights doesn't leave the other threads idle
+    public static final int FLIGHT_INDEX_RANGES_PER_THREAD = 4;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ticketMailThreads:1}")
+    private int ticketMailThreads;
+
+    @Value("${welcomeMailThreads:1}")
+    private int welcomeMailThreads;
+
+    @Value("${backgroundThreads:2}")
+    private int backgroundThreads;
+
+    @Value("${backgroundQueueCapacity:100}")
+    private int backgroundQueueCapacity;
+
+    @Value("${bookingExportThreads:4}")
+    private int bookingExportThreads;
+
+    @Value("${bookingExportQueueCapacity:16}")
+    private int bookingExportQueueCapacity;
+
+    // 0 for half the cores
+    @Value("${passwordHashingThreads:0}")
+    private int passwordHashingThreads;
+
+    @Value("${passwordHashingQueueCapacity:64}")
+    private int passwordHashingQueueCapacity;
+
+    @Value("${flightSearchIndexRebuildThreads:4}")
+    private int flightSearchIndexRebuildThreads;
+
+    // Outbox dispatch runs: one queued run per thread is enough to pick up everything that is waiting,
+    // further triggers while the pool is busy are dropped
+    @Bean(TICKET_MAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor ticketMailExecutor() {
+        return boundedExecutor("ticket-mail", ticketMailThreads, ticketMailThreads,
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Bean(WELCOME_MAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor welcomeMailExecutor() {
+        return boundedExecutor("welcome-mail", welcomeMailThreads, welcomeMailThreads,
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    // Work that must not be dropped silently: a full queue fails the caller with a TaskRejectedException
+    @Bean(BACKGROUND_EXECUTOR)
+    public ThreadPoolTaskExecutor backgroundExecutor() {
+        return boundedExecutor("background", backgroundThreads, backgroundQueueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // An export holds a connection for its whole run, the pool size caps how many run at once
+    @Bean(WEB_ASYNC_EXECUTOR)
+    public ThreadPoolTaskExecutor webAsyncExecutor() {
+        return boundedExecutor("web-async", bookingExportThreads, bookingExportQueueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // A BCrypt hash keeps a core busy for its whole run. Capping the threads leaves the other cores to search
+    // and booking during a login storm, and a full queue turns further logins away instead of piling them up.
+    @Bean(PASSWORD_HASHING_EXECUTOR)
+    public ThreadPoolTaskExecutor passwordHashingExecutor() {
+        int threads = passwordHashingThreads > 0 ? passwordHashingThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return boundedExecutor("password-hashing", threads, passwordHashingQueueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Each thread holds a connection while it loads its id range. The queue takes all ranges of one rebuild.
+    @Bean(FLIGHT_INDEX_EXECUTOR)
+    public ThreadPoolTaskExecutor flightIndexExecutor() {
+        return boundedExecutor("flight-index", flightSearchIndexRebuildThreads,
+                flightSearchIndexRebuildThreads * FLIGHT_INDEX_RANGES_PER_THREAD, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    ThreadPoolTaskExecutor boundedExecutor(String name, int threads, int queueCapacity,
+                                           RejectedExecutionHandler rejectionPolicy) {
+        Timer waitTimer = meterRegistry.timer("async.task.wait", "executor", name);
+        Timer executionTimer = meterRegistry.timer("async.task.execution", "executor", name);
+        Counter rejected = meterRegistry.counter("async.task.rejected", "executor", name);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            rejectionPolicy.rejectedExecution(task, pool);
+        });
+        // Decorated when submitted, so the wrapper sees how long the task sat in the queue
+        executor.setTaskDecorator(task -> {
+            long submittedAt = System.nanoTime();
+            return () -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                executionTimer.record(task);
+            };
+        });
+        // Let a running outbox batch commit on shutdown instead of sending its mails again after restart
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+
+        Gauge.builder("async.executor.queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("async.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("executor", name)
+                .register(meterRegistry);
+
+        return executor;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.menglanyan.airline_booking.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Map;
+
+// MySQL has no sequences, so Hibernate emulates each @SequenceGenerator with a one row table that starts at 1.
+// Tables created before the switch from IDENTITY already hold rows, so move each sequence past the highest id
+// before the app starts serving requests. Safe to run on every startup and on several instances at once.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IdSequenceInitializer {
+
+    // Same as allocationSize on the entities' @SequenceGenerator
+    private static final int ALLOCATION_SIZE = 50;
+
+    private static final Map<String, String> SEQUENCE_TABLES = Map.of(
+            "booking_seq", "bookings",
+            "passenger_seq", "passengers",
+            "flight_seq", "flights",
+            "email_notification_seq", "email_notifications",
+            "user_seq", "users"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Depending on the EntityManagerFactory makes sure Hibernate has created the sequence tables first
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void alignSequencesWithExistingIds() {
+        SEQUENCE_TABLES.forEach((sequenceTable, entityTable) -> {
+            if (!tableExists(sequenceTable)) {
+                // Native sequence (e.g. H2 in tests), nothing to align
+                return;
+            }
+
+            int updated = jdbcTemplate.update("UPDATE " + sequenceTable + " SET next_val = GREATEST(next_val, " +
+                    "(SELECT COALESCE(MAX(id), 0) + ? FROM " + entityTable + "))", ALLOCATION_SIZE + 1);
+
+            log.info("Aligned id sequence {} with {} ({} row updated)", sequenceTable, entityTable, updated);
+        });
+    }
+
+    private boolean tableExists(String tableName) {
+        Boolean exists = jdbcTemplate.execute((Connection connection) -> {
+            try (ResultSet tables = connection.getMetaData()
+                    .getTables(connection.getCatalog(), null, tableName, new String[]{"TABLE"})) {
+                return tables.next();
+            }
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.menglanyan.airline_booking.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaBatchingConfig {
+
+    // Enough for the largest booking (a booking plus all its passengers) in one round trip per table
+    private static final int JDBC_BATCH_SIZE = 50;
+
+    // Matches the largest page size, so the lazy collections of a whole page load in one select each
+    private static final int BATCH_FETCH_SIZE = 100;
+
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return properties -> {
+            properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, JDBC_BATCH_SIZE);
+            // Group inserts/updates per table, otherwise booking and passenger inserts interleave and break batches
+            properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, true);
+            properties.putIfAbsent(AvailableSettings.ORDER_UPDATES, true);
+            properties.putIfAbsent(AvailableSettings.BATCH_VERSIONED_DATA, true);
+            properties.putIfAbsent(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, BATCH_FETCH_SIZE);
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.menglanyan.airline_booking.config;
+
+import com.github.menglanyan.airline_booking.mail.PooledJavaMailSender;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Properties;
+
+// Replaces the JavaMailSender Boot would create with one that keeps its SMTP connections open, configured
+// from the same spring.mail.* properties
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+@ConditionalOnProperty(prefix = "spring.mail", name = "host")
+public class MailConfig {
+
+    @Value("${smtpPoolSize:2}")
+    private int smtpPoolSize;
+
+    @Bean
+    public PooledJavaMailSender javaMailSender(MailProperties mailProperties) {
+        PooledJavaMailSender mailSender = new PooledJavaMailSender(smtpPoolSize);
+        mailSender.setHost(mailProperties.getHost());
+        if (mailProperties.getPort() != null) {
+            mailSender.setPort(mailProperties.getPort());
+        }
+        mailSender.setUsername(mailProperties.getUsername());
+        mailSender.setPassword(mailProperties.getPassword());
+        mailSender.setProtocol(mailProperties.getProtocol());
+        if (mailProperties.getDefaultEncoding() != null) {
+            mailSender.setDefaultEncoding(mailProperties.getDefaultEncoding().name());
+        }
+
+        Properties javaMailProperties = new Properties();
+        javaMailProperties.putAll(mailProperties.getProperties());
+        if (mailProperties.getSsl().isEnabled()) {
+            javaMailProperties.setProperty("mail." + mailProperties.getProtocol() + ".ssl.enable", "true");
+        }
+        mailSender.setJavaMailProperties(javaMailProperties);
+
+        return mailSender;
+    }
+}
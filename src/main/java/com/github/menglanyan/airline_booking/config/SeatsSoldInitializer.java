@@ -0,0 +1,38 @@
+package com.github.menglanyan.airline_booking.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// seats_sold was added to flights that already had bookings and starts at 0 there, which would let them be
+// oversold and keep cancellations from releasing any seats. Before the app starts serving requests, set it to
+// the passengers of each flight's bookings that still hold seats. Only flights still at 0 that have such
+// bookings are touched, so flights counted by reserveSeats/releaseSeats are left alone and later startups
+// find nothing to do. Safe to run on several instances at once.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SeatsSoldInitializer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Depending on the EntityManagerFactory makes sure Hibernate has added the seats_sold column first
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void backfillSeatsSold() {
+        int updated = jdbcTemplate.update("UPDATE flights SET seats_sold = (" +
+                "SELECT COUNT(*) FROM bookings b JOIN passengers p ON p.booking_id = b.id " +
+                "WHERE b.flight_id = flights.id AND b.status <> 'CANCELLED') " +
+                "WHERE seats_sold = 0 AND EXISTS (" +
+                "SELECT 1 FROM bookings b JOIN passengers p ON p.booking_id = b.id " +
+                "WHERE b.flight_id = flights.id AND b.status <> 'CANCELLED')");
+
+        if (updated > 0) {
+            log.info("Backfilled seats sold on {} flights from their bookings", updated);
+        }
+    }
+}
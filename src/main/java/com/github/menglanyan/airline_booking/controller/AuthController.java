@@ -5,6 +5,7 @@ import com.github.menglanyan.airline_booking.dtos.LoginResponse;
 import com.github.menglanyan.airline_booking.dtos.RegistrationRequest;
 import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.services.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -21,12 +22,14 @@ public class AuthController {
     private final AuthService authService;
 
     @PostMapping("/register")
-    public ResponseEntity<Response<?>> register(@Valid @RequestBody RegistrationRequest registrationRequest) {
-        return ResponseEntity.ok(authService.register(registrationRequest));
+    public ResponseEntity<Response<?>> register(@Valid @RequestBody RegistrationRequest registrationRequest,
+                                                HttpServletRequest request) {
+        return ResponseEntity.ok(authService.register(registrationRequest, request.getRemoteAddr()));
     }
 
     @PostMapping("/login")
-    public ResponseEntity<Response<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest) {
-        return ResponseEntity.ok(authService.login(loginRequest));
+    public ResponseEntity<Response<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest,
+                                                         HttpServletRequest request) {
+        return ResponseEntity.ok(authService.login(loginRequest, request.getRemoteAddr()));
     }
 }
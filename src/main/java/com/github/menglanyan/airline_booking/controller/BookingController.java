@@ -1,28 +1,73 @@
 package com.github.menglanyan.airline_booking.controller;
 
+import com.github.menglanyan.airline_booking.dtos.BatchBookingResult;
 import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.BookingHoldResponse;
+import com.github.menglanyan.airline_booking.dtos.CreateBatchBookingRequest;
 import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
 import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.ExportFormat;
+import com.github.menglanyan.airline_booking.services.BookingExportService;
 import com.github.menglanyan.airline_booking.services.BookingService;
+import com.github.menglanyan.airline_booking.services.IdempotencyService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.repository.query.Param;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/bookings")
 @RequiredArgsConstructor
 public class BookingController {
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final BookingService bookingService;
 
+    private final IdempotencyService idempotencyService;
+
+    private final BookingExportService bookingExportService;
+
+    // A retry sent with the same Idempotency-Key gets the first response back instead of booking twice
     @PostMapping
-    public ResponseEntity<Response<?>> createBooking(@Valid @RequestBody CreateBookingRequest createBookingRequest) {
-        return ResponseEntity.ok(bookingService.createBooking(createBookingRequest));
+    public ResponseEntity<Response<?>> createBooking(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody CreateBookingRequest createBookingRequest) {
+        return ResponseEntity.ok(idempotencyService.execute("createBooking", idempotencyKey, createBookingRequest,
+                () -> bookingService.createBooking(createBookingRequest)));
+    }
+
+    // For group and agency reservations, reports success or failure per booking
+    @PostMapping("/batch")
+    public ResponseEntity<Response<List<BatchBookingResult>>> createBookings(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody CreateBatchBookingRequest createBatchBookingRequest) {
+        return ResponseEntity.ok(idempotencyService.execute("createBookings", idempotencyKey,
+                createBatchBookingRequest, () -> bookingService.createBookings(createBatchBookingRequest)));
+    }
+
+    // Holds the seats as a PENDING booking until it is confirmed or the hold expires
+    @PostMapping("/hold")
+    public ResponseEntity<Response<BookingHoldResponse>> holdBooking(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody CreateBookingRequest createBookingRequest) {
+        return ResponseEntity.ok(idempotencyService.execute("holdBooking", idempotencyKey, createBookingRequest,
+                () -> bookingService.holdBooking(createBookingRequest)));
+    }
+
+    @PostMapping("/{id}/confirm")
+    public ResponseEntity<Response<?>> confirmBooking(@PathVariable Long id) {
+        return ResponseEntity.ok(bookingService.confirmBooking(id));
     }
 
     @GetMapping("/{id}")
@@ -32,13 +77,32 @@ public class BookingController {
 
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ADMIN', 'PILOT')")
-    public ResponseEntity<Response<List<BookingDTO>>> getAllBookings() {
-        return ResponseEntity.ok(bookingService.getAllBookings());
+    public ResponseEntity<Response<CursorPage<BookingDTO>>> getAllBookings(
+            BookingFilter filter, @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false, defaultValue = "20") int size) {
+        return ResponseEntity.ok(bookingService.getAllBookings(filter, cursor, size));
+    }
+
+    // Full dump for finance and ops, rows are written to the response as they are read from the database
+    @GetMapping("/export")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportBookings(
+            BookingFilter filter, @RequestParam(required = false, defaultValue = "NDJSON") ExportFormat format) {
+        boolean csv = format == ExportFormat.CSV;
+
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"bookings." + (csv ? "csv" : "ndjson") + "\"")
+                .body(outputStream -> bookingExportService.exportBookings(filter, format, outputStream));
     }
 
     @GetMapping("/me")
-    public ResponseEntity<Response<List<BookingDTO>>> getMyBookings() {
-        return ResponseEntity.ok(bookingService.getMyBookings());
+    public ResponseEntity<Response<CursorPage<BookingDTO>>> getMyBookings(
+            BookingFilter filter, @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false, defaultValue = "20") int size) {
+        return ResponseEntity.ok(bookingService.getMyBookings(filter, cursor, size));
     }
 
     @PutMapping("/{id}")
@@ -0,0 +1,52 @@
+package com.github.menglanyan.airline_booking.controller;
+
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
+import com.github.menglanyan.airline_booking.dtos.EmailOutboxMessageDTO;
+import com.github.menglanyan.airline_booking.dtos.Response;
+import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+
+@RestController
+@RequestMapping("/api/emails")
+@RequiredArgsConstructor
+public class EmailNotificationController {
+
+    private final EmailNotificationService emailNotificationService;
+
+    // Emails that ran out of delivery attempts, for admins to look into and send again
+    @GetMapping("/dead-letters")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Response<CursorPage<EmailOutboxMessageDTO>>> getDeadLetters(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false, defaultValue = "20") int size) {
+        return ResponseEntity.ok(emailNotificationService.getDeadLetters(cursor, size));
+    }
+
+    @PostMapping("/dead-letters/{id}/replay")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Response<EmailOutboxMessageDTO>> replayDeadLetter(@PathVariable Long id) {
+        return ResponseEntity.ok(emailNotificationService.replayDeadLetter(id));
+    }
+
+    // E.g. after an SMTP outage that outlasted all attempts
+    @PostMapping("/dead-letters/replay")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Response<Integer>> replayDeadLetters() {
+        return ResponseEntity.ok(emailNotificationService.replayDeadLetters());
+    }
+
+    // A sent email as the recipient got it
+    @GetMapping("/notifications/{id}/body")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<String> getNotificationBody(@PathVariable Long id) {
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "html", StandardCharsets.UTF_8))
+                .body(emailNotificationService.getNotificationBody(id));
+    }
+}
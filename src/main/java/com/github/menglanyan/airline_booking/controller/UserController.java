@@ -22,6 +22,21 @@ public class UserController {
         return ResponseEntity.ok(userService.updateMyAccount(userDTO));
     }
 
+    @PutMapping("/{id}/deactivate")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Response<?>> deactivateAccount(@PathVariable Long id) {
+        return ResponseEntity.ok(userService.deactivateAccount(id));
+    }
+
+    // Only reaches users still signing in with tokens that carry no roles, tokens with roles never load the
+    // user. To take access away directly in the database, also increment token_version and set
+    // tokens_revoked_at to now, other instances pick that up within tokenRevocationRefreshIntervalMs.
+    @PostMapping("/principal-cache/flush")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Response<?>> flushPrincipalCache() {
+        return ResponseEntity.ok(userService.flushPrincipalCache());
+    }
+
     @GetMapping("/pilots")
     @PreAuthorize("hasAnyAuthority('ADMIN', 'PILOT')")
     public ResponseEntity<Response<List<UserDTO>>> getAllPilots() {
@@ -0,0 +1,22 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchBookingResult {
+
+    // Position of the booking in the request
+    private int index;
+
+    private Long flightId;
+
+    private boolean success;
+
+    private String bookingReference;
+
+    private String message;
+}
@@ -25,5 +25,7 @@ public class BookingDTO {
 
     private BookingStatus status;
 
+    private LocalDateTime holdExpiresAt;
+
     private List<PassengerDTO> passengers;
 }
@@ -0,0 +1,31 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+// Optional filters for listing bookings, null fields are not applied
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookingFilter {
+
+    private BookingStatus status;
+
+    private Long flightId;
+
+    private Long userId;
+
+    // Booking date range, from inclusive and to exclusive
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+}
@@ -0,0 +1,20 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookingHoldResponse {
+
+    private Long bookingId;
+
+    private String bookingReference;
+
+    // The hold has to be confirmed before this time, otherwise its seats are released
+    private LocalDateTime holdExpiresAt;
+}
@@ -0,0 +1,22 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CreateBatchBookingRequest {
+
+    @NotEmpty(message = "At least one booking must be provided")
+    @Size(max = 100, message = "At most 100 bookings can be sent in one batch")
+    private List<@Valid CreateBookingRequest> bookings;
+}
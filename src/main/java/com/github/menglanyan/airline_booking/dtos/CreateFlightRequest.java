@@ -42,4 +42,8 @@ public class CreateFlightRequest {
     private BigDecimal basePrice;
 
     private Long pilotId;
+
+    // Optional, FlightServiceImpl falls back to a default capacity when not provided
+    @Positive(message = "Capacity must be positive")
+    private Integer capacity;
 }
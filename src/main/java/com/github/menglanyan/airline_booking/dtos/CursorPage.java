@@ -0,0 +1,19 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One page of a list ordered by id descending. Pass nextCursor as the cursor to get the next page,
+// it is null on the last page.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;
+
+    private Long nextCursor;
+}
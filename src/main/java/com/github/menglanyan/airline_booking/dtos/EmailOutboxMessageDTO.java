@@ -0,0 +1,35 @@
+package com.github.menglanyan.airline_booking.dtos;
+
+import com.github.menglanyan.airline_booking.enums.EmailDeliveryStatus;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailOutboxMessageDTO {
+
+    private Long id;
+
+    private EmailType type;
+
+    private Long bookingId;
+
+    private Long userId;
+
+    private LocalDateTime createdAt;
+
+    private EmailDeliveryStatus status;
+
+    private int attempts;
+
+    private LocalDateTime nextAttemptAt;
+
+    private String lastError;
+
+    private LocalDateTime sentAt;
+}
@@ -30,6 +30,10 @@ public class FlightDTO {
 
     private BigDecimal basePrice;
 
+    private int capacity;
+
+    private int seatsSold;
+
     private UserDTO assignedPilot;
 
     private List<BookingDTO> booking;
@@ -5,25 +5,41 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "bookings")
+// The (column, id) indexes serve the filtered, id-ordered booking lists one page at a time, the
+// status and hold expiry index lets the hold expiry job range-scan only PENDING holds that have run out
+@Table(name = "bookings", indexes = {
+        @Index(name = "idx_bookings_status_hold_expires_at", columnList = "status, hold_expires_at"),
+        @Index(name = "idx_bookings_user_id_id", columnList = "user_id, id"),
+        @Index(name = "idx_bookings_flight_id_id", columnList = "flight_id, id"),
+        @Index(name = "idx_bookings_status_id", columnList = "status, id"),
+        @Index(name = "idx_bookings_booking_date", columnList = "booking_date")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Booking {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_seq")
+    @SequenceGenerator(name = "booking_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false)
     private String bookingReference;
 
+    // Guards status updates by admins and pilots racing each other
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long version;
+
     @ManyToOne
     private User user;
 
@@ -35,6 +51,9 @@ public class Booking {
     @Enumerated(EnumType.STRING)
     private BookingStatus status;
 
+    // Only set while the booking is a PENDING seat hold
+    private LocalDateTime holdExpiresAt;
+
     @OneToMany(mappedBy = "booking", cascade = CascadeType.ALL)
     private List<Passenger> passengers = new ArrayList<>();
 }
@@ -0,0 +1,27 @@
+package com.github.menglanyan.airline_booking.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One row per in-memory cache. Bumping its generation tells every app instance to empty that cache,
+// see CustomUserDetailsService
+@Entity
+@Table(name = "cache_flush_markers")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheFlushMarker {
+
+    @Id
+    private String name;
+
+    private long generation;
+
+    private LocalDateTime flushedAt;
+}
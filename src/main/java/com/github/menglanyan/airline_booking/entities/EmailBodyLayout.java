@@ -0,0 +1,36 @@
+package com.github.menglanyan.airline_booking.entities;
+
+import com.github.menglanyan.airline_booking.utils.CompressedTextConverter;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// The part of an email body that is the same for many mails, e.g. the ticket layout with its styles,
+// stored once and shared by all notifications that used it. The id is a hash of the content, so a
+// changed template simply gets a new row and old notifications keep theirs.
+@Entity
+@Table(name = "email_body_layouts")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailBodyLayout {
+
+    // SHA-256 of the content, hex encoded
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String beforeContent;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String afterContent;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -1,5 +1,6 @@
 package com.github.menglanyan.airline_booking.entities;
 
+import com.github.menglanyan.airline_booking.utils.CompressedTextConverter;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
@@ -9,14 +10,17 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "email_notifications")
+// The retention job deletes by sent_at
+@Table(name = "email_notifications", indexes = @Index(name = "idx_email_notifications_sent_at",
+        columnList = "sent_at"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class EmailNotification {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_notification_seq")
+    @SequenceGenerator(name = "email_notification_seq", allocationSize = 50)
     private Long id;
 
     private String subject;
@@ -24,8 +28,17 @@ public class EmailNotification {
     @NotBlank(message = "Recipient is required")
     private String recipientEmail;
 
+    // The mail's own part of the body, compressed. Bodies stored before compression are in the old body
+    // column until EmailBodyMigrationJob moved them here.
     @Lob
-    private String body;
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(name = "compressed_body")
+    private String content;
+
+    // Shared markup around the content, null if the content is the whole body
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "layout_id")
+    private EmailBodyLayout layout;
 
     @ManyToOne
     @JoinColumn(name = "booking_id")
@@ -34,4 +47,9 @@ public class EmailNotification {
     private LocalDateTime sentAt;
 
     private boolean isHtml;
+
+    // The body as it was sent
+    public String getBody() {
+        return layout == null ? content : layout.getBeforeContent() + content + layout.getAfterContent();
+    }
 }
@@ -0,0 +1,60 @@
+package com.github.menglanyan.airline_booking.entities;
+
+import com.github.menglanyan.airline_booking.enums.EmailDeliveryStatus;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// An email to send, written in the same transaction as the booking or user it is about. Only ids are
+// stored, the mail is rendered from the committed rows when the dispatcher picks the message up.
+// The row also tracks the delivery: QUEUED -> SENDING -> SENT, or FAILED and retried later, or DEAD
+// once it ran out of attempts.
+@Entity
+@Table(name = "email_outbox", indexes = {
+        // Each type is dispatched on its own, the messages that are due first
+        @Index(name = "idx_email_outbox_type_next_attempt_at", columnList = "type, next_attempt_at"),
+        // Dead letters for the admin list, newest first
+        @Index(name = "idx_email_outbox_status_id", columnList = "status, id")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailOutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_outbox_seq")
+    @SequenceGenerator(name = "email_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailType type;
+
+    private Long bookingId;
+
+    private Long userId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailDeliveryStatus status;
+
+    // Counted when the dispatcher claims the message, so a mail that crashes the dispatcher still runs out
+    private int attempts;
+
+    // When the dispatcher picks the message up next. While SENDING it is the end of the dispatcher's lease,
+    // null once the message is SENT or DEAD.
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+    // Null until the mail went out
+    private LocalDateTime sentAt;
+}
@@ -5,6 +5,8 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -12,19 +14,35 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "flights")
+// Search filters by route and status and ranges over the day's departure times, a pilot's schedule is read
+// newest first. Both indexes lead with the equality columns, so each reads only the rows it returns.
+// The flight search index reads the flights changed since its last sync through the updated_at index.
+@Table(name = "flights", indexes = {
+        @Index(name = "idx_flights_route_status_departure_time",
+                columnList = "departure_airport_id, arrival_airport_id, status, departure_time"),
+        @Index(name = "idx_flights_assigned_pilot_id_departure_time",
+                columnList = "assigned_pilot_id, departure_time"),
+        @Index(name = "idx_flights_updated_at", columnList = "updated_at")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Flight {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "flight_seq")
+    @SequenceGenerator(name = "flight_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false)
     private String flightNumber;
 
+    // Optimistic locking, concurrent edits fail on commit instead of silently overwriting each other
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long version;
+
     @Enumerated(EnumType.STRING)
     private FlightStatus status;
 
@@ -42,9 +60,24 @@ public class Flight {
 
     private BigDecimal basePrice;
 
+    // Total number of seats that can be sold on this flight
+    @Column(nullable = false)
+    @ColumnDefault("180")
+    private int capacity;
+
+    // Only changed through FlightRepo.reserveSeats/releaseSeats, so saving a Flight never overwrites
+    // seats sold by concurrent bookings
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private int seatsSold;
+
     @ManyToOne
     private User assignedPilot;
 
+    // Set on every save, and by the seat and capacity updates in FlightRepo, which bypass the entity
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
     @OneToMany(mappedBy = "flight")
     private List<Booking> booking = new ArrayList<>();
 }
@@ -0,0 +1,66 @@
+package com.github.menglanyan.airline_booking.entities;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+// Response of a request sent with an Idempotency-Key header, replayed when the client retries it
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created_at",
+        columnList = "created_at"))
+@Data
+@NoArgsConstructor
+public class IdempotencyRecord implements Persistable<String> {
+
+    // SHA-256 of user, operation and client key, so keys from different users never collide
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    // SHA-256 of the request body, a key can't be reused for a different request
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    private int statusCode;
+
+    private String message;
+
+    @Lob
+    private String responseData;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Lets save() insert right away instead of merging, a concurrent duplicate must fail on the primary key
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
+    public IdempotencyRecord(String id, String requestHash, int statusCode, String message, String responseData,
+                             LocalDateTime createdAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.statusCode = statusCode;
+        this.message = message;
+        this.responseData = responseData;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+}
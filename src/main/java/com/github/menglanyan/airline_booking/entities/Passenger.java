@@ -14,7 +14,8 @@ import lombok.NoArgsConstructor;
 public class Passenger {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "passenger_seq")
+    @SequenceGenerator(name = "passenger_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -0,0 +1,22 @@
+package com.github.menglanyan.airline_booking.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Shared counters that app instances take blocks of values from, see BookingReferenceGenerator
+@Entity
+@Table(name = "reference_counters")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReferenceCounter {
+
+    @Id
+    private String name;
+
+    private long nextValue;
+}
@@ -0,0 +1,5 @@
+package com.github.menglanyan.airline_booking.enums;
+
+public enum ExportFormat {
+    NDJSON, CSV
+}
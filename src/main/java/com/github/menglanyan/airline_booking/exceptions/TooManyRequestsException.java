@@ -0,0 +1,8 @@
+package com.github.menglanyan.airline_booking.exceptions;
+
+public class TooManyRequestsException extends RuntimeException {
+
+    public TooManyRequestsException(String ex) {
+        super(ex);
+    }
+}
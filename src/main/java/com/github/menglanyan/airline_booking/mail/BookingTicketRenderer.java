@@ -0,0 +1,123 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.utils.Sha256;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.Year;
+
+// Renders booking ticket emails in three parts, so that only the booking's own details are rendered per
+// ticket: the layout around them (booking_ticket.html) is the same for every ticket and rendered once a year
+// for the footer, the flight details (booking_ticket_flight.html) once per flight, and the booking's content
+// (booking_ticket_content.html) per ticket. The parsed templates themselves stay in the TemplateEngine's cache.
+@Component
+public class BookingTicketRenderer {
+
+    public static final String TICKET_TEMPLATE = "booking_ticket";
+
+    public static final String CONTENT_TEMPLATE = "booking_ticket_content";
+
+    public static final String FLIGHT_DETAILS_TEMPLATE = "booking_ticket_flight";
+
+    // Stands in for the content while the layout is rendered, the layout is split around it
+    private static final String CONTENT_MARKER = "<!--ticket-content-->";
+
+    private final TemplateEngine templateEngine;
+
+    private final String viewBookingUrl;
+
+    // Keyed on everything the section shows, so a rescheduled flight or a renamed airport is rendered again
+    private final Cache<FlightDetails, String> flightDetailsCache;
+
+    private volatile Layout layout;
+
+    public BookingTicketRenderer(TemplateEngine templateEngine, @Value("${viewBookingUrl}") String viewBookingUrl,
+                                 @Value("${ticketFlightDetailsCacheSize:1000}") long cacheSize) {
+        this.templateEngine = templateEngine;
+        this.viewBookingUrl = viewBookingUrl;
+        this.flightDetailsCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    public RenderedMail render(Booking booking) {
+        Context context = new Context();
+        context.setVariable("userName", booking.getUser().getName());
+        context.setVariable("bookingReference", booking.getBookingReference());
+        context.setVariable("flightDetails", flightDetailsCache.get(FlightDetails.of(booking.getFlight()),
+                this::renderFlightDetails));
+        context.setVariable("passengers", booking.getPassengers());
+        String content = templateEngine.process(CONTENT_TEMPLATE, context);
+
+        Layout currentLayout = currentLayout();
+        return new RenderedMail(currentLayout.id(), currentLayout.beforeContent(), content,
+                currentLayout.afterContent());
+    }
+
+    // Rendering it twice around the new year does no harm, so this doesn't lock
+    private Layout currentLayout() {
+        int year = Year.now().getValue();
+        Layout currentLayout = layout;
+        if (currentLayout == null || currentLayout.year() != year) {
+            Context context = new Context();
+            context.setVariable("ticketContent", CONTENT_MARKER);
+            context.setVariable("viewBookingUrl", viewBookingUrl);
+            String rendered = templateEngine.process(TICKET_TEMPLATE, context);
+
+            int marker = rendered.indexOf(CONTENT_MARKER);
+            if (marker < 0) {
+                throw new IllegalStateException(TICKET_TEMPLATE + " does not output ticketContent");
+            }
+            String beforeContent = rendered.substring(0, marker);
+            String afterContent = rendered.substring(marker + CONTENT_MARKER.length());
+            currentLayout = new Layout(year, Sha256.hex(beforeContent + CONTENT_MARKER + afterContent),
+                    beforeContent, afterContent);
+            layout = currentLayout;
+        }
+        return currentLayout;
+    }
+
+    private String renderFlightDetails(FlightDetails flightDetails) {
+        Context context = new Context();
+        context.setVariable("flightNumber", flightDetails.flightNumber());
+        context.setVariable("departureAirportIataCode", flightDetails.departureAirportIataCode());
+        context.setVariable("departureAirportName", flightDetails.departureAirportName());
+        context.setVariable("departureAirportCity", flightDetails.departureAirportCity());
+        context.setVariable("departureTime", flightDetails.departureTime());
+        context.setVariable("arrivalAirportIataCode", flightDetails.arrivalAirportIataCode());
+        context.setVariable("arrivalAirportName", flightDetails.arrivalAirportName());
+        context.setVariable("arrivalAirportCity", flightDetails.arrivalAirportCity());
+        context.setVariable("arrivalTime", flightDetails.arrivalTime());
+        context.setVariable("basePrice", flightDetails.basePrice());
+
+        return templateEngine.process(FLIGHT_DETAILS_TEMPLATE, context);
+    }
+
+    // id identifies the layout in the email_body_layouts table
+    private record Layout(int year, String id, String beforeContent, String afterContent) {
+    }
+
+    private record FlightDetails(String flightNumber, String departureAirportIataCode, String departureAirportName,
+                                 City departureAirportCity, LocalDateTime departureTime,
+                                 String arrivalAirportIataCode, String arrivalAirportName, City arrivalAirportCity,
+                                 LocalDateTime arrivalTime, BigDecimal basePrice) {
+
+        static FlightDetails of(Flight flight) {
+            Airport departure = flight.getDepartureAirport();
+            Airport arrival = flight.getArrivalAirport();
+            return new FlightDetails(flight.getFlightNumber(), departure.getIataCode(), departure.getName(),
+                    departure.getCity(), flight.getDepartureTime(), arrival.getIataCode(), arrival.getName(),
+                    arrival.getCity(), flight.getArrivalTime(), flight.getBasePrice());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import com.github.menglanyan.airline_booking.entities.EmailBodyLayout;
+import com.github.menglanyan.airline_booking.repo.EmailBodyLayoutRepo;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Makes sure the layout of a rendered mail is in the email_body_layouts table before a notification
+// refers to it. There are only a handful of layouts, so after the first mail this is a set lookup.
+@Component
+public class EmailBodyLayoutStore {
+
+    private final EmailBodyLayoutRepo emailBodyLayoutRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Set<String> storedLayoutIds = ConcurrentHashMap.newKeySet();
+
+    public EmailBodyLayoutStore(EmailBodyLayoutRepo emailBodyLayoutRepo,
+                                PlatformTransactionManager transactionManager) {
+        this.emailBodyLayoutRepo = emailBodyLayoutRepo;
+        // Own transaction, so the row is there for whichever transaction saves the notification
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void store(RenderedMail mail) {
+        if (mail.layoutId() == null || storedLayoutIds.contains(mail.layoutId())) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!emailBodyLayoutRepo.existsById(mail.layoutId())) {
+                    emailBodyLayoutRepo.save(new EmailBodyLayout(mail.layoutId(), mail.beforeContent(),
+                            mail.afterContent(), LocalDateTime.now()));
+                }
+            });
+        } catch (DataIntegrityViolationException ex) {
+            // Another instance stored the same layout at the same time
+        }
+        storedLayoutIds.add(mail.layoutId());
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+// JavaMailSenderImpl connects, says STARTTLS and authenticates on every send() call and disconnects
+// afterwards. This keeps up to poolSize authenticated connections open between calls instead, and sends
+// all messages of one send() call over the same connection. A connection the server dropped is replaced
+// and the message that hit it is sent again, callers never see it.
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private final Semaphore connections;
+
+    // Most recently used last, so the connection least likely to have timed out on the server is reused
+    private final BlockingDeque<Transport> idleConnections = new LinkedBlockingDeque<>();
+
+    public PooledJavaMailSender(int poolSize) {
+        this.connections = new Semaphore(poolSize);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+
+        connections.acquireUninterruptibly();
+        Transport transport = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+
+                try {
+                    if (transport == null) {
+                        transport = borrowConnection();
+                    }
+                    sendMessage(transport, mimeMessages[i]);
+                } catch (AuthenticationFailedException ex) {
+                    throw authenticationFailed(ex, i, mimeMessages, originalMessages, failedMessages);
+                } catch (MessagingException ex) {
+                    if (transport != null && transport.isConnected()) {
+                        // The server refused this message, e.g. its recipient, the connection is still good
+                        failedMessages.put(original, ex);
+                        continue;
+                    }
+
+                    // The connection is gone, try the message once more on a fresh one
+                    close(transport);
+                    transport = null;
+                    try {
+                        transport = connectTransport();
+                        sendMessage(transport, mimeMessages[i]);
+                    } catch (AuthenticationFailedException retryEx) {
+                        throw authenticationFailed(retryEx, i, mimeMessages, originalMessages, failedMessages);
+                    } catch (MessagingException retryEx) {
+                        if (transport != null && transport.isConnected()) {
+                            failedMessages.put(original, retryEx);
+                            continue;
+                        }
+                        // The server can't be reached, so none of the remaining messages can be sent either
+                        failRemaining(i, mimeMessages, originalMessages, failedMessages, retryEx);
+                        close(transport);
+                        transport = null;
+                        throw new MailSendException("Mail server connection failed", retryEx, failedMessages);
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                idleConnections.offerLast(transport);
+            }
+            connections.release();
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    // Before the first message nothing was sent and the whole call failed. Later on the messages already sent
+    // must not be reported as failed, or they would be sent again.
+    private static MailException authenticationFailed(AuthenticationFailedException ex, int failedFrom,
+                                                      MimeMessage[] mimeMessages, Object[] originalMessages,
+                                                      Map<Object, Exception> failedMessages) {
+        if (failedFrom == 0) {
+            return new MailAuthenticationException(ex);
+        }
+        failRemaining(failedFrom, mimeMessages, originalMessages, failedMessages, ex);
+        return new MailSendException("Mail server authentication failed", ex, failedMessages);
+    }
+
+    private static void failRemaining(int failedFrom, MimeMessage[] mimeMessages, Object[] originalMessages,
+                                      Map<Object, Exception> failedMessages, Exception failure) {
+        for (int i = failedFrom; i < mimeMessages.length; i++) {
+            failedMessages.put(originalMessages != null ? originalMessages[i] : mimeMessages[i], failure);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Transport transport;
+        while ((transport = idleConnections.pollFirst()) != null) {
+            close(transport);
+        }
+    }
+
+    // isConnected() sends a NOOP, so a connection the server timed out in the meantime is not handed out
+    private Transport borrowConnection() throws MessagingException {
+        Transport transport;
+        while ((transport = idleConnections.pollLast()) != null) {
+            if (transport.isConnected()) {
+                return transport;
+            }
+            close(transport);
+        }
+        return connectTransport();
+    }
+
+    // Same preparation as JavaMailSenderImpl.doSend, which keeps a Message-ID set by the caller
+    private void sendMessage(Transport transport, MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+        transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+    }
+
+    private static void close(Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException ex) {
+            log.debug("Could not close SMTP connection: {}", ex.getMessage());
+        }
+    }
+}
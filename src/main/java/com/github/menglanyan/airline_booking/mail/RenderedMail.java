@@ -0,0 +1,14 @@
+package com.github.menglanyan.airline_booking.mail;
+
+// A rendered email body, split into the layout shared with other mails and the mail's own content.
+// layoutId is null when the content is the whole body.
+public record RenderedMail(String layoutId, String beforeContent, String content, String afterContent) {
+
+    public static RenderedMail withoutLayout(String body) {
+        return new RenderedMail(null, "", body, "");
+    }
+
+    public String body() {
+        return beforeContent + content + afterContent;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.AirportDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(config = MapperSettings.class)
+public interface AirportMapper {
+
+    AirportDTO toDTO(Airport airport);
+
+    // New airports get their id from the database
+    @Mapping(target = "id", ignore = true)
+    Airport toEntity(AirportDTO airportDTO);
+}
@@ -0,0 +1,13 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(config = MapperSettings.class, uses = {FlightMapper.class, UserMapper.class, PassengerMapper.class})
+public interface BookingMapper {
+
+    @Mapping(target = "flight", qualifiedByName = "flightWithoutBookings")
+    BookingDTO toDTO(Booking booking);
+}
@@ -0,0 +1,11 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.EmailOutboxMessageDTO;
+import com.github.menglanyan.airline_booking.entities.EmailOutboxMessage;
+import org.mapstruct.Mapper;
+
+@Mapper(config = MapperSettings.class)
+public interface EmailOutboxMessageMapper {
+
+    EmailOutboxMessageDTO toDTO(EmailOutboxMessage emailOutboxMessage);
+}
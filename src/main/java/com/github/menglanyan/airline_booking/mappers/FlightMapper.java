@@ -0,0 +1,41 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.FlightDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.search.FlightSummary;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Named;
+
+// A flight's bookings are mapped without their flight, and a booking's flight without its bookings
+// (see BookingMapper), so the DTOs never form a cycle that has to be cut before serialization
+@Mapper(config = MapperSettings.class, uses = {AirportMapper.class, UserMapper.class, PassengerMapper.class})
+public interface FlightMapper {
+
+    @Mapping(target = "departureAirportIataCode", source = "departureAirport.iataCode")
+    @Mapping(target = "arrivalAirportIataCode", source = "arrivalAirport.iataCode")
+    @Mapping(target = "booking", qualifiedByName = "bookingWithoutFlight")
+    FlightDTO toDTO(Flight flight);
+
+    // For lists that don't show bookings, the bookings collection is not even loaded
+    @Named("flightWithoutBookings")
+    @Mapping(target = "departureAirportIataCode", source = "departureAirport.iataCode")
+    @Mapping(target = "arrivalAirportIataCode", source = "arrivalAirport.iataCode")
+    @Mapping(target = "booking", ignore = true)
+    FlightDTO toDTOWithoutBookings(Flight flight);
+
+    // Search results from FlightSearchIndex, with the airports looked up in the reference data
+    @Mapping(target = "id", source = "summary.id")
+    @Mapping(target = "departureAirport", source = "departureAirport")
+    @Mapping(target = "arrivalAirport", source = "arrivalAirport")
+    @Mapping(target = "assignedPilot", ignore = true)
+    @Mapping(target = "booking", ignore = true)
+    FlightDTO toSearchResult(FlightSummary summary, Airport departureAirport, Airport arrivalAirport);
+
+    @Named("bookingWithoutFlight")
+    @Mapping(target = "flight", ignore = true)
+    BookingDTO toBookingWithoutFlight(Booking booking);
+}
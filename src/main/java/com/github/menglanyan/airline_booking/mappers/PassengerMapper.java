@@ -0,0 +1,17 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.PassengerDTO;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(config = MapperSettings.class)
+public interface PassengerMapper {
+
+    PassengerDTO toDTO(Passenger passenger);
+
+    // Passengers are always new rows of the booking being created, an id sent by the client is ignored
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "booking", ignore = true)
+    Passenger toEntity(PassengerDTO passengerDTO);
+}
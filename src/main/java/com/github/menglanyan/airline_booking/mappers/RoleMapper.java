@@ -0,0 +1,15 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.RoleDTO;
+import com.github.menglanyan.airline_booking.entities.Role;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(config = MapperSettings.class)
+public interface RoleMapper {
+
+    RoleDTO toDTO(Role role);
+
+    @Mapping(target = "id", ignore = true)
+    Role toEntity(RoleDTO roleDTO);
+}
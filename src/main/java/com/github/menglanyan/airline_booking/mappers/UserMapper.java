@@ -0,0 +1,14 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.UserDTO;
+import com.github.menglanyan.airline_booking.entities.User;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(config = MapperSettings.class)
+public interface UserMapper {
+
+    // The password hash never leaves the entity
+    @Mapping(target = "password", ignore = true)
+    UserDTO toDTO(User user);
+}
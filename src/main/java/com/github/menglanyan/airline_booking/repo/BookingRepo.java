@@ -1,10 +1,37 @@
 package com.github.menglanyan.airline_booking.repo;
 
 import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
-public interface BookingRepo extends JpaRepository<Booking, Long> {
-    List<Booking> findByUserIdOrderByIdDesc(Long userId);
+public interface BookingRepo extends JpaRepository<Booking, Long>, JpaSpecificationExecutor<Booking> {
+
+    // Served by idx_bookings_status_hold_expires_at, oldest holds first
+    @Query("SELECT b.id AS id, b.flight.id AS flightId, SIZE(b.passengers) AS seats FROM Booking b " +
+            "WHERE b.status = :status AND b.holdExpiresAt < :now ORDER BY b.holdExpiresAt")
+    List<ExpiredHold> findExpiredHolds(@Param("status") BookingStatus status, @Param("now") LocalDateTime now,
+                                       Pageable pageable);
+
+    // Bumps the version, so a confirm racing with the expiry fails its optimistic lock and sees the new status
+    @Modifying
+    @Query("UPDATE Booking b SET b.status = :newStatus, b.holdExpiresAt = NULL, b.version = b.version + 1 " +
+            "WHERE b.id = :id AND b.status = :expectedStatus")
+    int updateStatusIfCurrent(@Param("id") Long id, @Param("expectedStatus") BookingStatus expectedStatus,
+                              @Param("newStatus") BookingStatus newStatus);
+
+    interface ExpiredHold {
+        Long getId();
+
+        Long getFlightId();
+
+        int getSeats();
+    }
 }
@@ -0,0 +1,44 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BookingSpecifications {
+
+    private BookingSpecifications() {
+    }
+
+    // Only the filters that are set end up in the WHERE clause, so MySQL can pick the matching
+    // (column, id) index and walk it backwards from the cursor
+    public static Specification<Booking> matching(BookingFilter filter, Long cursor) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (cursor != null) {
+                predicates.add(cb.lessThan(root.get("id"), cursor));
+            }
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.getStatus()));
+            }
+            if (filter.getFlightId() != null) {
+                predicates.add(cb.equal(root.get("flight").get("id"), filter.getFlightId()));
+            }
+            if (filter.getUserId() != null) {
+                predicates.add(cb.equal(root.get("user").get("id"), filter.getUserId()));
+            }
+            if (filter.getFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("bookingDate"), filter.getFrom()));
+            }
+            if (filter.getTo() != null) {
+                predicates.add(cb.lessThan(root.get("bookingDate"), filter.getTo()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.entities.CacheFlushMarker;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface CacheFlushMarkerRepo extends JpaRepository<CacheFlushMarker, String> {
+
+    @Query("SELECT m.generation FROM CacheFlushMarker m WHERE m.name = :name")
+    Optional<Long> findGeneration(@Param("name") String name);
+
+    @Modifying
+    @Query("UPDATE CacheFlushMarker m SET m.generation = m.generation + 1, m.flushedAt = :now WHERE m.name = :name")
+    int incrementGeneration(@Param("name") String name, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,7 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.entities.EmailBodyLayout;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EmailBodyLayoutRepo extends JpaRepository<EmailBodyLayout, String> {
+}
@@ -1,7 +1,16 @@
 package com.github.menglanyan.airline_booking.repo;
 
 import com.github.menglanyan.airline_booking.entities.EmailNotification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface EmailNotificationRepo extends JpaRepository<EmailNotification, Long> {
+
+    @Query("SELECT n.id FROM EmailNotification n WHERE n.sentAt < :cutoff")
+    List<Long> findIdsSentBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
 }
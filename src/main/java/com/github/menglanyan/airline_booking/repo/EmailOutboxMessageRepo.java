@@ -0,0 +1,47 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.entities.EmailOutboxMessage;
+import com.github.menglanyan.airline_booking.enums.EmailDeliveryStatus;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EmailOutboxMessageRepo extends JpaRepository<EmailOutboxMessage, Long> {
+
+    // Messages that are due, longest waiting first. A lock timeout of -2 means SKIP LOCKED, so several
+    // dispatchers each take different messages instead of waiting for each other or sending the same mail
+    // twice. SENT and DEAD messages have no next attempt and never match.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM EmailOutboxMessage m WHERE m.type = :type AND m.nextAttemptAt <= :now " +
+            "ORDER BY m.nextAttemptAt, m.id")
+    List<EmailOutboxMessage> findDueForUpdate(@Param("type") EmailType type, @Param("now") LocalDateTime now,
+                                              Pageable pageable);
+
+    // Keyset page ordered by id descending, pass null as the cursor for the first page
+    @Query("SELECT m FROM EmailOutboxMessage m WHERE m.status = :status AND (:cursor IS NULL OR m.id < :cursor) " +
+            "ORDER BY m.id DESC")
+    List<EmailOutboxMessage> findByStatusBefore(@Param("status") EmailDeliveryStatus status,
+                                                @Param("cursor") Long cursor, Pageable pageable);
+
+    @Query("SELECT m.id FROM EmailOutboxMessage m WHERE m.status = :status AND m.sentAt < :cutoff")
+    List<Long> findIdsByStatusSentBefore(@Param("status") EmailDeliveryStatus status,
+                                         @Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    // Gives the messages in fromStatus, i.e. dead ones, a fresh set of attempts starting right away
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage m SET m.status = :newStatus, m.attempts = 0, m.nextAttemptAt = :now, " +
+            "m.lastError = NULL WHERE m.status = :fromStatus")
+    int requeueAll(@Param("fromStatus") EmailDeliveryStatus fromStatus,
+                   @Param("newStatus") EmailDeliveryStatus newStatus, @Param("now") LocalDateTime now);
+}
@@ -3,18 +3,81 @@ package com.github.menglanyan.airline_booking.repo;
 import com.github.menglanyan.airline_booking.entities.Flight;
 import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.search.FlightSummary;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface FlightRepo extends JpaRepository<Flight, Long> {
     boolean existsByFlightNumber(String flightNumber);
 
-    List<Flight> findByDepartureAirportIataCodeAndArrivalAirportIataCodeAndStatusAndDepartureTimeBetween(
-            String departureIataCode, String arrivalIataCode, FlightStatus status,
-            LocalDateTime startOfDay, LocalDateTime endOfDay
-    );
+    // Flight lists join the airports and the pilot in the same select instead of loading them row by row
+    @Override
+    @EntityGraph(attributePaths = {"departureAirport", "arrivalAirport", "assignedPilot"})
+    List<Flight> findAll(Sort sort);
 
+    // Search results only, without the pilot and its roles. Filtering on the airport ids rather than the joined
+    // IATA codes lets every condition use idx_flights_route_status_departure_time, the joins only add the codes.
+    @Query("SELECT new com.github.menglanyan.airline_booking.search.FlightSummary(f.id, f.flightNumber, f.status, " +
+            "d.iataCode, a.iataCode, f.departureTime, f.arrivalTime, f.basePrice, f.capacity, f.seatsSold) " +
+            "FROM Flight f JOIN f.departureAirport d JOIN f.arrivalAirport a " +
+            "WHERE f.departureAirport.id = :departureAirportId AND f.arrivalAirport.id = :arrivalAirportId " +
+            "AND f.status = :status AND f.departureTime >= :from AND f.departureTime < :to " +
+            "ORDER BY f.departureTime")
+    List<FlightSummary> searchSummaries(@Param("departureAirportId") Long departureAirportId,
+                                        @Param("arrivalAirportId") Long arrivalAirportId,
+                                        @Param("status") FlightStatus status,
+                                        @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @EntityGraph(attributePaths = {"departureAirport", "arrivalAirport", "assignedPilot"})
     List<Flight> findByAssignedPilotIdOrderByDepartureTimeDesc(Long pilotId);
+
+    // FlightSearchIndex loads the flights departing from a given time on in id ranges, several at once
+    @Query("SELECT MIN(f.id) FROM Flight f")
+    Optional<Long> findMinId();
+
+    @Query("SELECT MAX(f.id) FROM Flight f")
+    Optional<Long> findMaxId();
+
+    @Query("SELECT new com.github.menglanyan.airline_booking.search.FlightSummary(f.id, f.flightNumber, f.status, " +
+            "d.iataCode, a.iataCode, f.departureTime, f.arrivalTime, f.basePrice, f.capacity, f.seatsSold) " +
+            "FROM Flight f JOIN f.departureAirport d JOIN f.arrivalAirport a " +
+            "WHERE f.id BETWEEN :fromId AND :toId AND f.departureTime >= :departingFrom")
+    List<FlightSummary> findSummaries(@Param("fromId") Long fromId, @Param("toId") Long toId,
+                                      @Param("departingFrom") LocalDateTime departingFrom);
+
+    // Between loads FlightSearchIndex only reads the flights changed since its last sync
+    @Query("SELECT new com.github.menglanyan.airline_booking.search.FlightSummary(f.id, f.flightNumber, f.status, " +
+            "d.iataCode, a.iataCode, f.departureTime, f.arrivalTime, f.basePrice, f.capacity, f.seatsSold) " +
+            "FROM Flight f JOIN f.departureAirport d JOIN f.arrivalAirport a WHERE f.updatedAt >= :since")
+    List<FlightSummary> findSummariesUpdatedSince(@Param("since") LocalDateTime since);
+
+    // Check and increment happen in a single UPDATE, so concurrent bookings only contend on the flight row
+    // and can never push seatsSold over capacity. Returns 0 when there are not enough seats left.
+    @Transactional
+    @Modifying
+    @Query("UPDATE Flight f SET f.seatsSold = f.seatsSold + :seats, f.updatedAt = LOCAL DATETIME " +
+            "WHERE f.id = :flightId AND f.seatsSold + :seats <= f.capacity")
+    int reserveSeats(@Param("flightId") Long flightId, @Param("seats") int seats);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Flight f SET f.seatsSold = f.seatsSold - :seats, f.updatedAt = LOCAL DATETIME " +
+            "WHERE f.id = :flightId AND f.seatsSold >= :seats")
+    int releaseSeats(@Param("flightId") Long flightId, @Param("seats") int seats);
+
+    // Capacity can only shrink down to the number of seats already sold
+    @Transactional
+    @Modifying
+    @Query("UPDATE Flight f SET f.capacity = :capacity, f.updatedAt = LOCAL DATETIME " +
+            "WHERE f.id = :flightId AND f.seatsSold <= :capacity")
+    int updateCapacity(@Param("flightId") Long flightId, @Param("capacity") int capacity);
 }
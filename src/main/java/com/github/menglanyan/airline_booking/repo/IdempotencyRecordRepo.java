@@ -0,0 +1,16 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.entities.IdempotencyRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface IdempotencyRecordRepo extends JpaRepository<IdempotencyRecord, String> {
+
+    @Query("SELECT r.id FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    List<String> findIdsCreatedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+}
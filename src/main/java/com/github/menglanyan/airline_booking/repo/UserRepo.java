@@ -1,10 +1,13 @@
 package com.github.menglanyan.airline_booking.repo;
 
+import com.github.menglanyan.airline_booking.entities.Role;
 import com.github.menglanyan.airline_booking.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +19,23 @@ public interface UserRepo extends JpaRepository<User, Long> {
 
     @Query("SELECT u FROM User u JOIN u.roles r where r.name = :roleName")
     List<User> findByRoleName(@Param("roleName") String roleName);
+
+    List<TokenVersion> findByTokensRevokedAtGreaterThanEqual(LocalDateTime since);
+
+    List<TokenVersion> findByRoles_Id(Long roleId);
+
+    // Every token of these users carries the role by name, see RoleServiceImpl.updateRole
+    @Modifying
+    @Query("UPDATE User u SET u.tokenVersion = u.tokenVersion + 1, u.tokensRevokedAt = :revokedAt " +
+            "WHERE :role MEMBER OF u.roles")
+    int revokeTokensOfRole(@Param("role") Role role, @Param("revokedAt") LocalDateTime revokedAt);
+
+    interface TokenVersion {
+
+        Long getId();
+
+        int getTokenVersion();
+
+        LocalDateTime getTokensRevokedAt();
+    }
 }
@@ -0,0 +1,20 @@
+package com.github.menglanyan.airline_booking.retry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Re-runs a @Transactional service method in a fresh transaction when it fails on an optimistic lock conflict,
+// a deadlock or a serialization failure, see RetryOnConflictAspect
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+
+    // Total attempts, including the first call
+    int maxAttempts() default 3;
+
+    long initialBackoffMillis() default 20;
+
+    long maxBackoffMillis() default 500;
+}
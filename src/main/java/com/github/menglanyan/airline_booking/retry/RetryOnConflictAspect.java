@@ -0,0 +1,92 @@
+package com.github.menglanyan.airline_booking.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Aspect
+@Component
+// Must wrap the transaction interceptor, so that every attempt runs in its own transaction
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@Slf4j
+@RequiredArgsConstructor
+public class RetryOnConflictAspect {
+
+    private static final String SQL_STATE_SERIALIZATION_FAILURE = "40001";
+
+    private static final String SQL_STATE_DEADLOCK = "40P01";
+
+    private static final int MYSQL_DEADLOCK = 1213;
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("@annotation(retryOnConflict)")
+    public Object retry(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+
+        // Called from inside another transaction, which is rollback-only by now, so let the outer caller decide
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName()
+                + "." + joinPoint.getSignature().getName();
+        long backoff = retryOnConflict.initialBackoffMillis();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return joinPoint.proceed();
+            } catch (Exception ex) {
+                if (!isRetryable(ex)) {
+                    throw ex;
+                }
+
+                if (attempt >= retryOnConflict.maxAttempts()) {
+                    meterRegistry.counter("service.retry.exhausted", "method", method).increment();
+                    log.warn("{} still conflicting after {} attempts, giving up", method, attempt);
+                    throw ex;
+                }
+
+                meterRegistry.counter("service.retry.attempts", "method", method).increment();
+                log.info("{} hit a write conflict ({}), retrying attempt {}", method,
+                        ex.getClass().getSimpleName(), attempt + 1);
+
+                // Full jitter, so callers that collided once don't collide again on the next attempt
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+                backoff = Math.min(backoff * 2, retryOnConflict.maxBackoffMillis());
+            }
+        }
+    }
+
+    static boolean isRetryable(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException
+                    || cause instanceof OptimisticLockException
+                    || cause instanceof PessimisticLockException
+                    || cause instanceof LockTimeoutException) {
+                return true;
+            }
+
+            if (cause instanceof SQLException sqlException
+                    && (SQL_STATE_SERIALIZATION_FAILURE.equals(sqlException.getSQLState())
+                    || SQL_STATE_DEADLOCK.equals(sqlException.getSQLState())
+                    || sqlException.getErrorCode() == MYSQL_DEADLOCK)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Cancels PENDING seat holds that were not confirmed in time and gives their seats back to the flight.
+// Works through the expired holds in small batches via the (status, hold_expires_at) index, so the cost
+// depends on how many holds expired, not on how many are open. Several instances can run it at once.
+// Holds whose seats can't be released, because their flight has fewer seats sold than they hold, stay PENDING
+// and are counted in booking.hold.release.failures, like BookingServiceImpl refuses such a cancellation.
+@Component
+@Slf4j
+public class BookingHoldExpiryJob {
+
+    private final BookingRepo bookingRepo;
+
+    private final FlightRepo flightRepo;
+
+    private final FlightSearchIndex flightSearchIndex;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter releaseFailures;
+
+    @Value("${bookingHoldExpiryBatchSize:500}")
+    private int batchSize;
+
+    public BookingHoldExpiryJob(BookingRepo bookingRepo, FlightRepo flightRepo, FlightSearchIndex flightSearchIndex,
+                                PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.bookingRepo = bookingRepo;
+        this.flightRepo = flightRepo;
+        this.flightSearchIndex = flightSearchIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.releaseFailures = meterRegistry.counter("booking.hold.release.failures");
+    }
+
+    @Scheduled(fixedDelayString = "${bookingHoldExpiryIntervalMs:10000}")
+    public void expireHolds() {
+        int expired = 0;
+        // Flights whose seats could not be released, tried once per run as their holds come up in every batch
+        Set<Long> failedFlights = new HashSet<>();
+        BatchResult batch;
+
+        do {
+            batch = expireBatch(failedFlights);
+            expired += batch.expired();
+            // A full batch of holds that can't be released would be found again and again
+        } while (batch.found() == batchSize && batch.expired() > 0);
+
+        if (expired > 0) {
+            log.info("Expired {} seat holds", expired);
+        }
+    }
+
+    private BatchResult expireBatch(Set<Long> failedFlights) {
+        List<BookingRepo.ExpiredHold> expiredHolds = bookingRepo.findExpiredHolds(
+                BookingStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+
+        // Sorted by flight id, so concurrent sweeps lock flight rows in the same order
+        Map<Long, List<BookingRepo.ExpiredHold>> holdsByFlight = new TreeMap<>();
+        for (BookingRepo.ExpiredHold hold : expiredHolds) {
+            if (failedFlights.contains(hold.getFlightId())) {
+                continue;
+            }
+            holdsByFlight.computeIfAbsent(hold.getFlightId(), flightId -> new ArrayList<>()).add(hold);
+        }
+
+        int expired = 0;
+        for (Map.Entry<Long, List<BookingRepo.ExpiredHold>> flight : holdsByFlight.entrySet()) {
+            // Each flight's holds commit on their own, so row locks are held only briefly and a flight whose
+            // seats can't be released doesn't roll back the others
+            try {
+                expired += transactionTemplate.execute(status -> expireHolds(flight.getKey(), flight.getValue()));
+            } catch (IllegalStateException ex) {
+                failedFlights.add(flight.getKey());
+                releaseFailures.increment();
+                log.error("Kept {} expired holds on flight {} pending: {}", flight.getValue().size(),
+                        flight.getKey(), ex.getMessage());
+            }
+        }
+
+        return new BatchResult(expiredHolds.size(), expired);
+    }
+
+    private int expireHolds(Long flightId, List<BookingRepo.ExpiredHold> holds) {
+        int seats = 0;
+        int expired = 0;
+
+        for (BookingRepo.ExpiredHold hold : holds) {
+            // Skip holds confirmed or expired by someone else since the select
+            if (bookingRepo.updateStatusIfCurrent(hold.getId(), BookingStatus.PENDING, BookingStatus.CANCELLED) == 1) {
+                seats += hold.getSeats();
+                expired++;
+            }
+        }
+
+        if (seats > 0) {
+            if (flightRepo.releaseSeats(flightId, seats) == 0) {
+                throw new IllegalStateException("Could not release " + seats + " seats on flight " + flightId);
+            }
+            flightSearchIndex.seatsChanged(flightId, -seats);
+        }
+        return expired;
+    }
+
+    private record BatchResult(int found, int expired) {
+    }
+}
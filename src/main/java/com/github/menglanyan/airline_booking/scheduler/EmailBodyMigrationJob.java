@@ -0,0 +1,110 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.utils.CompressedTextConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+
+// Email bodies used to be stored uncompressed in email_notifications.body. This moves them into
+// compressed_body a batch at a time and empties the old column. Runs once per start, in the background so
+// startup isn't held up by a large table. Walks the table by id, so each batch is a primary key range read.
+// Safe to run on several instances at once. Once it found nothing to do, the body column can be dropped.
+@Component
+@Slf4j
+public class EmailBodyMigrationJob {
+
+    private static final String TABLE = "email_notifications";
+
+    private static final String LEGACY_COLUMN = "body";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${emailBodyMigrationBatchSize:500}")
+    private int batchSize;
+
+    public EmailBodyMigrationJob(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // New rows never use the old column, so once is enough
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        compressLegacyBodies();
+    }
+
+    public void compressLegacyBodies() {
+        if (!legacyColumnExists()) {
+            return;
+        }
+
+        long lastId = 0;
+        int migrated = 0;
+        Batch batch;
+
+        do {
+            long afterId = lastId;
+            // Each batch commits on its own, so row locks are held only briefly
+            batch = transactionTemplate.execute(status -> migrateBatch(afterId));
+            migrated += batch.migrated();
+            lastId = batch.lastId();
+        } while (batch.migrated() == batchSize);
+
+        if (migrated > 0) {
+            log.info("Compressed {} email bodies stored before compression", migrated);
+        }
+    }
+
+    private Batch migrateBatch(long afterId) {
+        List<LegacyBody> bodies = jdbcTemplate.query("SELECT id, " + LEGACY_COLUMN + " FROM " + TABLE +
+                        " WHERE id > ? AND " + LEGACY_COLUMN + " IS NOT NULL ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new LegacyBody(rs.getLong(1), rs.getString(2)), afterId, batchSize);
+        if (bodies.isEmpty()) {
+            return new Batch(0, afterId);
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE " + TABLE + " SET compressed_body = ?, " + LEGACY_COLUMN +
+                " = NULL WHERE id = ?", bodies.stream()
+                .map(body -> new Object[]{CompressedTextConverter.compress(body.body()), body.id()})
+                .toList());
+
+        return new Batch(bodies.size(), bodies.get(bodies.size() - 1).id());
+    }
+
+    private boolean legacyColumnExists() {
+        Boolean exists = jdbcTemplate.execute((Connection connection) -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // Names are reported in the case the database stores them in, e.g. upper case in H2
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, null, null)) {
+                while (columns.next()) {
+                    if (TABLE.equalsIgnoreCase(columns.getString("TABLE_NAME"))
+                            && LEGACY_COLUMN.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private record LegacyBody(long id, String body) {
+    }
+
+    private record Batch(int migrated, long lastId) {
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.config.AsyncConfig;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Sends the emails queued in the outbox by committed bookings and registrations, and the failed ones
+// once their retry is due. Messages left over from before a restart are simply picked up again.
+// Tickets and welcome mails run on their own executors (see AsyncConfig), so neither holds up the
+// other or the scheduler thread.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class EmailOutboxDispatchJob {
+
+    private final EmailNotificationService emailNotificationService;
+
+    @Value("${emailOutboxBatchSize:50}")
+    private int batchSize;
+
+    @Async(AsyncConfig.TICKET_MAIL_EXECUTOR)
+    @Scheduled(fixedDelayString = "${emailOutboxDispatchIntervalMs:2000}")
+    public void dispatchBookingTickets() {
+        dispatch(EmailType.BOOKING_TICKET);
+    }
+
+    @Async(AsyncConfig.WELCOME_MAIL_EXECUTOR)
+    @Scheduled(fixedDelayString = "${emailOutboxDispatchIntervalMs:2000}")
+    public void dispatchWelcomeEmails() {
+        dispatch(EmailType.WELCOME);
+    }
+
+    private void dispatch(EmailType type) {
+        int dispatched = 0;
+        int sent;
+
+        // A batch with failed mails ends the run, they are retried with backoff
+        do {
+            sent = emailNotificationService.dispatchQueuedEmails(type, batchSize);
+            dispatched += sent;
+        } while (sent == batchSize);
+
+        if (dispatched > 0) {
+            log.info("Dispatched {} queued {} emails", dispatched, type);
+        }
+    }
+}
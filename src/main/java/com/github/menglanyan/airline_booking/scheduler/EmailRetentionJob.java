@@ -0,0 +1,45 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.function.IntUnaryOperator;
+
+// Deletes sent emails, the notifications and their outbox messages, once they are older than emailRetentionDays.
+// A batch at a time so no delete holds locks for long. The shared layouts are a handful of rows and stay.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class EmailRetentionJob {
+
+    private final EmailNotificationService emailNotificationService;
+
+    @Value("${emailRetentionBatchSize:1000}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${emailRetentionIntervalMs:3600000}")
+    public void purgeOldEmails() {
+        int notifications = purge(emailNotificationService::purgeOldNotifications);
+        int outboxMessages = purge(emailNotificationService::purgeSentOutboxMessages);
+
+        if (notifications > 0 || outboxMessages > 0) {
+            log.info("Purged {} email notifications and {} sent outbox messages", notifications, outboxMessages);
+        }
+    }
+
+    private int purge(IntUnaryOperator purgeBatch) {
+        int purged = 0;
+        int deleted;
+
+        do {
+            deleted = purgeBatch.applyAsInt(batchSize);
+            purged += deleted;
+        } while (deleted == batchSize);
+
+        return purged;
+    }
+}
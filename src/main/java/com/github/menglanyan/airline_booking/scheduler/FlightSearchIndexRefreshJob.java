@@ -0,0 +1,20 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Builds the flight search index at startup and keeps it in sync from then on, see FlightSearchIndex
+// The daily full load holds a scheduler thread for its whole run, see spring.task.scheduling.pool.size
+@Component
+@RequiredArgsConstructor
+public class FlightSearchIndexRefreshJob {
+
+    private final FlightSearchIndex flightSearchIndex;
+
+    @Scheduled(fixedDelayString = "${flightSearchIndexRefreshIntervalMs:15000}")
+    public void refresh() {
+        flightSearchIndex.refresh();
+    }
+}
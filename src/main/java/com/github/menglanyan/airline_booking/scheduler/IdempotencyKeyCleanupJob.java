@@ -0,0 +1,35 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.services.IdempotencyService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Deletes idempotency keys older than their TTL, a batch at a time so no delete holds locks for long
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IdempotencyKeyCleanupJob {
+
+    private final IdempotencyService idempotencyService;
+
+    @Value("${idempotencyKeyCleanupBatchSize:1000}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${idempotencyKeyCleanupIntervalMs:600000}")
+    public void purgeExpiredKeys() {
+        int purged = 0;
+        int deleted;
+
+        do {
+            deleted = idempotencyService.purgeExpiredKeys(batchSize);
+            purged += deleted;
+        } while (deleted == batchSize);
+
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+}
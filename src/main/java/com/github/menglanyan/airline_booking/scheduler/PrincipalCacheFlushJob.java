@@ -0,0 +1,19 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.security.CustomUserDetailsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Picks up principal cache flushes requested on other instances, one primary key read per run
+@Component
+@RequiredArgsConstructor
+public class PrincipalCacheFlushJob {
+
+    private final CustomUserDetailsService customUserDetailsService;
+
+    @Scheduled(fixedDelayString = "${principalCacheFlushCheckIntervalMs:5000}")
+    public void checkFlushMarker() {
+        customUserDetailsService.checkFlushMarker();
+    }
+}
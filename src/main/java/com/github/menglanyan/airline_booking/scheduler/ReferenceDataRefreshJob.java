@@ -0,0 +1,19 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Picks up role and airport changes made on other instances, one primary key read per run
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataRefreshJob {
+
+    private final ReferenceDataCache referenceDataCache;
+
+    @Scheduled(fixedDelayString = "${referenceDataFlushCheckIntervalMs:5000}")
+    public void checkFlushMarker() {
+        referenceDataCache.checkFlushMarker();
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.security.TokenRevocations;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Picks up tokens revoked on other instances, also bounds how long a revoked token keeps working
+@Component
+@RequiredArgsConstructor
+public class TokenRevocationRefreshJob {
+
+    private final TokenRevocations tokenRevocations;
+
+    @Scheduled(fixedDelayString = "${tokenRevocationRefreshIntervalMs:10000}")
+    public void refresh() {
+        tokenRevocations.refresh();
+    }
+}
@@ -0,0 +1,431 @@
+package com.github.menglanyan.airline_booking.search;
+
+import com.github.menglanyan.airline_booking.config.AsyncConfig;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Flight search is most of the traffic and always asks for one route on one day. All flights departing from
+// today on are kept in memory as summaries, bucketed by departure airport, arrival airport and departure day
+// and sorted by departure time, so a search is one map lookup and no query.
+// Flights saved here and seats reserved or released here are updated in place once their transaction commits.
+// Everything else, mostly flights and bookings changed on other instances, is picked up by refresh(): it reads
+// only the flights whose updated_at moved since the last sync and counts the ones that differed as
+// flight.search.index.corrections. The whole index is loaded, several id ranges in parallel, at startup and on
+// the first refresh of each day, which also drops the flights that have departed. Airports that get a new IATA
+// code have their flights moved to the new buckets once ReferenceDataCache reloads.
+// Searches for earlier days, odd IATA codes, or before the first load has finished go to the database.
+@Component
+@Slf4j
+public class FlightSearchIndex {
+
+    private static final long NO_BUCKET_KEY = -1;
+
+    // updated_at comes from the clocks of several instances and is set before the transaction commits, so every
+    // sync reads back this far before the previous one
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+    private static final Comparator<FlightSummary> BY_DEPARTURE = Comparator
+            .comparing(FlightSummary::departureTime)
+            .thenComparing(FlightSummary::id);
+
+    private final FlightRepo flightRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final AsyncTaskExecutor executor;
+
+    private final boolean enabled;
+
+    private final int idRanges;
+
+    private final Counter answered;
+
+    private final Counter fallbacks;
+
+    private final Counter corrections;
+
+    // Guards changes to the current index and changedDuringRebuild
+    private final Object lock = new Object();
+
+    // Only one load at a time
+    private final Object rebuildLock = new Object();
+
+    // Replaced as a whole by refresh(), null until first loaded
+    private volatile Index index;
+
+    // Flights saved and airports renamed while a load is running, applied again on top of the loaded index
+    private Map<Long, FlightSummary> changedDuringRebuild;
+
+    private List<Map<String, String>> renamedDuringRebuild;
+
+    // Flights updated from then on are read by the next sync, null until first loaded
+    private volatile LocalDateTime syncedUntil;
+
+    public FlightSearchIndex(FlightRepo flightRepo, PlatformTransactionManager transactionManager,
+                             @Qualifier(AsyncConfig.FLIGHT_INDEX_EXECUTOR) AsyncTaskExecutor executor,
+                             MeterRegistry meterRegistry,
+                             @Value("${flightSearchIndexEnabled:true}") boolean enabled,
+                             @Value("${flightSearchIndexRebuildThreads:4}") int rebuildThreads) {
+        this.flightRepo = flightRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.executor = executor;
+        this.enabled = enabled;
+        this.idRanges = rebuildThreads * AsyncConfig.FLIGHT_INDEX_RANGES_PER_THREAD;
+        this.answered = meterRegistry.counter("flight.search.index.lookups", "result", "answered");
+        this.fallbacks = meterRegistry.counter("flight.search.index.lookups", "result", "fallback");
+        this.corrections = meterRegistry.counter("flight.search.index.corrections");
+        Gauge.builder("flight.search.index.flights", this, FlightSearchIndex::size).register(meterRegistry);
+    }
+
+    // Empty when the database has to answer instead
+    public Optional<List<FlightSummary>> search(String departureIataCode, String arrivalIataCode,
+                                                FlightStatus status, LocalDate departureDate) {
+        Index current = index;
+        long key = bucketKey(departureIataCode, arrivalIataCode, departureDate);
+        if (current == null || key == NO_BUCKET_KEY || departureDate.isBefore(current.firstDay())) {
+            fallbacks.increment();
+            return Optional.empty();
+        }
+        answered.increment();
+
+        FlightSummary[] bucket = current.buckets().get(key);
+        if (bucket == null) {
+            return Optional.of(List.of());
+        }
+        List<FlightSummary> flights = new ArrayList<>(bucket.length);
+        for (FlightSummary flight : bucket) {
+            if (flight.status() == status) {
+                flights.add(flight);
+            }
+        }
+        return Optional.of(flights);
+    }
+
+    // Called after a flight was created or changed. Inside a transaction the index is updated once it commits.
+    // The flight's seatsSold is only set by FlightRepo's UPDATEs, so the entity's may be stale by then: a flight
+    // already indexed keeps its seat count, seatsChanged and sync keep that up to date.
+    public void flightSaved(Flight flight) {
+        if (!enabled) {
+            return;
+        }
+        FlightSummary summary = FlightSummary.of(flight);
+        afterCommit(() -> apply(summary));
+    }
+
+    // Called after seats on a flight were reserved (positive) or released (negative), once the transaction
+    // commits. A change that races with a sync or load is set right by the next sync, which reads it again.
+    public void seatsChanged(Long flightId, int seats) {
+        if (!enabled || seats == 0) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (lock) {
+                Index current = index;
+                FlightSummary summary = current != null ? current.flights().get(flightId) : null;
+                if (summary != null) {
+                    put(current, summary.withSeatsSold(summary.seatsSold() + seats));
+                }
+            }
+        });
+    }
+
+    @EventListener
+    public void onAirportCodesChanged(ReferenceDataCache.AirportCodesChanged event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            Index current = index;
+            if (current != null) {
+                rename(current, event.newCodesByOldCode());
+            }
+            if (renamedDuringRebuild != null) {
+                renamedDuringRebuild.add(event.newCodesByOldCode());
+            }
+        }
+    }
+
+    // Called by FlightSearchIndexRefreshJob. The first call of each day loads the whole index, the others only
+    // read the flights changed since the previous call.
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            Index current = index;
+            if (current == null || !current.firstDay().equals(LocalDate.now())) {
+                rebuild();
+            } else {
+                sync(current);
+            }
+        }
+    }
+
+    private void sync(Index current) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<FlightSummary> changed;
+        try {
+            changed = transactionTemplate.execute(
+                    status -> flightRepo.findSummariesUpdatedSince(syncedUntil.minus(SYNC_OVERLAP)));
+        } catch (RuntimeException ex) {
+            log.error("Could not sync the flight search index, trying again on the next refresh", ex);
+            return;
+        }
+
+        int differing = 0;
+        synchronized (lock) {
+            for (FlightSummary summary : changed) {
+                FlightSummary before = current.flights().get(summary.id());
+                put(current, summary);
+                if (!Objects.equals(before, current.flights().get(summary.id()))) {
+                    differing++;
+                }
+            }
+        }
+        syncedUntil = startedAt;
+
+        if (differing > 0) {
+            corrections.increment(differing);
+            log.debug("Synced the flight search index, {} flights had changed", differing);
+        }
+    }
+
+    private void rebuild() {
+        synchronized (lock) {
+            changedDuringRebuild = new HashMap<>();
+            renamedDuringRebuild = new ArrayList<>();
+        }
+
+        LocalDateTime startedAt = LocalDateTime.now();
+        long start = System.nanoTime();
+        Index loaded;
+        try {
+            loaded = load();
+        } catch (RuntimeException ex) {
+            synchronized (lock) {
+                changedDuringRebuild = null;
+                renamedDuringRebuild = null;
+            }
+            log.error("Could not load the flight search index, {}", index == null
+                    ? "searches go to the database until it is loaded" : "keeping the current one", ex);
+            return;
+        }
+
+        Index previous;
+        synchronized (lock) {
+            changedDuringRebuild.values().forEach(summary -> put(loaded, withIndexedSeats(loaded, summary)));
+            renamedDuringRebuild.forEach(newCodesByOldCode -> rename(loaded, newCodesByOldCode));
+            changedDuringRebuild = null;
+            renamedDuringRebuild = null;
+            previous = index;
+            index = loaded;
+        }
+        syncedUntil = startedAt;
+
+        log.info("Loaded {} flights into the flight search index in {} ms", loaded.flights().size(),
+                (System.nanoTime() - start) / 1_000_000);
+        if (previous != null) {
+            int differing = countDiffering(previous, loaded);
+            if (differing > 0) {
+                corrections.increment(differing);
+                log.info("Reloaded the flight search index, {} flights had changed", differing);
+            }
+        }
+    }
+
+    int size() {
+        Index current = index;
+        return current != null ? current.flights().size() : 0;
+    }
+
+    private void apply(FlightSummary summary) {
+        synchronized (lock) {
+            Index current = index;
+            if (current != null) {
+                put(current, withIndexedSeats(current, summary));
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(summary.id(), summary);
+            }
+        }
+    }
+
+    private static FlightSummary withIndexedSeats(Index index, FlightSummary summary) {
+        FlightSummary indexed = index.flights().get(summary.id());
+        return indexed != null ? summary.withSeatsSold(indexed.seatsSold()) : summary;
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private Index load() {
+        LocalDate firstDay = LocalDate.now();
+        LocalDateTime departingFrom = firstDay.atStartOfDay();
+        Index loaded = new Index(firstDay, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+        Long minId = transactionTemplate.execute(status -> flightRepo.findMinId().orElse(null));
+        Long maxId = transactionTemplate.execute(status -> flightRepo.findMaxId().orElse(null));
+        if (minId == null || maxId == null) {
+            return loaded;
+        }
+
+        long rangeSize = (maxId - minId) / idRanges + 1;
+        List<Future<List<FlightSummary>>> ranges = new ArrayList<>();
+        for (long fromId = minId; fromId <= maxId; fromId += rangeSize) {
+            long from = fromId;
+            long to = Math.min(fromId + rangeSize - 1, maxId);
+            ranges.add(executor.submit(() -> transactionTemplate.execute(
+                    status -> flightRepo.findSummaries(from, to, departingFrom))));
+        }
+
+        Map<Long, List<FlightSummary>> buckets = new HashMap<>();
+        for (Future<List<FlightSummary>> range : ranges) {
+            for (FlightSummary summary : await(range)) {
+                long key = bucketKey(summary);
+                if (key != NO_BUCKET_KEY) {
+                    loaded.flights().put(summary.id(), summary);
+                    buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(summary);
+                }
+            }
+        }
+        buckets.forEach((key, flights) -> {
+            FlightSummary[] bucket = flights.toArray(FlightSummary[]::new);
+            Arrays.sort(bucket, BY_DEPARTURE);
+            loaded.buckets().put(key, bucket);
+        });
+        return loaded;
+    }
+
+    private static List<FlightSummary> await(Future<List<FlightSummary>> range) {
+        try {
+            return range.get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Loading flights for the search index failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the flight search index", ex);
+        }
+    }
+
+    // Buckets are copied on change, so a search never sees one half updated. Called under lock.
+    private static void put(Index index, FlightSummary summary) {
+        FlightSummary previous = index.flights().remove(summary.id());
+        if (previous != null) {
+            index.buckets().computeIfPresent(bucketKey(previous), (key, bucket) -> {
+                FlightSummary[] rest = Arrays.stream(bucket)
+                        .filter(flight -> !flight.id().equals(previous.id()))
+                        .toArray(FlightSummary[]::new);
+                return rest.length > 0 ? rest : null;
+            });
+        }
+
+        long key = bucketKey(summary);
+        if (key == NO_BUCKET_KEY || summary.departureTime().toLocalDate().isBefore(index.firstDay())) {
+            return;
+        }
+        index.flights().put(summary.id(), summary);
+        index.buckets().compute(key, (k, bucket) -> {
+            FlightSummary[] flights = bucket != null ? Arrays.copyOf(bucket, bucket.length + 1)
+                    : new FlightSummary[1];
+            flights[flights.length - 1] = summary;
+            Arrays.sort(flights, BY_DEPARTURE);
+            return flights;
+        });
+    }
+
+    // Moves the flights from or to a renamed airport to their new buckets. Called under lock.
+    private static void rename(Index index, Map<String, String> newCodesByOldCode) {
+        List<FlightSummary> renamed = new ArrayList<>();
+        for (FlightSummary flight : index.flights().values()) {
+            String departure = newCodesByOldCode.getOrDefault(flight.departureAirportIataCode(),
+                    flight.departureAirportIataCode());
+            String arrival = newCodesByOldCode.getOrDefault(flight.arrivalAirportIataCode(),
+                    flight.arrivalAirportIataCode());
+            if (!departure.equals(flight.departureAirportIataCode())
+                    || !arrival.equals(flight.arrivalAirportIataCode())) {
+                renamed.add(flight.withAirports(departure, arrival));
+            }
+        }
+        renamed.forEach(flight -> put(index, flight));
+    }
+
+    // Flights that were added, removed or changed, leaving out those that left the index by departing
+    private static int countDiffering(Index previous, Index loaded) {
+        int differing = 0;
+        for (FlightSummary flight : loaded.flights().values()) {
+            if (!flight.equals(previous.flights().get(flight.id()))) {
+                differing++;
+            }
+        }
+        for (FlightSummary flight : previous.flights().values()) {
+            if (!loaded.flights().containsKey(flight.id())
+                    && !flight.departureTime().toLocalDate().isBefore(loaded.firstDay())) {
+                differing++;
+            }
+        }
+        return differing;
+    }
+
+    private static long bucketKey(FlightSummary summary) {
+        if (summary.departureTime() == null) {
+            return NO_BUCKET_KEY;
+        }
+        return bucketKey(summary.departureAirportIataCode(), summary.arrivalAirportIataCode(),
+                summary.departureTime().toLocalDate());
+    }
+
+    // Both airports' packed IATA codes and the day in one long
+    private static long bucketKey(String departureIataCode, String arrivalIataCode, LocalDate departureDate) {
+        int departureKey = ReferenceDataCache.iataKey(departureIataCode);
+        int arrivalKey = ReferenceDataCache.iataKey(arrivalIataCode);
+        if (departureKey == ReferenceDataCache.NO_IATA_KEY || arrivalKey == ReferenceDataCache.NO_IATA_KEY
+                || departureDate == null) {
+            return NO_BUCKET_KEY;
+        }
+        return ((long) departureKey << 15 | arrivalKey) << 32 | (departureDate.toEpochDay() & 0xFFFFFFFFL);
+    }
+
+    private record Index(LocalDate firstDay, Map<Long, FlightSummary[]> buckets, Map<Long, FlightSummary> flights) {
+    }
+}
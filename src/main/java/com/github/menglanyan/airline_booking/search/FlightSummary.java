@@ -0,0 +1,45 @@
+package com.github.menglanyan.airline_booking.search;
+
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+// What a search result shows of a flight. Airports are kept as IATA codes and filled in from the reference
+// data when the result is mapped, the pilot and bookings are never shown in search results.
+public record FlightSummary(Long id, String flightNumber, FlightStatus status, String departureAirportIataCode,
+                            String arrivalAirportIataCode, LocalDateTime departureTime, LocalDateTime arrivalTime,
+                            BigDecimal basePrice, int capacity, int seatsSold) {
+
+    // Rounded the way the columns store them, so it equals the summary read back from the database
+    public static FlightSummary of(Flight flight) {
+        return new FlightSummary(
+                flight.getId(),
+                flight.getFlightNumber(),
+                flight.getStatus(),
+                flight.getDepartureAirport().getIataCode(),
+                flight.getArrivalAirport().getIataCode(),
+                toMicros(flight.getDepartureTime()),
+                toMicros(flight.getArrivalTime()),
+                flight.getBasePrice() != null ? flight.getBasePrice().setScale(2, RoundingMode.HALF_UP) : null,
+                flight.getCapacity(),
+                flight.getSeatsSold());
+    }
+
+    FlightSummary withSeatsSold(int seatsSold) {
+        return new FlightSummary(id, flightNumber, status, departureAirportIataCode, arrivalAirportIataCode,
+                departureTime, arrivalTime, basePrice, capacity, seatsSold);
+    }
+
+    FlightSummary withAirports(String departureAirportIataCode, String arrivalAirportIataCode) {
+        return new FlightSummary(id, flightNumber, status, departureAirportIataCode, arrivalAirportIataCode,
+                departureTime, arrivalTime, basePrice, capacity, seatsSold);
+    }
+
+    private static LocalDateTime toMicros(LocalDateTime time) {
+        return time != null ? time.plusNanos(500).truncatedTo(ChronoUnit.MICROS) : null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.menglanyan.airline_booking.security;
 
 import com.github.menglanyan.airline_booking.exceptions.CustomAuthenticationEntryPoint;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -17,6 +19,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
@@ -27,6 +30,8 @@ public class AuthFilter extends OncePerRequestFilter {
 
     private final CustomUserDetailsService customUserDetailsService;
 
+    private final TokenRevocations tokenRevocations;
+
     private final CustomAuthenticationEntryPoint customAuthenticationEntryPoint;
 
     @Override
@@ -38,22 +43,44 @@ public class AuthFilter extends OncePerRequestFilter {
 
         if (token != null) {
 
-            String email;
+            Claims claims;
 
             try {
-                email = jwtUtils.getUsernameFromToken(token);
+                claims = jwtUtils.parseToken(token);
             } catch (Exception ex) {
                 AuthenticationException authenticationException = new BadCredentialsException(ex.getMessage());
                 customAuthenticationEntryPoint.commence(request, response, authenticationException);
                 return;
             }
 
-            UserDetails userDetails = customUserDetailsService.loadUserByUsername(email);
+            TokenUser tokenUser = jwtUtils.getTokenUser(claims);
+            UsernamePasswordAuthenticationToken authenticationToken = null;
+
+            if (tokenUser != null) {
+                // Everything needed is in the token, the user is not loaded
+                if (tokenRevocations.isRevoked(tokenUser.id(), jwtUtils.getTokenVersion(claims))) {
+                    AuthenticationException authenticationException =
+                            new BadCredentialsException("Token has been revoked, please log in again");
+                    customAuthenticationEntryPoint.commence(request, response, authenticationException);
+                    return;
+                }
+
+                List<SimpleGrantedAuthority> authorities = tokenUser.roles().stream()
+                        .map(SimpleGrantedAuthority::new)
+                        .toList();
+                authenticationToken = new UsernamePasswordAuthenticationToken(tokenUser, null, authorities);
+            } else {
+                // Tokens issued before they carried roles are checked against the user until they expire
+                UserDetails userDetails = customUserDetailsService.loadUserByUsername(claims.getSubject());
+
+                if (jwtUtils.isTokenValid(claims, userDetails) && userDetails.isEnabled()) {
+                    authenticationToken = new UsernamePasswordAuthenticationToken(
+                            userDetails, null, userDetails.getAuthorities()
+                    );
+                }
+            }
 
-            if (jwtUtils.isTokenValid(token, userDetails)) {
-                UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities()
-                );
+            if (authenticationToken != null) {
                 authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authenticationToken);
             }
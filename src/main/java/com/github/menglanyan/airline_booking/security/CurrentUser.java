@@ -0,0 +1,11 @@
+package com.github.menglanyan.airline_booking.security;
+
+import java.util.List;
+
+// Identity of the user making the current request, see CurrentUserResolver
+public record CurrentUser(Long id, String email, List<String> roles) {
+
+    public boolean hasRole(String roleName) {
+        return roles.stream().anyMatch(role -> role.equalsIgnoreCase(roleName));
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+// Resolves the user of the current request from the principal AuthFilter put in the SecurityContext, which
+// already knows the user's id and roles. Nothing here is kept between calls: the principal lives as long as
+// the request, and a User loaded by id stays in the request's persistence context (open-in-view), so asking
+// again within a request doesn't run another query either.
+@Component
+@RequiredArgsConstructor
+public class CurrentUserResolver {
+
+    private final UserRepo userRepo;
+
+    // Id, email and roles, without a query
+    public CurrentUser current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Object principal = authentication == null ? null : authentication.getPrincipal();
+
+        if (principal instanceof TokenUser tokenUser) {
+            return new CurrentUser(tokenUser.id(), tokenUser.email(), tokenUser.roles());
+        }
+        if (principal instanceof AuthUser authUser) {
+            User user = authUser.getUser();
+            return new CurrentUser(user.getId(), user.getEmail(), user.getRoles().stream()
+                    .map(Role::getName)
+                    .toList());
+        }
+        throw new NotFoundException("User Not Found");
+    }
+
+    // For associating the user with something that is saved, e.g. a booking. The user isn't read.
+    public User reference() {
+        return userRepo.getReferenceById(current().id());
+    }
+
+    // For reading. Tokens without roles made AuthFilter load the user already, that one is shared with
+    // other requests through the principal cache and must not be modified.
+    public User user() {
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (principal instanceof AuthUser authUser) {
+            return authUser.getUser();
+        }
+        return managedUser();
+    }
+
+    // For changing the user, attached to the current persistence context
+    public User managedUser() {
+        return userRepo.findById(current().id())
+                .orElseThrow(() -> new NotFoundException("User Not Found"));
+    }
+}
@@ -1,27 +1,101 @@
 package com.github.menglanyan.airline_booking.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
-import lombok.RequiredArgsConstructor;
+import com.github.menglanyan.airline_booking.utils.CacheFlushMarkers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+
+// AuthFilter loads the principal on every authenticated request. Principals are kept in a bounded cache
+// for principalCacheTtlSeconds, so a user's requests cost one user and roles query per TTL instead of
+// one per request. Changes made here are evicted right away, changes made elsewhere show up after the TTL
+// or, when flushEverywhere() is called, once every instance has checked the flush marker.
+// Hits and misses are reported as cache.gets{cache=principals}.
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class CustomUserDetailsService implements UserDetailsService {
 
+    static final String CACHE_NAME = "principals";
+
     private final UserRepo userRepo;
 
+    private final CacheFlushMarkers cacheFlushMarkers;
+
+    private final Cache<String, AuthUser> principals;
+
+    // Generation of the flush marker this instance's cache is up to date with, null until first checked
+    private volatile Long flushedGeneration;
+
+    public CustomUserDetailsService(UserRepo userRepo, CacheFlushMarkers cacheFlushMarkers,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${principalCacheTtlSeconds:60}") long ttlSeconds,
+                                    @Value("${principalCacheSize:10000}") long cacheSize) {
+        this.userRepo = userRepo;
+        this.cacheFlushMarkers = cacheFlushMarkers;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, CACHE_NAME);
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepo.findByEmail(username) // the parameter username actually is email
+        // Unknown emails throw and are not cached
+        return principals.get(username, this::loadUser); // the parameter username actually is email
+    }
+
+    private AuthUser loadUser(String email) {
+        User user = userRepo.findByEmail(email)
                 .orElseThrow(() -> new NotFoundException("User Not Found"));
 
         return AuthUser.builder()
                 .user(user)
                 .build();
     }
+
+    // Inside a transaction the entry is dropped once it commits, otherwise a request in between could cache
+    // the old row again
+    public void evict(String email) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    principals.invalidate(email);
+                }
+            });
+        } else {
+            principals.invalidate(email);
+        }
+    }
+
+    // Empties this cache and, within principalCacheFlushCheckIntervalMs, the cache of every other instance
+    public void flushEverywhere() {
+        cacheFlushMarkers.increment(CACHE_NAME);
+        principals.invalidateAll();
+        log.info("Flushed the principal cache on all instances");
+    }
+
+    // Called by PrincipalCacheFlushJob
+    public void checkFlushMarker() {
+        long generation = cacheFlushMarkers.generation(CACHE_NAME);
+        if (flushedGeneration == null || generation != flushedGeneration) {
+            principals.invalidateAll();
+            flushedGeneration = generation;
+        }
+    }
 }
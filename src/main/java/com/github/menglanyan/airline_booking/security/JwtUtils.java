@@ -1,8 +1,14 @@
 package com.github.menglanyan.airline_booking.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.utils.Sha256;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -10,54 +16,104 @@ import org.springframework.stereotype.Service;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
-import java.util.function.Function;
+import java.util.List;
 
+// Tokens are parsed and their signature verified once per request by parseToken(). Clients send the same
+// token with every request, so the claims of recently verified tokens are kept by the token's SHA-256 and a
+// repeat costs a hash and a map lookup instead of Base64, JSON parsing and an HMAC. Expiry is still checked
+// on every call.
+// Besides the email as subject, tokens carry the user id, role names and token version, AuthFilter builds
+// the Authentication from them without reading the user.
 @Service
 public class JwtUtils {
 
-    @Value("${jwtSecretString}")
-    private String jwtSecretString;
+    static final Duration EXPIRATION_TIME = Duration.ofDays(30);
 
-    private static final long EXPIRATION_TIME = 30L * 24 * 60 * 60 * 1000; // 30 days in millisec
+    private static final String CLAIM_USER_ID = "uid";
 
-    private SecretKey key;
+    private static final String CLAIM_ROLES = "roles";
 
-    @PostConstruct
-    private void init() {
+    private static final String CLAIM_TOKEN_VERSION = "ver";
+
+    // Short enough that a cache full of tokens nobody sends anymore empties itself
+    private static final Duration VERIFIED_TOKEN_TTL = Duration.ofMinutes(10);
+
+    private final SecretKey key;
+
+    // Thread-safe, built once instead of per call
+    private final JwtParser parser;
+
+    private final Cache<String, Claims> verifiedTokens;
+
+    public JwtUtils(@Value("${jwtSecretString}") String jwtSecretString,
+                    @Value("${jwtVerifiedTokenCacheSize:10000}") long verifiedTokenCacheSize) {
         byte[] keyByte = jwtSecretString.getBytes(StandardCharsets.UTF_8);
         this.key = new SecretKeySpec(keyByte, "HmacSHA256");
+        this.parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedTokenCacheSize)
+                .expireAfterWrite(VERIFIED_TOKEN_TTL)
+                .build();
     }
 
-    public String generateToken(String email) {
+    public String generateToken(User user) {
+        List<String> roleNames = user.getRoles().stream()
+                .map(Role::getName)
+                .toList();
+
         return Jwts.builder()
-                .subject(email)
+                .subject(user.getEmail())
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_ROLES, roleNames)
+                .claim(CLAIM_TOKEN_VERSION, user.getTokenVersion())
                 .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .expiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME.toMillis()))
                 .signWith(key)
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        return extractClaims(token, Claims::getSubject);
+    // Throws a JwtException for a token that is malformed, wrongly signed or expired
+    public Claims parseToken(String token) {
+        String tokenHash = Sha256.hex(token);
+
+        Claims claims = verifiedTokens.getIfPresent(tokenHash);
+        if (claims == null) {
+            claims = parser.parseSignedClaims(token).getPayload();
+            verifiedTokens.put(tokenHash, claims);
+        } else if (isExpired(claims)) {
+            verifiedTokens.invalidate(tokenHash);
+            throw new ExpiredJwtException(null, claims, "JWT expired at " + claims.getExpiration().toInstant());
+        }
+        return claims;
+    }
+
+    // Null for tokens issued before they carried the user id and roles
+    public TokenUser getTokenUser(Claims claims) {
+        Long userId = claims.get(CLAIM_USER_ID, Long.class);
+        if (userId == null) {
+            return null;
+        }
+
+        List<?> roles = claims.get(CLAIM_ROLES, List.class);
+        return new TokenUser(userId, claims.getSubject(), roles == null ? List.of() : roles.stream()
+                .map(String::valueOf)
+                .toList());
     }
 
-    private <T> T extractClaims(String token, Function<Claims, T> claimsTFunction) {
-        return claimsTFunction.apply(
-                Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-        );
+    public int getTokenVersion(Claims claims) {
+        Integer tokenVersion = claims.get(CLAIM_TOKEN_VERSION, Integer.class);
+        return tokenVersion == null ? 0 : tokenVersion;
     }
 
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isExpired(claims);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractClaims(token, Claims::getExpiration).before(new Date());
+    private static boolean isExpired(Claims claims) {
+        return claims.getExpiration() != null && claims.getExpiration().before(new Date());
     }
 }
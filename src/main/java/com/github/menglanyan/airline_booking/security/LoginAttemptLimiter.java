@@ -0,0 +1,153 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.menglanyan.airline_booking.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+// Turns away sign-in attempts before they cost a BCrypt hash. Only failed attempts count, per client IP and per
+// account, so the successful logins of many users behind one address lock nobody out, while guessing passwords
+// from one IP, or one account's password from many IPs, is still capped. Behind a proxy the client IP comes from
+// its forwarded headers, see server.forward-headers-strategy. Counts are kept over a sliding window, estimated from
+// the current and the previous fixed window, and updated under one of STRIPES locks picked by the key, so
+// unrelated keys rarely contend. Turned away attempts are counted in auth.login.rejected{limit=ip|account}.
+@Component
+public class LoginAttemptLimiter {
+
+    private static final int STRIPES = 64;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    private final Cache<String, SlidingWindow> windows;
+
+    private final long windowMillis;
+
+    private final int maxFailuresPerIp;
+
+    private final int maxFailuresPerAccount;
+
+    private final LongSupplier clock;
+
+    private final Counter rejectedByIp;
+
+    private final Counter rejectedByAccount;
+
+    @Autowired
+    public LoginAttemptLimiter(MeterRegistry meterRegistry,
+                               @Value("${loginAttemptWindowSeconds:300}") long windowSeconds,
+                               @Value("${loginMaxFailuresPerIp:50}") int maxFailuresPerIp,
+                               @Value("${loginMaxFailuresPerAccount:10}") int maxFailuresPerAccount,
+                               @Value("${loginAttemptTrackedKeys:100000}") long trackedKeys) {
+        this(meterRegistry, Duration.ofSeconds(windowSeconds), maxFailuresPerIp, maxFailuresPerAccount,
+                trackedKeys, System::currentTimeMillis);
+    }
+
+    LoginAttemptLimiter(MeterRegistry meterRegistry, Duration window, int maxFailuresPerIp,
+                        int maxFailuresPerAccount, long trackedKeys, LongSupplier clock) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.windowMillis = window.toMillis();
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.maxFailuresPerAccount = maxFailuresPerAccount;
+        this.clock = clock;
+        // A key idle for two windows counts zero anyway
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(trackedKeys)
+                .expireAfterAccess(window.multipliedBy(2))
+                .build();
+        this.rejectedByIp = meterRegistry.counter("auth.login.rejected", "limit", "ip");
+        this.rejectedByAccount = meterRegistry.counter("auth.login.rejected", "limit", "account");
+    }
+
+    // Throws if the IP or the account has failed too often
+    public void checkAttempt(String email, String clientIp) {
+        if (clientIp != null && count(ipKey(clientIp)) >= maxFailuresPerIp) {
+            rejectedByIp.increment();
+            throw tooMany();
+        }
+        if (email != null && count(accountKey(email)) >= maxFailuresPerAccount) {
+            rejectedByAccount.increment();
+            throw tooMany();
+        }
+    }
+
+    public void recordFailure(String email, String clientIp) {
+        if (clientIp != null) {
+            increment(ipKey(clientIp));
+        }
+        if (email != null) {
+            increment(accountKey(email));
+        }
+    }
+
+    private void increment(String key) {
+        SlidingWindow window = windows.get(key, k -> new SlidingWindow());
+        synchronized (lockFor(key)) {
+            window.roll(clock.getAsLong(), windowMillis);
+            window.current++;
+        }
+    }
+
+    private double count(String key) {
+        SlidingWindow window = windows.getIfPresent(key);
+        if (window == null) {
+            return 0;
+        }
+        synchronized (lockFor(key)) {
+            long now = clock.getAsLong();
+            window.roll(now, windowMillis);
+            return window.estimate(now, windowMillis);
+        }
+    }
+
+    private Object lockFor(String key) {
+        return locks[key.hashCode() & (STRIPES - 1)];
+    }
+
+    private static String ipKey(String clientIp) {
+        return "ip:" + clientIp;
+    }
+
+    private static String accountKey(String email) {
+        return "account:" + email.toLowerCase(Locale.ROOT);
+    }
+
+    private static TooManyRequestsException tooMany() {
+        return new TooManyRequestsException("Too many sign-in attempts, please try again later");
+    }
+
+    // Guarded by the stripe lock of its key
+    private static final class SlidingWindow {
+
+        private long currentStart;
+
+        private int current;
+
+        private int previous;
+
+        void roll(long now, long windowMillis) {
+            long start = now - Math.floorMod(now, windowMillis);
+            if (start == currentStart) {
+                return;
+            }
+            previous = start - currentStart == windowMillis ? current : 0;
+            current = 0;
+            currentStart = start;
+        }
+
+        // The previous window's count weighted by how much of it the sliding window still covers
+        double estimate(long now, long windowMillis) {
+            double previousWeight = 1.0 - (double) (now - currentStart) / windowMillis;
+            return previous * previousWeight + current;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.github.menglanyan.airline_booking.security;
 
+import com.github.menglanyan.airline_booking.config.AsyncConfig;
 import com.github.menglanyan.airline_booking.exceptions.CustomAccessDenialHandler;
 import com.github.menglanyan.airline_booking.exceptions.CustomAuthenticationEntryPoint;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.Customizer;
@@ -19,6 +23,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
@@ -61,8 +67,11 @@ public class SecurityFilter {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Qualifier(AsyncConfig.PASSWORD_HASHING_EXECUTOR) AsyncTaskExecutor passwordHashingExecutor,
+            @Value("${passwordHashingTimeoutMs:5000}") long passwordHashingTimeoutMs) {
+        return new PooledPasswordEncoder(new BCryptPasswordEncoder(), passwordHashingExecutor,
+                Duration.ofMillis(passwordHashingTimeoutMs));
     }
 
     @Bean
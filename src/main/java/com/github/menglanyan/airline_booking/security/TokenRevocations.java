@@ -0,0 +1,116 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tokens carry their user's id, roles and token version, so requests are authorized without reading the
+// user. When roles change or an account is deactivated the user's token version goes up. This keeps the
+// current version of users whose tokens were revoked within a token's lifetime, and is refreshed by
+// TokenRevocationRefreshJob, so an old token is rejected on every instance within one refresh interval.
+// Until the revocations are loaded, at startup or on the first token checked, no token is accepted.
+@Component
+@Slf4j
+public class TokenRevocations {
+
+    // Rows written by other instances with a slightly different clock are still picked up
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final UserRepo userRepo;
+
+    private final Map<Long, Revocation> revocations = new ConcurrentHashMap<>();
+
+    // Tokens issued before this can't be in use anymore, null until first refreshed
+    private volatile LocalDateTime refreshedUntil;
+
+    private final Clock clock;
+
+    @Autowired
+    public TokenRevocations(UserRepo userRepo) {
+        this(userRepo, Clock.systemDefaultZone());
+    }
+
+    TokenRevocations(UserRepo userRepo, Clock clock) {
+        this.userRepo = userRepo;
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    public boolean isRevoked(Long userId, int tokenVersion) {
+        if (refreshedUntil == null && !load()) {
+            return true;
+        }
+        Revocation revocation = revocations.get(userId);
+        return revocation != null && tokenVersion < revocation.version();
+    }
+
+    // For revocations made by this instance, which shouldn't wait for the next refresh. Inside a transaction
+    // it waits until the new version is committed, a rolled back revocation must not reject anyone.
+    public void revoked(Long userId, int currentVersion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(userId, currentVersion, LocalDateTime.now(clock));
+                }
+            });
+        } else {
+            record(userId, currentVersion, LocalDateTime.now(clock));
+        }
+    }
+
+    // Synchronized so two refreshes can't read overlapping rows and move refreshedUntil back
+    public synchronized void refresh() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime since = refreshedUntil != null
+                ? refreshedUntil.minus(CLOCK_SKEW)
+                : now.minus(JwtUtils.EXPIRATION_TIME);
+
+        for (UserRepo.TokenVersion revoked : userRepo.findByTokensRevokedAtGreaterThanEqual(since)) {
+            record(revoked.getId(), revoked.getTokenVersion(), revoked.getTokensRevokedAt());
+        }
+        // Every token issued before these revocations has expired by now
+        LocalDateTime expired = now.minus(JwtUtils.EXPIRATION_TIME).minus(CLOCK_SKEW);
+        revocations.values().removeIf(revocation -> revocation.revokedAt().isBefore(expired));
+        refreshedUntil = now;
+    }
+
+    // False when the revocations could not be loaded
+    private synchronized boolean load() {
+        if (refreshedUntil != null) {
+            return true;
+        }
+        try {
+            refresh();
+            return true;
+        } catch (RuntimeException ex) {
+            log.error("Could not load token revocations, rejecting all tokens until they are loaded", ex);
+            return false;
+        }
+    }
+
+    private void record(Long userId, int currentVersion, LocalDateTime revokedAt) {
+        revocations.merge(userId, new Revocation(currentVersion, revokedAt), (previous, revocation) ->
+                new Revocation(Math.max(previous.version(), revocation.version()),
+                        previous.revokedAt().isAfter(revocation.revokedAt())
+                                ? previous.revokedAt() : revocation.revokedAt()));
+    }
+
+    private record Revocation(int version, LocalDateTime revokedAt) {
+    }
+}
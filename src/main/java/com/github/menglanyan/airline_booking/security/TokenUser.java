@@ -0,0 +1,14 @@
+package com.github.menglanyan.airline_booking.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.util.List;
+
+// Principal built from the claims of a token, no user row is loaded for it
+public record TokenUser(Long id, String email, List<String> roles) implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -7,7 +7,7 @@ import com.github.menglanyan.airline_booking.dtos.Response;
 
 public interface AuthService {
 
-    Response<?> register(RegistrationRequest registrationRequest);
+    Response<?> register(RegistrationRequest registrationRequest, String clientIp);
 
-    Response<LoginResponse> login(LoginRequest loginRequest);
+    Response<LoginResponse> login(LoginRequest loginRequest, String clientIp);
 }
@@ -0,0 +1,11 @@
+package com.github.menglanyan.airline_booking.services;
+
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.enums.ExportFormat;
+
+import java.io.OutputStream;
+
+public interface BookingExportService {
+
+    void exportBookings(BookingFilter filter, ExportFormat format, OutputStream outputStream);
+}
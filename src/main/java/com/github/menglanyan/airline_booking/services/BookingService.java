@@ -1,7 +1,12 @@
 package com.github.menglanyan.airline_booking.services;
 
+import com.github.menglanyan.airline_booking.dtos.BatchBookingResult;
 import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.BookingHoldResponse;
+import com.github.menglanyan.airline_booking.dtos.CreateBatchBookingRequest;
 import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
 import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.BookingStatus;
@@ -12,11 +17,17 @@ public interface BookingService {
 
     Response<?> createBooking(CreateBookingRequest createBookingRequest);
 
+    Response<List<BatchBookingResult>> createBookings(CreateBatchBookingRequest createBatchBookingRequest);
+
+    Response<BookingHoldResponse> holdBooking(CreateBookingRequest createBookingRequest);
+
+    Response<?> confirmBooking(Long id);
+
     Response<BookingDTO> getBookingById(Long id);
 
-    Response<List<BookingDTO>> getAllBookings();
+    Response<CursorPage<BookingDTO>> getAllBookings(BookingFilter filter, Long cursor, int size);
 
-    Response<List<BookingDTO>> getMyBookings();
+    Response<CursorPage<BookingDTO>> getMyBookings(BookingFilter filter, Long cursor, int size);
 
     Response<?> updateBookingStatus(Long id, BookingStatus bookingStatus);
 }
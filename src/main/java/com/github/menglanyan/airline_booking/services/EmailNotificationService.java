@@ -1,11 +1,33 @@
 package com.github.menglanyan.airline_booking.services;
 
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
+import com.github.menglanyan.airline_booking.dtos.EmailOutboxMessageDTO;
+import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.entities.Booking;
 import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+
+import java.util.List;
 
 public interface EmailNotificationService {
 
-    void sendBookingTicketEmail(Booking booking);
+    void queueBookingTicketEmail(Booking booking);
+
+    void queueBookingTicketEmails(List<Booking> bookings);
+
+    void queueWelcomeEmail(User user);
+
+    int dispatchQueuedEmails(EmailType type, int batchSize);
+
+    Response<CursorPage<EmailOutboxMessageDTO>> getDeadLetters(Long cursor, int size);
+
+    Response<EmailOutboxMessageDTO> replayDeadLetter(Long id);
+
+    Response<Integer> replayDeadLetters();
+
+    String getNotificationBody(Long id);
+
+    int purgeOldNotifications(int batchSize);
 
-    void sendWelcomeEmail(User user);
+    int purgeSentOutboxMessages(int batchSize);
 }
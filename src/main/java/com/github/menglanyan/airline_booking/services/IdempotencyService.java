@@ -0,0 +1,12 @@
+package com.github.menglanyan.airline_booking.services;
+
+import com.github.menglanyan.airline_booking.dtos.Response;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    <T> Response<T> execute(String operation, String idempotencyKey, Object request, Supplier<Response<T>> action);
+
+    int purgeExpiredKeys(int batchSize);
+}
@@ -10,8 +10,18 @@ public interface UserService {
 
     User currentUser();
 
+    User currentUserReference();
+
+    Long currentUserId();
+
+    boolean currentUserHasRole(String roleName);
+
     Response<?> updateMyAccount(UserDTO userDTO);
 
+    Response<?> deactivateAccount(Long id);
+
+    Response<?> flushPrincipalCache();
+
     Response<List<UserDTO>> getAllPilots();
 
     Response<UserDTO> getAccountDetails();
@@ -7,11 +7,12 @@ import com.github.menglanyan.airline_booking.enums.City;
 import com.github.menglanyan.airline_booking.enums.Country;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.mappers.AirportMapper;
 import com.github.menglanyan.airline_booking.repo.AirportRepo;
 import com.github.menglanyan.airline_booking.services.AirportService;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
@@ -24,7 +25,9 @@ public class AirportServiceImpl implements AirportService {
 
     private final AirportRepo airportRepo;
 
-    private final ModelMapper modelMapper;
+    private final AirportMapper airportMapper;
+
+    private final ReferenceDataCache referenceDataCache;
 
     @Override
     public Response<?> createAirport(AirportDTO airportDTO) {
@@ -37,8 +40,9 @@ public class AirportServiceImpl implements AirportService {
             throw new BadRequestException("City does not belong to the country");
         }
 
-        Airport airport = modelMapper.map(airportDTO, Airport.class);
+        Airport airport = airportMapper.toEntity(airportDTO);
         airportRepo.save(airport);
+        referenceDataCache.changed();
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -70,6 +74,7 @@ public class AirportServiceImpl implements AirportService {
         }
 
         airportRepo.save(existingAirport);
+        referenceDataCache.changed();
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -80,7 +85,7 @@ public class AirportServiceImpl implements AirportService {
     @Override
     public Response<List<AirportDTO>> getAllAirports() {
         List<AirportDTO> airports = airportRepo.findAll().stream()
-                .map(airport -> modelMapper.map(airport, AirportDTO.class))
+                .map(airportMapper::toDTO)
                 .toList();
 
         return Response.<List<AirportDTO>>builder()
@@ -95,7 +100,7 @@ public class AirportServiceImpl implements AirportService {
         Airport airport = airportRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("Airport Not Found"));
 
-        AirportDTO airportDTO = modelMapper.map(airport, AirportDTO.class);
+        AirportDTO airportDTO = airportMapper.toDTO(airport);
 
         return Response.<AirportDTO>builder()
                 .statusCode(HttpStatus.OK.value())
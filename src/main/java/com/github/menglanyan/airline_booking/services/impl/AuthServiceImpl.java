@@ -9,16 +9,18 @@ import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.AuthMethod;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
-import com.github.menglanyan.airline_booking.repo.RoleRepo;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
 import com.github.menglanyan.airline_booking.security.JwtUtils;
+import com.github.menglanyan.airline_booking.security.LoginAttemptLimiter;
 import com.github.menglanyan.airline_booking.services.AuthService;
 import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -35,28 +37,36 @@ public class AuthServiceImpl implements AuthService {
 
     private final JwtUtils jwtUtils;
 
-    private final RoleRepo roleRepo;
+    private final ReferenceDataCache referenceDataCache;
 
     private final EmailNotificationService emailNotificationService;
 
+    private final LoginAttemptLimiter loginAttemptLimiter;
+
     @Override
-    public Response<?> register(RegistrationRequest registrationRequest) {
+    @Transactional
+    public Response<?> register(RegistrationRequest registrationRequest, String clientIp) {
         log.info("Inside register()");
 
+        // An IP that keeps failing is turned away here too, before its registration costs a hash. Registering
+        // taken emails counts as failing, it probes which accounts exist.
+        loginAttemptLimiter.checkAttempt(null, clientIp);
+
         // Check if email already exist
         if (userRepo.existsByEmail(registrationRequest.getEmail())) {
+            loginAttemptLimiter.recordFailure(null, clientIp);
             throw new BadRequestException("Email already exists.");
         }
 
         // Prepare roles for new user, user will always have a default role of CUSTOMER
-        Role defaultRole = roleRepo.findByName("CUSTOMER")
+        Role defaultRole = referenceDataCache.findRole("CUSTOMER")
                 .orElseThrow(() -> new NotFoundException("Role CUSTOMER does not exist."));
 
         List<Role> userRoles;
         if (registrationRequest.getRoles() != null && !registrationRequest.getRoles().isEmpty()) {
             userRoles = new ArrayList<>(
                     registrationRequest.getRoles().stream()
-                    .map(roleName -> roleRepo.findByName(roleName.toUpperCase())
+                    .map(roleName -> referenceDataCache.findRole(roleName.toUpperCase())
                             .orElseThrow(() -> new NotFoundException("Role" + roleName + "Not Found")))
                     .toList()
             );
@@ -78,7 +88,8 @@ public class AuthServiceImpl implements AuthService {
 
         User savedUser = userRepo.save(userToSave);
 
-        emailNotificationService.sendWelcomeEmail(savedUser);
+        // Goes out once the user is committed, see EmailOutboxDispatchJob
+        emailNotificationService.queueWelcomeEmail(savedUser);
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -87,21 +98,28 @@ public class AuthServiceImpl implements AuthService {
     }
 
     @Override
-    public Response<LoginResponse> login(LoginRequest loginRequest) {
+    public Response<LoginResponse> login(LoginRequest loginRequest, String clientIp) {
         log.info("Inside login()");
 
-        User user = userRepo.findByEmail(loginRequest.getEmail())
-                .orElseThrow(() -> new NotFoundException("Email Not Found"));
+        loginAttemptLimiter.checkAttempt(loginRequest.getEmail(), clientIp);
+
+        User user = userRepo.findByEmail(loginRequest.getEmail()).orElse(null);
+        if (user == null) {
+            loginAttemptLimiter.recordFailure(loginRequest.getEmail(), clientIp);
+            throw new NotFoundException("Email Not Found");
+        }
 
         if (!user.isActive()) {
+            loginAttemptLimiter.recordFailure(loginRequest.getEmail(), clientIp);
             throw new NotFoundException("Account is not active. Please reach out the user");
         }
 
         if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
+            loginAttemptLimiter.recordFailure(loginRequest.getEmail(), clientIp);
             throw new BadRequestException("Invalid Password");
         }
 
-        String token = jwtUtils.generateToken(user.getEmail());
+        String token = jwtUtils.generateToken(user);
 
         List<String> roleNames = user.getRoles().stream()
                 .map(Role::getName)
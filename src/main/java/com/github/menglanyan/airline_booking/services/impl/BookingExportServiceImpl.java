@@ -0,0 +1,267 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.ExportFormat;
+import com.github.menglanyan.airline_booking.repo.BookingSpecifications;
+import com.github.menglanyan.airline_booking.services.BookingExportService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Streams bookings and their passengers to the client as NDJSON (one booking per line) or CSV (one passenger
+// per line). Rows come from a forward-only scroll over a scalar projection, so nothing is added to the
+// persistence context and only the current booking is held in memory, however many rows are exported.
+@Service
+@Slf4j
+public class BookingExportServiceImpl implements BookingExportService {
+
+    private static final String[] CSV_HEADER = {"booking_id", "booking_reference", "status", "booking_date",
+            "flight_number", "user_email", "passenger_first_name", "passenger_last_name", "passport_number",
+            "passenger_type", "seat_number"};
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Rows fetched per round trip. MySQL Connector/J ignores it and buffers the whole result unless the
+    // datasource URL sets useCursorFetch=true, as application.properties.example does.
+    @Value("${bookingExportFetchSize:1000}")
+    private int fetchSize;
+
+    public BookingExportServiceImpl(EntityManager entityManager, ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @Override
+    public void exportBookings(BookingFilter filter, ExportFormat format, OutputStream outputStream) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (ExportWriter writer = format == ExportFormat.CSV ? new CsvWriter(outputStream)
+                    : new NdjsonWriter(outputStream);
+                 ScrollableResults<Tuple> rows = scrollRows(filter)) {
+
+                int exported = 0;
+                ExportedBooking current = null;
+
+                // Rows are ordered by booking, so a booking is complete once a row of the next one shows up
+                while (rows.next()) {
+                    Tuple row = rows.get();
+                    Long bookingId = row.get("bookingId", Long.class);
+
+                    if (current == null || !current.id().equals(bookingId)) {
+                        if (current != null) {
+                            writer.write(current);
+                            exported++;
+                        }
+                        current = new ExportedBooking(bookingId, row.get("bookingReference", String.class),
+                                Objects.toString(row.get("status"), null),
+                                Objects.toString(row.get("bookingDate"), null),
+                                row.get("flightNumber", String.class), row.get("userEmail", String.class),
+                                new ArrayList<>());
+                    }
+
+                    if (row.get("passengerId") != null) {
+                        current.passengers().add(new ExportedPassenger(row.get("firstName", String.class),
+                                row.get("lastName", String.class), row.get("passportNumber", String.class),
+                                Objects.toString(row.get("passengerType"), null),
+                                row.get("seatNumber", String.class)));
+                    }
+                }
+
+                if (current != null) {
+                    writer.write(current);
+                    exported++;
+                }
+
+                log.info("Exported {} bookings as {}", exported, format);
+            } catch (IOException e) {
+                // Usually the client went away, nothing more can be sent on this response
+                throw new UncheckedIOException("Booking export aborted", e);
+            }
+        });
+    }
+
+    private ScrollableResults<Tuple> scrollRows(BookingFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+
+        Root<Booking> booking = query.from(Booking.class);
+        Join<Booking, Flight> flight = booking.join("flight", JoinType.LEFT);
+        Join<Booking, User> user = booking.join("user", JoinType.LEFT);
+        Join<Booking, Passenger> passenger = booking.join("passengers", JoinType.LEFT);
+
+        query.multiselect(
+                booking.get("id").alias("bookingId"),
+                booking.get("bookingReference").alias("bookingReference"),
+                booking.get("status").alias("status"),
+                booking.get("bookingDate").alias("bookingDate"),
+                flight.get("flightNumber").alias("flightNumber"),
+                user.get("email").alias("userEmail"),
+                passenger.get("id").alias("passengerId"),
+                passenger.get("firstName").alias("firstName"),
+                passenger.get("lastName").alias("lastName"),
+                passenger.get("passportNumber").alias("passportNumber"),
+                passenger.get("type").alias("passengerType"),
+                passenger.get("seatNumber").alias("seatNumber"));
+        query.where(BookingSpecifications.matching(filter, null).toPredicate(booking, query, cb));
+        query.orderBy(cb.asc(booking.get("id")), cb.asc(passenger.get("id")));
+
+        return entityManager.unwrap(Session.class)
+                .createQuery(query)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    private interface ExportWriter extends AutoCloseable {
+
+        void write(ExportedBooking booking) throws IOException;
+
+        // Flushes what is buffered, the output stream itself belongs to the caller and stays open
+        @Override
+        void close() throws IOException;
+    }
+
+    private class NdjsonWriter implements ExportWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonWriter(OutputStream outputStream) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(outputStream)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ExportedBooking booking) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", booking.id());
+            generator.writeStringField("bookingReference", booking.bookingReference());
+            generator.writeStringField("status", booking.status());
+            generator.writeStringField("bookingDate", booking.bookingDate());
+            generator.writeStringField("flightNumber", booking.flightNumber());
+            generator.writeStringField("userEmail", booking.userEmail());
+            generator.writeArrayFieldStart("passengers");
+            for (ExportedPassenger passenger : booking.passengers()) {
+                generator.writeStartObject();
+                generator.writeStringField("firstName", passenger.firstName());
+                generator.writeStringField("lastName", passenger.lastName());
+                generator.writeStringField("passportNumber", passenger.passportNumber());
+                generator.writeStringField("type", passenger.type());
+                generator.writeStringField("seatNumber", passenger.seatNumber());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static class CsvWriter implements ExportWriter {
+
+        private final Writer writer;
+
+        CsvWriter(OutputStream outputStream) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writeLine(CSV_HEADER);
+        }
+
+        @Override
+        public void write(ExportedBooking booking) throws IOException {
+            // A booking without passengers still gets a line, with the passenger columns left empty
+            if (booking.passengers().isEmpty()) {
+                writeLine(bookingColumns(booking, null));
+            }
+            for (ExportedPassenger passenger : booking.passengers()) {
+                writeLine(bookingColumns(booking, passenger));
+            }
+        }
+
+        private static String[] bookingColumns(ExportedBooking booking, ExportedPassenger passenger) {
+            return new String[]{String.valueOf(booking.id()), booking.bookingReference(), booking.status(),
+                    booking.bookingDate(), booking.flightNumber(), booking.userEmail(),
+                    passenger == null ? null : passenger.firstName(),
+                    passenger == null ? null : passenger.lastName(),
+                    passenger == null ? null : passenger.passportNumber(),
+                    passenger == null ? null : passenger.type(),
+                    passenger == null ? null : passenger.seatNumber()};
+        }
+
+        private void writeLine(String[] columns) throws IOException {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(columns[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        // RFC 4180: quote fields containing a separator, quote or line break, and double the quotes inside
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private record ExportedBooking(Long id, String bookingReference, String status, String bookingDate,
+                                   String flightNumber, String userEmail, List<ExportedPassenger> passengers) {
+    }
+
+    private record ExportedPassenger(String firstName, String lastName, String passportNumber, String type,
+                                     String seatNumber) {
+    }
+}
@@ -1,7 +1,12 @@
 package com.github.menglanyan.airline_booking.services.impl;
 
+import com.github.menglanyan.airline_booking.dtos.BatchBookingResult;
 import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.BookingHoldResponse;
+import com.github.menglanyan.airline_booking.dtos.CreateBatchBookingRequest;
 import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
 import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.entities.Booking;
 import com.github.menglanyan.airline_booking.entities.Flight;
@@ -11,15 +16,21 @@ import com.github.menglanyan.airline_booking.enums.BookingStatus;
 import com.github.menglanyan.airline_booking.enums.FlightStatus;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.mappers.BookingMapper;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapper;
 import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.BookingSpecifications;
 import com.github.menglanyan.airline_booking.repo.FlightRepo;
 import com.github.menglanyan.airline_booking.repo.PassengerRepo;
+import com.github.menglanyan.airline_booking.retry.RetryOnConflict;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
 import com.github.menglanyan.airline_booking.services.BookingService;
 import com.github.menglanyan.airline_booking.services.EmailNotificationService;
 import com.github.menglanyan.airline_booking.services.UserService;
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -27,8 +38,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.awt.print.Book;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 @Slf4j
@@ -43,51 +60,168 @@ public class BookingServiceImpl implements BookingService {
 
     private final PassengerRepo passengerRepo;
 
-    private final ModelMapper modelMapper;
+    private final BookingMapper bookingMapper;
+
+    private final PassengerMapper passengerMapper;
 
     private final EmailNotificationService emailNotificationService;
 
+    private final BookingReferenceGenerator bookingReferenceGenerator;
+
+    private final FlightSearchIndex flightSearchIndex;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // To-one associations mapped into each BookingDTO, joined into the page select. Passengers and roles are
+    // collections and load for the whole page at once through hibernate.default_batch_fetch_size.
+    private static final List<String> BOOKING_LIST_FETCH_PLAN = List.of("user", "flight",
+            "flight.departureAirport", "flight.arrivalAirport", "flight.assignedPilot");
+
+    @Value("${bookingHoldTtlMinutes:15}")
+    private long bookingHoldTtlMinutes;
+
     @Override
     @Transactional
     public Response<?> createBooking(CreateBookingRequest createBookingRequest) {
-        User user = userService.currentUser();
+        Booking savedBooking = placeBooking(createBookingRequest, BookingStatus.CONFIRMED);
 
-        Flight flight = flightRepo.findById(createBookingRequest.getFlightId())
-                .orElseThrow(() -> new NotFoundException("Flight Not Found"));
+        emailNotificationService.queueBookingTicketEmail(savedBooking);
 
-        if (flight.getStatus() != FlightStatus.SCHEDULED) {
-            throw new BadRequestException("You can only book a flight that is scheduled");
+        return Response.builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Booking Created Successfully")
+                .build();
+    }
+
+    @Override
+    @Transactional
+    public Response<BookingHoldResponse> holdBooking(CreateBookingRequest createBookingRequest) {
+        Booking savedBooking = placeBooking(createBookingRequest, BookingStatus.PENDING);
+
+        BookingHoldResponse bookingHoldResponse = new BookingHoldResponse(savedBooking.getId(),
+                savedBooking.getBookingReference(), savedBooking.getHoldExpiresAt());
+
+        return Response.<BookingHoldResponse>builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Seats Held Successfully")
+                .data(bookingHoldResponse)
+                .build();
+    }
+
+    @Override
+    @Transactional
+    @RetryOnConflict
+    public Response<?> confirmBooking(Long id) {
+        Long userId = userService.currentUserId();
+
+        Booking booking = bookingRepo.findById(id)
+                .orElseThrow(() -> new NotFoundException("Booking Not Found"));
+
+        if (!booking.getUser().getId().equals(userId)) {
+            throw new BadRequestException("You can only confirm your own booking");
+        }
+
+        if (booking.getStatus() != BookingStatus.PENDING) {
+            throw new BadRequestException("Only a pending booking can be confirmed");
+        }
+
+        // The expiry job may not have released it yet, but an expired hold must not be confirmed anymore.
+        // A pending booking without an expiry is not a hold that can be confirmed either.
+        if (booking.getHoldExpiresAt() == null || !booking.getHoldExpiresAt().isAfter(LocalDateTime.now())) {
+            throw new BadRequestException("The seat hold has expired");
         }
 
-        Booking booking = new Booking();
-        booking.setBookingReference(generateBookingReference());
-        booking.setUser(user);
-        booking.setFlight(flight);
-        booking.setBookingDate(LocalDateTime.now());
         booking.setStatus(BookingStatus.CONFIRMED);
+        booking.setHoldExpiresAt(null);
 
         Booking savedBooking = bookingRepo.save(booking);
 
-        if (createBookingRequest.getPassengers() != null && !createBookingRequest.getPassengers().isEmpty()) {
+        emailNotificationService.queueBookingTicketEmail(savedBooking);
 
-            List<Passenger> passengers = createBookingRequest.getPassengers().stream()
+        return Response.builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Booking Confirmed Successfully")
+                .build();
+    }
+
+    @Override
+    @Transactional
+    public Response<List<BatchBookingResult>> createBookings(CreateBatchBookingRequest createBatchBookingRequest) {
+        User user = userService.currentUserReference();
+
+        List<CreateBookingRequest> bookingRequests = createBatchBookingRequest.getBookings();
+
+        // Load every flight of the batch with a single query
+        Set<Long> flightIds = bookingRequests.stream()
+                .map(CreateBookingRequest::getFlightId)
+                .collect(Collectors.toSet());
+        Map<Long, Flight> flights = flightRepo.findAllById(flightIds).stream()
+                .collect(Collectors.toMap(Flight::getId, Function.identity()));
+
+        BatchBookingResult[] results = new BatchBookingResult[bookingRequests.size()];
+        List<Booking> bookings = new ArrayList<>();
+        List<Passenger> passengers = new ArrayList<>();
+
+        // Reserve in flight id order, so concurrent batches lock flight rows in the same order and can't deadlock
+        List<Integer> reservationOrder = IntStream.range(0, bookingRequests.size()).boxed()
+                .sorted(Comparator.comparing(index -> bookingRequests.get(index).getFlightId()))
+                .toList();
+
+        for (int index : reservationOrder) {
+            CreateBookingRequest bookingRequest = bookingRequests.get(index);
+            Long flightId = bookingRequest.getFlightId();
+            Flight flight = flights.get(flightId);
+
+            if (flight == null) {
+                results[index] = new BatchBookingResult(index, flightId, false, null, "Flight Not Found");
+                continue;
+            }
+
+            if (flight.getStatus() != FlightStatus.SCHEDULED) {
+                results[index] = new BatchBookingResult(index, flightId, false, null,
+                        "You can only book a flight that is scheduled");
+                continue;
+            }
+
+            if (flightRepo.reserveSeats(flightId, bookingRequest.getPassengers().size()) == 0) {
+                results[index] = new BatchBookingResult(index, flightId, false, null,
+                        "Not enough seats available on this flight");
+                continue;
+            }
+            flightSearchIndex.seatsChanged(flightId, bookingRequest.getPassengers().size());
+
+            Booking booking = new Booking();
+            booking.setBookingReference(bookingReferenceGenerator.nextReference());
+            booking.setUser(user);
+            booking.setFlight(flight);
+            booking.setBookingDate(LocalDateTime.now());
+            booking.setStatus(BookingStatus.CONFIRMED);
+            booking.setPassengers(bookingRequest.getPassengers().stream()
                     .map(passengerDTO -> {
-                        Passenger passenger = modelMapper.map(passengerDTO, Passenger.class);
-                        passenger.setBooking(savedBooking);
+                        Passenger passenger = passengerMapper.toEntity(passengerDTO);
+                        passenger.setBooking(booking);
                         return passenger;
                     })
-                    .toList();
+                    .toList());
 
-            passengerRepo.saveAll(passengers);
-
-            savedBooking.setPassengers(passengers);
+            bookings.add(booking);
+            passengers.addAll(booking.getPassengers());
+            results[index] = new BatchBookingResult(index, flightId, true, booking.getBookingReference(),
+                    "Booking Created Successfully");
         }
 
-        emailNotificationService.sendBookingTicketEmail(savedBooking);
+        // Inserted with one JDBC batch per table, see JpaBatchingConfig
+        bookingRepo.saveAll(bookings);
+        passengerRepo.saveAll(passengers);
 
-        return Response.builder()
+        if (!bookings.isEmpty()) {
+            emailNotificationService.queueBookingTicketEmails(bookings);
+        }
+
+        return Response.<List<BatchBookingResult>>builder()
                 .statusCode(HttpStatus.OK.value())
-                .message("Booking Created Successfully")
+                .message(bookings.size() + " of " + bookingRequests.size() + " Bookings Created Successfully")
+                .data(List.of(results))
                 .build();
     }
 
@@ -96,10 +230,7 @@ public class BookingServiceImpl implements BookingService {
         Booking booking = bookingRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("Booking Not Found"));
 
-        BookingDTO bookingDTO = modelMapper.map(booking, BookingDTO.class);
-        // Break the bidirectional relationship to avoid recursive loop during serialization:
-        // FlightDTO → BookingDTO → FlightDTO → BookingDTO ...
-        bookingDTO.getFlight().setBooking(null);
+        BookingDTO bookingDTO = bookingMapper.toDTO(booking);
 
         return Response.<BookingDTO>builder()
                 .statusCode(HttpStatus.OK.value())
@@ -109,58 +240,56 @@ public class BookingServiceImpl implements BookingService {
     }
 
     @Override
-    public Response<List<BookingDTO>> getAllBookings() {
-        List<Booking> allBookings = bookingRepo.findAll(Sort.by(Sort.Direction.DESC, "id"));
-
-        List<BookingDTO> bookingDTOS = allBookings.stream()
-                .map(booking -> {
-                    BookingDTO bookingDTO = modelMapper.map(booking, BookingDTO.class);
-                    // Break the bidirectional relationship to avoid recursive loop during serialization:
-                    // FlightDTO → BookingDTO → FlightDTO → BookingDTO ...
-                    bookingDTO.getFlight().setBooking(null);
-                    return bookingDTO;
-                })
-                .toList();
+    public Response<CursorPage<BookingDTO>> getAllBookings(BookingFilter filter, Long cursor, int size) {
+        CursorPage<BookingDTO> page = findBookingPage(filter, cursor, size);
 
-        return Response.<List<BookingDTO>>builder()
+        return Response.<CursorPage<BookingDTO>>builder()
                 .statusCode(HttpStatus.OK.value())
-                .message(bookingDTOS.isEmpty() ? "No Booking Found" : "All Bookings Retrieved Successfully")
-                .data(bookingDTOS)
+                .message(page.getItems().isEmpty() ? "No Booking Found" : "All Bookings Retrieved Successfully")
+                .data(page)
                 .build();
     }
 
     @Override
-    public Response<List<BookingDTO>> getMyBookings() {
-        User user = userService.currentUser();
-
-        List<Booking> userBookings = bookingRepo.findByUserIdOrderByIdDesc(user.getId());
-
-        List<BookingDTO> userBookingDTOS = userBookings.stream()
-                .map(booking -> {
-                    BookingDTO bookingDTO = modelMapper.map(booking, BookingDTO.class);
-                    // Break the bidirectional relationship to avoid recursive loop during serialization:
-                    // FlightDTO → BookingDTO → FlightDTO → BookingDTO ...
-                    bookingDTO.getFlight().setBooking(null);
-                    return bookingDTO;
-                })
-                .toList();
+    public Response<CursorPage<BookingDTO>> getMyBookings(BookingFilter filter, Long cursor, int size) {
+        filter.setUserId(userService.currentUserId());
+
+        CursorPage<BookingDTO> page = findBookingPage(filter, cursor, size);
 
-        return Response.<List<BookingDTO>>builder()
+        return Response.<CursorPage<BookingDTO>>builder()
                 .statusCode(HttpStatus.OK.value())
-                .message(userBookingDTOS.isEmpty() ? "No Booking Found For The User" :
+                .message(page.getItems().isEmpty() ? "No Booking Found For The User" :
                         "User Bookings Retrieved Successfully")
-                .data(userBookingDTOS)
+                .data(page)
                 .build();
     }
 
     @Override
     @Transactional
+    @RetryOnConflict
     public Response<?> updateBookingStatus(Long id, BookingStatus bookingStatus) {
         Booking existingBooking = bookingRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("Booking Not Found"));
 
+        // Give seats back when a booking gets cancelled, and take them again if it gets reinstated
+        BookingStatus previousStatus = existingBooking.getStatus();
+        int seats = existingBooking.getPassengers().size();
+
+        if (bookingStatus == BookingStatus.CANCELLED && previousStatus != BookingStatus.CANCELLED) {
+            releaseSeats(existingBooking.getFlight(), seats);
+        } else if (previousStatus == BookingStatus.CANCELLED && bookingStatus != BookingStatus.CANCELLED) {
+            reserveSeats(existingBooking.getFlight(), seats);
+        }
+
         existingBooking.setStatus(bookingStatus);
 
+        // A booking moved back to PENDING becomes a new hold, so the expiry job releases it if it isn't confirmed
+        if (bookingStatus != BookingStatus.PENDING) {
+            existingBooking.setHoldExpiresAt(null);
+        } else if (previousStatus != BookingStatus.PENDING) {
+            existingBooking.setHoldExpiresAt(LocalDateTime.now().plusMinutes(bookingHoldTtlMinutes));
+        }
+
         bookingRepo.save(existingBooking);
 
         return Response.builder()
@@ -169,7 +298,95 @@ public class BookingServiceImpl implements BookingService {
                 .build();
     }
 
-    private String generateBookingReference() {
-        return UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    // Keyset pagination: each page continues below the last id of the previous one, so a deep page
+    // costs the same as the first. One extra row is fetched to know whether there is a next page.
+    private CursorPage<BookingDTO> findBookingPage(BookingFilter filter, Long cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        List<Booking> bookings = bookingRepo.findBy(BookingSpecifications.matching(filter, cursor),
+                query -> query.project(BOOKING_LIST_FETCH_PLAN)
+                        .sortBy(Sort.by(Sort.Direction.DESC, "id"))
+                        .limit(size + 1)
+                        .all());
+
+        boolean hasMore = bookings.size() > size;
+        List<Booking> pageBookings = hasMore ? bookings.subList(0, size) : bookings;
+
+        List<BookingDTO> bookingDTOS = pageBookings.stream()
+                .map(bookingMapper::toDTO)
+                .toList();
+
+        Long nextCursor = hasMore ? pageBookings.get(pageBookings.size() - 1).getId() : null;
+        return new CursorPage<>(bookingDTOS, nextCursor);
+    }
+
+    private Booking placeBooking(CreateBookingRequest createBookingRequest, BookingStatus status) {
+        // Only the user's id is needed for the booking row
+        User user = userService.currentUserReference();
+
+        Flight flight = flightRepo.findById(createBookingRequest.getFlightId())
+                .orElseThrow(() -> new NotFoundException("Flight Not Found"));
+
+        if (flight.getStatus() != FlightStatus.SCHEDULED) {
+            throw new BadRequestException("You can only book a flight that is scheduled");
+        }
+
+        Booking booking = new Booking();
+        booking.setBookingReference(bookingReferenceGenerator.nextReference());
+        booking.setUser(user);
+        booking.setFlight(flight);
+        booking.setBookingDate(LocalDateTime.now());
+        booking.setStatus(status);
+
+        if (status == BookingStatus.PENDING) {
+            booking.setHoldExpiresAt(LocalDateTime.now().plusMinutes(bookingHoldTtlMinutes));
+        }
+
+        Booking savedBooking = bookingRepo.save(booking);
+
+        if (createBookingRequest.getPassengers() != null && !createBookingRequest.getPassengers().isEmpty()) {
+
+            List<Passenger> passengers = createBookingRequest.getPassengers().stream()
+                    .map(passengerDTO -> {
+                        Passenger passenger = passengerMapper.toEntity(passengerDTO);
+                        passenger.setBooking(savedBooking);
+                        return passenger;
+                    })
+                    .toList();
+
+            passengerRepo.saveAll(passengers);
+
+            savedBooking.setPassengers(passengers);
+        }
+
+        // Reserve seats last, so the flight row stays locked for as little of the transaction as possible.
+        // If the flight is sold out, the booking and passengers above are rolled back.
+        reserveSeats(flight, savedBooking.getPassengers().size());
+
+        return savedBooking;
+    }
+
+    private void reserveSeats(Flight flight, int seats) {
+        if (seats == 0) {
+            return;
+        }
+        if (flightRepo.reserveSeats(flight.getId(), seats) == 0) {
+            throw new BadRequestException("Not enough seats available on this flight");
+        }
+        flightSearchIndex.seatsChanged(flight.getId(), seats);
+    }
+
+    // Fewer seats sold than the booking holds means the inventory is off, so the cancellation is rolled back
+    // instead of silently keeping the seats
+    private void releaseSeats(Flight flight, int seats) {
+        if (seats == 0) {
+            return;
+        }
+        if (flightRepo.releaseSeats(flight.getId(), seats) == 0) {
+            throw new IllegalStateException("Could not release " + seats + " seats on flight " + flight.getId());
+        }
+        flightSearchIndex.seatsChanged(flight.getId(), -seats);
     }
 }
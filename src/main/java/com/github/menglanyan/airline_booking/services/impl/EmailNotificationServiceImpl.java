@@ -1,84 +1,422 @@
 package com.github.menglanyan.airline_booking.services.impl;
 
+import com.github.menglanyan.airline_booking.dtos.CursorPage;
+import com.github.menglanyan.airline_booking.dtos.EmailOutboxMessageDTO;
+import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.entities.Booking;
 import com.github.menglanyan.airline_booking.entities.EmailNotification;
+import com.github.menglanyan.airline_booking.entities.EmailOutboxMessage;
 import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.EmailDeliveryStatus;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
+import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.mail.BookingTicketRenderer;
+import com.github.menglanyan.airline_booking.mail.EmailBodyLayoutStore;
+import com.github.menglanyan.airline_booking.mail.RenderedMail;
+import com.github.menglanyan.airline_booking.mappers.EmailOutboxMessageMapper;
+import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.EmailBodyLayoutRepo;
 import com.github.menglanyan.airline_booking.repo.EmailNotificationRepo;
+import com.github.menglanyan.airline_booking.repo.EmailOutboxMessageRepo;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
 import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import com.github.menglanyan.airline_booking.utils.RetryBackoff;
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class EmailNotificationServiceImpl implements EmailNotificationService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
     private final EmailNotificationRepo emailNotificationRepo;
 
+    private final EmailOutboxMessageRepo emailOutboxMessageRepo;
+
+    private final BookingRepo bookingRepo;
+
+    private final UserRepo userRepo;
+
     private final JavaMailSender javaMailSender;
 
     private final TemplateEngine templateEngine;
 
+    private final BookingTicketRenderer bookingTicketRenderer;
+
+    private final EmailBodyLayoutStore emailBodyLayoutStore;
+
+    private final EmailBodyLayoutRepo emailBodyLayoutRepo;
+
+    private final EmailOutboxMessageMapper emailOutboxMessageMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final RetryBackoff retryBackoff;
+
+    private final int maxAttempts;
+
+    private final Duration sendingLease;
+
+    private final Duration retention;
+
     @Value("${frontendLoginUrl}")
     private String frontendLoginUrl;
 
-    @Value("${viewBookingUrl}")
-    private String viewBookingUrl;
+    public EmailNotificationServiceImpl(EmailNotificationRepo emailNotificationRepo,
+                                        EmailOutboxMessageRepo emailOutboxMessageRepo, BookingRepo bookingRepo,
+                                        UserRepo userRepo, JavaMailSender javaMailSender,
+                                        TemplateEngine templateEngine, BookingTicketRenderer bookingTicketRenderer,
+                                        EmailBodyLayoutStore emailBodyLayoutStore,
+                                        EmailBodyLayoutRepo emailBodyLayoutRepo,
+                                        EmailOutboxMessageMapper emailOutboxMessageMapper,
+                                        PlatformTransactionManager transactionManager,
+                                        @Value("${emailRetryBaseDelaySeconds:30}") long retryBaseDelaySeconds,
+                                        @Value("${emailRetryMaxDelaySeconds:3600}") long retryMaxDelaySeconds,
+                                        @Value("${emailMaxAttempts:8}") int maxAttempts,
+                                        @Value("${emailSendingLeaseSeconds:300}") long sendingLeaseSeconds,
+                                        @Value("${emailRetentionDays:365}") long retentionDays) {
+        this.emailNotificationRepo = emailNotificationRepo;
+        this.emailOutboxMessageRepo = emailOutboxMessageRepo;
+        this.bookingRepo = bookingRepo;
+        this.userRepo = userRepo;
+        this.javaMailSender = javaMailSender;
+        this.templateEngine = templateEngine;
+        this.bookingTicketRenderer = bookingTicketRenderer;
+        this.emailBodyLayoutStore = emailBodyLayoutStore;
+        this.emailBodyLayoutRepo = emailBodyLayoutRepo;
+        this.emailOutboxMessageMapper = emailOutboxMessageMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retryBackoff = new RetryBackoff(Duration.ofSeconds(retryBaseDelaySeconds),
+                Duration.ofSeconds(retryMaxDelaySeconds));
+        this.maxAttempts = maxAttempts;
+        this.sendingLease = Duration.ofSeconds(sendingLeaseSeconds);
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void queueBookingTicketEmail(Booking booking) {
+        emailOutboxMessageRepo.save(outboxMessage(EmailType.BOOKING_TICKET, booking.getId(), null));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void queueBookingTicketEmails(List<Booking> bookings) {
+        emailOutboxMessageRepo.saveAll(bookings.stream()
+                .map(booking -> outboxMessage(EmailType.BOOKING_TICKET, booking.getId(), null))
+                .toList());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void queueWelcomeEmail(User user) {
+        emailOutboxMessageRepo.save(outboxMessage(EmailType.WELCOME, null, user.getId()));
+    }
+
+    // Claims the messages that are due and renders their mails in one short transaction, sends them
+    // without holding any locks, then records the outcome in a second one. Sent messages become SENT,
+    // failed ones are retried with backoff until they run out of attempts and become DEAD. A dispatcher
+    // that dies while SENDING loses its lease, and the messages are claimed again once it ran out, so
+    // mails are sent at least once but never lost.
+    @Override
+    public int dispatchQueuedEmails(EmailType type, int batchSize) {
+        List<PreparedMail> mails = transactionTemplate.execute(status -> claimDueMessages(type, batchSize));
+        if (mails.isEmpty()) {
+            return 0;
+        }
+
+        Map<Object, Exception> failed = sendAll(mails);
+
+        return transactionTemplate.execute(status -> recordOutcome(mails, failed));
+    }
+
+    @Override
+    public Response<CursorPage<EmailOutboxMessageDTO>> getDeadLetters(Long cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        List<EmailOutboxMessage> messages = emailOutboxMessageRepo.findByStatusBefore(EmailDeliveryStatus.DEAD,
+                cursor, PageRequest.of(0, size + 1));
+
+        boolean hasMore = messages.size() > size;
+        List<EmailOutboxMessage> pageMessages = hasMore ? messages.subList(0, size) : messages;
+        Long nextCursor = hasMore ? pageMessages.get(pageMessages.size() - 1).getId() : null;
+        CursorPage<EmailOutboxMessageDTO> page = new CursorPage<>(pageMessages.stream()
+                .map(emailOutboxMessageMapper::toDTO)
+                .toList(), nextCursor);
+
+        return Response.<CursorPage<EmailOutboxMessageDTO>>builder()
+                .statusCode(HttpStatus.OK.value())
+                .message(page.getItems().isEmpty() ? "No Dead Letters Found" : "Dead Letters Retrieved Successfully")
+                .data(page)
+                .build();
+    }
 
     @Override
     @Transactional
-    @Async
-    public void sendBookingTicketEmail(Booking booking) {
-        // in case of app is failing, for debugging purpose
-//        log.info("Inside sendBookingTicketEmail()");
-        String recipientEmail = booking.getUser().getEmail();
-        String subject = "Your Flight Booking Ticket - Reference";
-        String templateName = "booking_ticket";
-
-        Map<String, Object>  templateVariables = new HashMap<>();
-        templateVariables.put("userName", booking.getUser().getName());
-        templateVariables.put("bookingReference", booking.getBookingReference());
-        templateVariables.put("flightNumber", booking.getFlight().getFlightNumber());
-        templateVariables.put("departureAirportIataCode", booking.getFlight().getDepartureAirport().getIataCode());
-        templateVariables.put("departureAirportName", booking.getFlight().getDepartureAirport().getName());
-        templateVariables.put("departureAirportCity", booking.getFlight().getDepartureAirport().getCity());
-        templateVariables.put("departureTime", booking.getFlight().getDepartureTime());
-        templateVariables.put("arrivalAirportIataCode", booking.getFlight().getArrivalAirport().getIataCode());
-        templateVariables.put("arrivalAirportName", booking.getFlight().getArrivalAirport().getName());
-        templateVariables.put("arrivalAirportCity", booking.getFlight().getArrivalAirport().getCity());
-        templateVariables.put("arrivalTime", booking.getFlight().getArrivalTime());
-        templateVariables.put("basePrice", booking.getFlight().getBasePrice());
-        templateVariables.put("passengers", booking.getPassengers());
-        templateVariables.put("viewBookingUrl", viewBookingUrl);
+    public Response<EmailOutboxMessageDTO> replayDeadLetter(Long id) {
+        EmailOutboxMessage message = emailOutboxMessageRepo.findById(id)
+                .orElseThrow(() -> new NotFoundException("Email Not Found"));
 
-        // Render the template content
-        Context context = new Context();
-        templateVariables.forEach(context::setVariable);
-        String  emailBody = templateEngine.process(templateName, context);
+        if (message.getStatus() != EmailDeliveryStatus.DEAD) {
+            throw new BadRequestException("Only dead emails can be replayed");
+        }
 
-        // Send the actual email with the template
-        sendMailOut(recipientEmail, subject, emailBody, true, booking);
+        message.setStatus(EmailDeliveryStatus.QUEUED);
+        message.setAttempts(0);
+        message.setNextAttemptAt(LocalDateTime.now());
+        message.setLastError(null);
+
+        return Response.<EmailOutboxMessageDTO>builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Email Queued For Replay")
+                .data(emailOutboxMessageMapper.toDTO(message))
+                .build();
     }
 
     @Override
     @Transactional
-    @Async
-    public void sendWelcomeEmail(User user) {
-        log.info("Sending welcome email to user: {}", user.getEmail());
+    public Response<Integer> replayDeadLetters() {
+        int replayed = emailOutboxMessageRepo.requeueAll(EmailDeliveryStatus.DEAD, EmailDeliveryStatus.QUEUED,
+                LocalDateTime.now());
+
+        return Response.<Integer>builder()
+                .statusCode(HttpStatus.OK.value())
+                .message(replayed + " Emails Queued For Replay")
+                .data(replayed)
+                .build();
+    }
+
+    // The layout is stored separately and the content compressed, this puts the HTML back together
+    @Override
+    @Transactional(readOnly = true)
+    public String getNotificationBody(Long id) {
+        return emailNotificationRepo.findById(id)
+                .orElseThrow(() -> new NotFoundException("Email Not Found"))
+                .getBody();
+    }
+
+    @Override
+    public int purgeOldNotifications(int batchSize) {
+        List<Long> ids = emailNotificationRepo.findIdsSentBefore(LocalDateTime.now().minus(retention),
+                PageRequest.of(0, batchSize));
+        if (!ids.isEmpty()) {
+            emailNotificationRepo.deleteAllByIdInBatch(ids);
+        }
+        return ids.size();
+    }
+
+    // Dead messages stay until an admin replayed them
+    @Override
+    public int purgeSentOutboxMessages(int batchSize) {
+        List<Long> ids = emailOutboxMessageRepo.findIdsByStatusSentBefore(EmailDeliveryStatus.SENT,
+                LocalDateTime.now().minus(retention), PageRequest.of(0, batchSize));
+        if (!ids.isEmpty()) {
+            emailOutboxMessageRepo.deleteAllByIdInBatch(ids);
+        }
+        return ids.size();
+    }
+
+    private List<PreparedMail> claimDueMessages(EmailType type, int batchSize) {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutboxMessage> messages = emailOutboxMessageRepo.findDueForUpdate(type, now,
+                PageRequest.of(0, batchSize));
+        if (messages.isEmpty()) {
+            return List.of();
+        }
+
+        // Bookings and users of the whole batch are loaded at once, not per message
+        Map<Long, Booking> bookings = bookingRepo.findAllById(messages.stream()
+                        .map(EmailOutboxMessage::getBookingId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+        Map<Long, User> users = userRepo.findAllById(messages.stream()
+                        .map(EmailOutboxMessage::getUserId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        // Rendered here, while the bookings are attached, and sent together over one pooled SMTP connection
+        List<PreparedMail> mails = new ArrayList<>();
+        for (EmailOutboxMessage message : messages) {
+            if (message.getAttempts() >= maxAttempts) {
+                // Only a message whose dispatcher died while sending it gets here
+                markDead(message, "Gave up after " + message.getAttempts() + " attempts");
+                continue;
+            }
+            message.setAttempts(message.getAttempts() + 1);
+
+            PreparedMail mail;
+            try {
+                mail = switch (message.getType()) {
+                    case BOOKING_TICKET -> prepareBookingTicket(bookings.get(message.getBookingId()), message);
+                    case WELCOME -> prepareWelcomeEmail(users.get(message.getUserId()), message);
+                };
+            } catch (MailPreparationException ex) {
+                // E.g. an address that can't be parsed, the rest of the batch still goes out
+                log.warn("Could not prepare {} email of outbox message {}: {}", message.getType(), message.getId(),
+                        ex.getMessage());
+                markFailed(message, ex);
+                continue;
+            }
+            if (mail == null) {
+                // Nothing left to send it to, retrying won't change that
+                markDead(message, "Recipient no longer exists");
+                continue;
+            }
+
+            message.setStatus(EmailDeliveryStatus.SENDING);
+            message.setNextAttemptAt(now.plus(sendingLease));
+            mails.add(mail);
+        }
+        return mails;
+    }
+
+    // Returns the mails that could not be sent with the reason, the others went out
+    private Map<Object, Exception> sendAll(List<PreparedMail> mails) {
+        MimeMessage[] mimeMessages = mails.stream()
+                .map(PreparedMail::mimeMessage)
+                .toArray(MimeMessage[]::new);
+        try {
+            javaMailSender.send(mimeMessages);
+            return Map.of();
+        } catch (MailSendException ex) {
+            log.warn("{} of {} emails could not be sent: {}", ex.getFailedMessages().size(), mimeMessages.length,
+                    ex.getMessage());
+            return ex.getFailedMessages().isEmpty() ? allFailed(mimeMessages, ex) : ex.getFailedMessages();
+        } catch (MailException ex) {
+            log.warn("{} emails could not be sent: {}", mimeMessages.length, ex.getMessage());
+            return allFailed(mimeMessages, ex);
+        }
+    }
+
+    private int recordOutcome(List<PreparedMail> mails, Map<Object, Exception> failed) {
+        // The claimed messages are detached by now, so they are loaded again to be updated
+        Map<Long, EmailOutboxMessage> messages = emailOutboxMessageRepo.findAllById(mails.stream()
+                        .map(mail -> mail.outboxMessage().getId())
+                        .toList()).stream()
+                .collect(Collectors.toMap(EmailOutboxMessage::getId, Function.identity()));
+
+        List<EmailNotification> notifications = new ArrayList<>();
+        for (PreparedMail mail : mails) {
+            EmailOutboxMessage message = messages.get(mail.outboxMessage().getId());
+            if (message == null) {
+                continue;
+            }
+
+            Exception failure = failed.get(mail.mimeMessage());
+            if (failure != null) {
+                log.warn("Could not send {} email of outbox message {}", message.getType(), message.getId());
+                markFailed(message, failure);
+                continue;
+            }
+
+            message.setStatus(EmailDeliveryStatus.SENT);
+            message.setNextAttemptAt(null);
+            message.setLastError(null);
+            message.setSentAt(LocalDateTime.now());
+            mail.notification().setSentAt(message.getSentAt());
+            if (mail.layoutId() != null) {
+                mail.notification().setLayout(emailBodyLayoutRepo.getReferenceById(mail.layoutId()));
+            }
+            notifications.add(mail.notification());
+        }
+        emailNotificationRepo.saveAll(notifications);
+
+        return notifications.size();
+    }
+
+    private void markFailed(EmailOutboxMessage message, Exception failure) {
+        if (message.getAttempts() >= maxAttempts) {
+            log.error("Giving up on {} email of outbox message {} after {} attempts", message.getType(),
+                    message.getId(), message.getAttempts());
+            markDead(message, failure.getMessage());
+            return;
+        }
+
+        message.setStatus(EmailDeliveryStatus.FAILED);
+        message.setNextAttemptAt(LocalDateTime.now().plus(retryBackoff.delayAfter(message.getAttempts())));
+        message.setLastError(truncate(failure.getMessage()));
+    }
+
+    private static void markDead(EmailOutboxMessage message, String error) {
+        message.setStatus(EmailDeliveryStatus.DEAD);
+        message.setNextAttemptAt(null);
+        message.setLastError(truncate(error));
+    }
+
+    private static Map<Object, Exception> allFailed(MimeMessage[] mimeMessages, Exception failure) {
+        Map<Object, Exception> failed = new HashMap<>();
+        for (MimeMessage mimeMessage : mimeMessages) {
+            failed.put(mimeMessage, failure);
+        }
+        return failed;
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private static EmailOutboxMessage outboxMessage(EmailType type, Long bookingId, Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        return new EmailOutboxMessage(null, type, bookingId, userId, now, EmailDeliveryStatus.QUEUED, 0, now, null,
+                null);
+    }
+
+    private PreparedMail prepareBookingTicket(Booking booking, EmailOutboxMessage message) {
+        if (booking == null) {
+            log.warn("Booking {} no longer exists, its ticket email is dead", message.getBookingId());
+            return null;
+        }
+
+        String recipientEmail = booking.getUser().getEmail();
+        String subject = "Your Flight Booking Ticket - Reference";
+        RenderedMail emailBody = bookingTicketRenderer.render(booking);
+        emailBodyLayoutStore.store(emailBody);
+
+        return prepareMail(message, recipientEmail, subject, emailBody, true, booking);
+    }
+
+    private PreparedMail prepareWelcomeEmail(User user, EmailOutboxMessage message) {
+        if (user == null) {
+            log.warn("User {} no longer exists, their welcome email is dead", message.getUserId());
+            return null;
+        }
+
+        log.info("Preparing welcome email to user: {}", user.getEmail());
         String recipientEmail = user.getEmail();
         String subject = "Welcome to Airline!";
         String templateName = "welcome_user";
@@ -92,15 +430,13 @@ public class EmailNotificationServiceImpl implements EmailNotificationService {
         templateVariables.forEach(context::setVariable);
         String emailBody = templateEngine.process(templateName, context);
 
-        // Send the actual email with the template
-        sendMailOut(recipientEmail, subject, emailBody, true, null);
-
+        return prepareMail(message, recipientEmail, subject, RenderedMail.withoutLayout(emailBody), true, null);
     }
 
-    private void sendMailOut(String recipientEmail, String subject, String emailBody, boolean isHtml, Booking booking) {
-
+    private PreparedMail prepareMail(EmailOutboxMessage outboxMessage, String recipientEmail, String subject,
+                                     RenderedMail emailBody, boolean isHtml, Booking booking) {
+        MimeMessage mimeMessage = javaMailSender.createMimeMessage();
         try {
-            MimeMessage mimeMessage = javaMailSender.createMimeMessage();
             MimeMessageHelper mimeMessageHelper = new MimeMessageHelper(
                     mimeMessage,
                     MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
@@ -108,24 +444,23 @@ public class EmailNotificationServiceImpl implements EmailNotificationService {
             );
             mimeMessageHelper.setTo(recipientEmail);
             mimeMessageHelper.setSubject(subject);
-            mimeMessageHelper.setText(emailBody, isHtml);
-
-            log.info("About to send Email...");
-            javaMailSender.send(mimeMessage);
-            log.info("Email sent out");
-        } catch (Exception ex) {
-            log.error(ex.getMessage());
+            mimeMessageHelper.setText(emailBody.body(), isHtml);
+        } catch (MessagingException ex) {
+            throw new MailPreparationException(ex);
         }
 
-        // Save to the EmailNotification entity
+        // Saved to the EmailNotification entity once the mail went out
         EmailNotification emailNotification = new EmailNotification();
         emailNotification.setRecipientEmail(recipientEmail);
         emailNotification.setHtml(isHtml);
-        emailNotification.setBody(emailBody);
+        emailNotification.setContent(emailBody.content());
         emailNotification.setBooking(booking);
-        emailNotification.setSentAt(LocalDateTime.now());
         emailNotification.setSubject(subject);
 
-        emailNotificationRepo.save(emailNotification);
+        return new PreparedMail(outboxMessage, mimeMessage, emailNotification, emailBody.layoutId());
+    }
+
+    private record PreparedMail(EmailOutboxMessage outboxMessage, MimeMessage mimeMessage,
+                                EmailNotification notification, String layoutId) {
     }
 }
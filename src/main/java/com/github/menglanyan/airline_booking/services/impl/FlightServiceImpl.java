@@ -12,14 +12,18 @@ import com.github.menglanyan.airline_booking.enums.FlightStatus;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.CustomAccessDenialHandler;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
-import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.mappers.FlightMapper;
 import com.github.menglanyan.airline_booking.repo.FlightRepo;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
+import com.github.menglanyan.airline_booking.retry.RetryOnConflict;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import com.github.menglanyan.airline_booking.search.FlightSummary;
 import com.github.menglanyan.airline_booking.services.FlightService;
 import com.github.menglanyan.airline_booking.services.UserService;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -34,16 +38,20 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FlightServiceImpl implements FlightService {
 
+    private static final int DEFAULT_CAPACITY = 180;
+
     private final FlightRepo flightRepo;
 
-    private final AirportRepo airportRepo;
+    private final ReferenceDataCache referenceDataCache;
 
     private final UserRepo userRepo;
 
-    private final ModelMapper modelMapper;
+    private final FlightMapper flightMapper;
 
     private final UserService userService;
 
+    private final FlightSearchIndex flightSearchIndex;
+
     @Override
     public Response<?> createFlight(CreateFlightRequest createFlightRequest) {
 
@@ -51,16 +59,12 @@ public class FlightServiceImpl implements FlightService {
             throw new BadRequestException("Arrival time cannot be before the departure time");
         }
 
-        if (flightRepo.existsByFlightNumber(createFlightRequest.getFlightNumber())) {
-            throw new BadRequestException("Flight with this number already exists");
-        }
-
         // Fetch and validate the departure airport
-        Airport departureAirport = airportRepo.findByIataCode(createFlightRequest.getDepartureAirportIataCode())
+        Airport departureAirport = referenceDataCache.findAirport(createFlightRequest.getDepartureAirportIataCode())
                 .orElseThrow(() -> new NotFoundException("Departure Airport Not Found"));
 
-        // Fetch and validate the departure airport
-        Airport arrivalAirport = airportRepo.findByIataCode(createFlightRequest.getArrivalAirportIataCode())
+        // Fetch and validate the arrival airport
+        Airport arrivalAirport = referenceDataCache.findAirport(createFlightRequest.getArrivalAirportIataCode())
                 .orElseThrow(() -> new NotFoundException("Arrival Airport Not Found"));
 
         Flight flightToSave = new Flight();
@@ -71,6 +75,8 @@ public class FlightServiceImpl implements FlightService {
         flightToSave.setArrivalTime(createFlightRequest.getArrivalTime());
         flightToSave.setStatus(FlightStatus.SCHEDULED);
         flightToSave.setBasePrice(createFlightRequest.getBasePrice());
+        flightToSave.setCapacity(createFlightRequest.getCapacity() != null
+                ? createFlightRequest.getCapacity() : DEFAULT_CAPACITY);
 
         // Assign pilot to the flight(get and validate the pilot)
         if (createFlightRequest.getPilotId() != null) {
@@ -87,8 +93,13 @@ public class FlightServiceImpl implements FlightService {
             flightToSave.setAssignedPilot(pilot);
         }
 
-        // Save the flight
-        flightRepo.save(flightToSave);
+        // Save the flight, flight numbers are unique so a duplicate fails on insert instead of needing a check first
+        try {
+            flightRepo.save(flightToSave);
+        } catch (DataIntegrityViolationException ex) {
+            throw new BadRequestException("Flight with this number already exists");
+        }
+        flightSearchIndex.flightSaved(flightToSave);
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -101,13 +112,7 @@ public class FlightServiceImpl implements FlightService {
         Flight flight = flightRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("Flight Not Found"));
 
-        FlightDTO flightDTO = modelMapper.map(flight, FlightDTO.class);
-
-        // Break the bidirectional relationship to avoid recursive loop during serialization:
-        // FlightDTO → BookingDTO → FlightDTO → BookingDTO ...
-        if (flightDTO.getBooking() != null) {
-            flightDTO.getBooking().forEach(bookingDTO -> bookingDTO.setFlight(null));
-        }
+        FlightDTO flightDTO = flightMapper.toDTO(flight);
 
         return Response.<FlightDTO>builder()
                 .statusCode(HttpStatus.OK.value())
@@ -121,13 +126,7 @@ public class FlightServiceImpl implements FlightService {
         Sort sortByIdDesc = Sort.by(Sort.Direction.DESC, "id");
 
         List<FlightDTO> flights = flightRepo.findAll(sortByIdDesc).stream()
-                .map(flight -> {
-                    FlightDTO flightDTO = modelMapper.map(flight, FlightDTO.class);
-                    if (flightDTO.getBooking() != null) {
-                        flightDTO.getBooking().forEach(bookingDTO -> bookingDTO.setFlight(null));
-                    }
-                    return flightDTO;
-                })
+                .map(flightMapper::toDTO)
                 .toList();
 
         return Response.<List<FlightDTO>>builder()
@@ -139,6 +138,7 @@ public class FlightServiceImpl implements FlightService {
 
     @Override
     @Transactional
+    @RetryOnConflict
     public Response<?> updateFlight(CreateFlightRequest createFlightRequest) {
         Long id = createFlightRequest.getId();
 
@@ -161,6 +161,14 @@ public class FlightServiceImpl implements FlightService {
             existingflight.setStatus(createFlightRequest.getStatus());
         }
 
+        // Checked against seatsSold in the database, as bookings may be selling seats at the same time
+        if (createFlightRequest.getCapacity() != null) {
+            if (flightRepo.updateCapacity(id, createFlightRequest.getCapacity()) == 0) {
+                throw new BadRequestException("Capacity cannot be lower than the number of seats already sold");
+            }
+            existingflight.setCapacity(createFlightRequest.getCapacity());
+        }
+
         // Validate and update the pilot if pilot id is passed in
         if (createFlightRequest.getPilotId() != null) {
 
@@ -177,6 +185,7 @@ public class FlightServiceImpl implements FlightService {
         }
 
         flightRepo.save(existingflight);
+        flightSearchIndex.flightSaved(existingflight);
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -187,21 +196,19 @@ public class FlightServiceImpl implements FlightService {
     @Override
     public Response<List<FlightDTO>> searchForFlight(String departureAirportIataCode, String arrivalAirportIataCode,
                                                      FlightStatus status, LocalDate departureDate) {
-        LocalDateTime startOfDay = departureDate.atStartOfDay();
-
-        LocalDateTime endOfDay = departureDate.plusDays(1).atStartOfDay().minusNanos(1); // 23:59:59.999999
+        Airport departureAirport = referenceDataCache.findAirport(departureAirportIataCode).orElse(null);
+        Airport arrivalAirport = referenceDataCache.findAirport(arrivalAirportIataCode).orElse(null);
 
-        List<Flight> flights = flightRepo.findByDepartureAirportIataCodeAndArrivalAirportIataCodeAndStatusAndDepartureTimeBetween(
-                departureAirportIataCode, arrivalAirportIataCode, status, startOfDay, endOfDay
-        );
+        // findAirport already asked the database on a miss. Without both airports there is nothing to find, even
+        // if the index still holds flights under a code that was just changed.
+        // Otherwise served from memory, the query only runs when the index can't answer.
+        List<FlightSummary> flights = departureAirport == null || arrivalAirport == null ? List.of()
+                : flightSearchIndex.search(departureAirportIataCode, arrivalAirportIataCode, status, departureDate)
+                        .orElseGet(() -> flightRepo.searchSummaries(departureAirport.getId(), arrivalAirport.getId(),
+                                status, departureDate.atStartOfDay(), departureDate.plusDays(1).atStartOfDay()));
 
         List<FlightDTO> flightDTOS = flights.stream()
-                .map(flight -> {
-                    FlightDTO flightDTO = modelMapper.map(flight, FlightDTO.class);
-                    flightDTO.setAssignedPilot(null);
-                    flightDTO.setBooking(null);
-                    return flightDTO;
-                })
+                .map(summary -> flightMapper.toSearchResult(summary, departureAirport, arrivalAirport))
                 .toList();
 
         return Response.<List<FlightDTO>>builder()
@@ -231,23 +238,15 @@ public class FlightServiceImpl implements FlightService {
 
     @Override
     public Response<List<FlightDTO>> getMyFlights() {
-        User currentUser = userService.currentUser();
-
-        boolean isPilot = currentUser.getRoles().stream()
-                .anyMatch(role -> role.getName().equalsIgnoreCase("PILOT"));
-
-        if (!isPilot) {
+        // Roles and id come from the token, the user is not loaded
+        if (!userService.currentUserHasRole("PILOT")) {
             throw new BadRequestException("Only pilots can view their assigned flights");
         }
 
-        List<Flight> flights = flightRepo.findByAssignedPilotIdOrderByDepartureTimeDesc(currentUser.getId());
+        List<Flight> flights = flightRepo.findByAssignedPilotIdOrderByDepartureTimeDesc(userService.currentUserId());
 
         List<FlightDTO> flightDTOS = flights.stream()
-                .map(flight -> {
-                    FlightDTO flightDTO = modelMapper.map(flight, FlightDTO.class);
-                    flightDTO.setBooking(null);
-                    return flightDTO;
-                })
+                .map(flightMapper::toDTOWithoutBookings)
                 .toList();
 
         return Response.<List<FlightDTO>>builder()
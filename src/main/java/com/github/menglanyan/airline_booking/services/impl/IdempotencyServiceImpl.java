@@ -0,0 +1,185 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.menglanyan.airline_booking.dtos.Response;
+import com.github.menglanyan.airline_booking.entities.IdempotencyRecord;
+import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
+import com.github.menglanyan.airline_booking.repo.IdempotencyRecordRepo;
+import com.github.menglanyan.airline_booking.services.IdempotencyService;
+import com.github.menglanyan.airline_booking.utils.Sha256;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Runs a request at most once per Idempotency-Key and replays the first response for retries.
+// Recent keys are kept in a bounded in-memory cache, so a retry normally costs one map lookup and an
+// equals() on the request. Behind it, the idempotency_keys table covers other instances and restarts.
+// The key row is inserted and flushed before the action runs, in the same transaction, so a concurrent
+// duplicate waits on the primary key, fails once the first request commits, and replays its response.
+@Service
+@Slf4j
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepo idempotencyRecordRepo;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration keyTtl;
+
+    private final Cache<String, CachedResponse> cache;
+
+    public IdempotencyServiceImpl(IdempotencyRecordRepo idempotencyRecordRepo, ObjectMapper objectMapper,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${idempotencyKeyTtlHours:24}") long keyTtlHours,
+                                  @Value("${idempotencyKeyCacheSize:10000}") long cacheSize) {
+        this.idempotencyRecordRepo = idempotencyRecordRepo;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.keyTtl = Duration.ofHours(keyTtlHours);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(keyTtl)
+                .build();
+    }
+
+    @Override
+    public <T> Response<T> execute(String operation, String idempotencyKey, Object request,
+                                   Supplier<Response<T>> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+        String id = Sha256.hex(email + '\n' + operation + '\n' + idempotencyKey);
+
+        CachedResponse cached = cache.getIfPresent(id);
+        if (cached != null) {
+            if (!cached.request().equals(request)) {
+                throw keyReused();
+            }
+            return copy(cached.response());
+        }
+
+        String requestHash = Sha256.hex(toJson(request));
+
+        Response<T> response;
+        try {
+            response = transactionTemplate.execute(status -> executeOnce(id, requestHash, action));
+        } catch (DataIntegrityViolationException e) {
+            // Another request with the same key committed first
+            log.info("Concurrent request for idempotency key of {} {}, replaying its response", email, operation);
+            response = idempotencyRecordRepo.findById(id)
+                    .map(record -> this.<T>replay(record, requestHash))
+                    .orElseThrow(() -> e);
+        }
+
+        cache.put(id, new CachedResponse(request, response));
+        return copy(response);
+    }
+
+    private <T> Response<T> executeOnce(String id, String requestHash, Supplier<Response<T>> action) {
+        Optional<IdempotencyRecord> existing = idempotencyRecordRepo.findById(id);
+        if (existing.isPresent()) {
+            if (!isExpired(existing.get())) {
+                return replay(existing.get(), requestHash);
+            }
+            idempotencyRecordRepo.delete(existing.get());
+            idempotencyRecordRepo.flush();
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord(id, requestHash, 0, null, null, LocalDateTime.now());
+        idempotencyRecordRepo.saveAndFlush(record);
+
+        // If the action fails the claim rolls back with it, and the client can retry with the same key
+        Response<T> response = action.get();
+
+        record.setStatusCode(response.getStatusCode());
+        record.setMessage(response.getMessage());
+        record.setResponseData(response.getData() == null ? null : toJson(response.getData()));
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Response<T> replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw keyReused();
+        }
+
+        Object data = null;
+        if (record.getResponseData() != null) {
+            try {
+                data = objectMapper.readTree(record.getResponseData());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Stored idempotent response is not valid JSON", e);
+            }
+        }
+
+        // Data comes back as a JSON tree instead of the original DTO, it serializes to the same body
+        return (Response<T>) Response.builder()
+                .statusCode(record.getStatusCode())
+                .message(record.getMessage())
+                .data(data)
+                .build();
+    }
+
+    @Override
+    public int purgeExpiredKeys(int batchSize) {
+        LocalDateTime cutoff = LocalDateTime.now().minus(keyTtl);
+        List<String> ids = idempotencyRecordRepo.findIdsCreatedBefore(cutoff, PageRequest.of(0, batchSize));
+        if (!ids.isEmpty()) {
+            idempotencyRecordRepo.deleteAllByIdInBatch(ids);
+        }
+        return ids.size();
+    }
+
+    private boolean isExpired(IdempotencyRecord record) {
+        return record.getCreatedAt().isBefore(LocalDateTime.now().minus(keyTtl));
+    }
+
+    // Callers may modify the response they get, so they never share one
+    private static <T> Response<T> copy(Response<?> response) {
+        @SuppressWarnings("unchecked")
+        Response<T> typed = (Response<T>) response;
+        return Response.<T>builder()
+                .statusCode(typed.getStatusCode())
+                .message(typed.getMessage())
+                .data(typed.getData())
+                .build();
+    }
+
+    private static BadRequestException keyReused() {
+        return new BadRequestException("Idempotency-Key was already used for a different request");
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private record CachedResponse(Object request, Response<?> response) {
+    }
+}
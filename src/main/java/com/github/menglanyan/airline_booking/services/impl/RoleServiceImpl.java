@@ -4,14 +4,20 @@ import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.dtos.RoleDTO;
 import com.github.menglanyan.airline_booking.entities.Role;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.mappers.RoleMapper;
 import com.github.menglanyan.airline_booking.repo.RoleRepo;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import com.github.menglanyan.airline_booking.security.CustomUserDetailsService;
+import com.github.menglanyan.airline_booking.security.TokenRevocations;
 import com.github.menglanyan.airline_booking.services.RoleService;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
@@ -21,15 +27,24 @@ public class RoleServiceImpl implements RoleService {
 
     private final RoleRepo roleRepo;
 
-    private final ModelMapper modelMapper;
+    private final RoleMapper roleMapper;
+
+    private final ReferenceDataCache referenceDataCache;
+
+    private final UserRepo userRepo;
+
+    private final TokenRevocations tokenRevocations;
+
+    private final CustomUserDetailsService customUserDetailsService;
 
     @Override
     public Response<?> createRole(RoleDTO roleDTO) {
         log.info("Inside createRole()");
 
-        Role role = modelMapper.map(roleDTO, Role.class);
+        Role role = roleMapper.toEntity(roleDTO);
         role.setName(role.getName().toUpperCase());
         roleRepo.save(role);
+        referenceDataCache.changed();
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -38,14 +53,20 @@ public class RoleServiceImpl implements RoleService {
     }
 
     @Override
+    @Transactional
     public Response<?> updateRole(RoleDTO roleDTO) {
         log.info("Inside updateRole()");
 
         Long id = roleDTO.getId();
         Role existingRole = roleRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("Role not found"));
-        existingRole.setName(roleDTO.getName().toUpperCase());
+        String name = roleDTO.getName().toUpperCase();
+        if (!name.equals(existingRole.getName())) {
+            revokeTokensOfRole(existingRole);
+        }
+        existingRole.setName(name);
         roleRepo.save(existingRole);
+        referenceDataCache.changed();
 
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
@@ -53,12 +74,23 @@ public class RoleServiceImpl implements RoleService {
                 .build();
     }
 
+    // Tokens carry role names, so after a rename the old name would authorize until the tokens expire. Like
+    // UserServiceImpl.revokeTokens, but for every user holding the role.
+    private void revokeTokensOfRole(Role role) {
+        int revoked = userRepo.revokeTokensOfRole(role, LocalDateTime.now());
+        for (UserRepo.TokenVersion user : userRepo.findByRoles_Id(role.getId())) {
+            tokenRevocations.revoked(user.getId(), user.getTokenVersion());
+        }
+        customUserDetailsService.flushEverywhere();
+        log.info("Revoked the tokens of {} users holding role {}", revoked, role.getName());
+    }
+
     @Override
     public Response<List<RoleDTO>> getAllRoles() {
         log.info("Inside getAllRoles()");
 
         List<RoleDTO> roles = roleRepo.findAll().stream()
-                .map(role -> modelMapper.map(role, RoleDTO.class))
+                .map(roleMapper::toDTO)
                 .toList();
 
         return Response.<List<RoleDTO>>builder()
@@ -4,13 +4,15 @@ import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.dtos.UserDTO;
 import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.mappers.UserMapper;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
+import com.github.menglanyan.airline_booking.security.CurrentUserResolver;
+import com.github.menglanyan.airline_booking.security.CustomUserDetailsService;
+import com.github.menglanyan.airline_booking.security.TokenRevocations;
 import com.github.menglanyan.airline_booking.services.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,15 +29,32 @@ public class UserServiceImpl implements UserService {
 
     private final PasswordEncoder passwordEncoder;
 
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
+
+    private final CustomUserDetailsService customUserDetailsService;
+
+    private final TokenRevocations tokenRevocations;
+
+    private final CurrentUserResolver currentUserResolver;
 
     @Override
     public User currentUser() {
+        return currentUserResolver.managedUser();
+    }
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+    @Override
+    public User currentUserReference() {
+        return currentUserResolver.reference();
+    }
 
-        return userRepo.findByEmail(email)
-                .orElseThrow(() -> new NotFoundException("User Not Found"));
+    @Override
+    public Long currentUserId() {
+        return currentUserResolver.current().id();
+    }
+
+    @Override
+    public boolean currentUserHasRole(String roleName) {
+        return currentUserResolver.current().hasRole(roleName);
     }
 
     @Override
@@ -62,18 +81,63 @@ public class UserServiceImpl implements UserService {
 
         userRepo.save(user);
 
+        // AuthFilter would otherwise keep using the cached principal until it expires
+        customUserDetailsService.evict(user.getEmail());
+
         return Response.builder()
                 .statusCode(HttpStatus.OK.value())
                 .message("Account Updated Successfully")
                 .build();
     }
 
+    @Override
+    @Transactional
+    public Response<?> deactivateAccount(Long id) {
+        log.info("Inside deactivateAccount()");
+
+        User user = userRepo.findById(id)
+                .orElseThrow(() -> new NotFoundException("User Not Found"));
+
+        user.setActive(false);
+        user.setUpdatedAt(LocalDateTime.now());
+        revokeTokens(user);
+
+        userRepo.save(user);
+
+        return Response.builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Account Deactivated Successfully")
+                .build();
+    }
+
+    // Tokens carry the user's roles and are accepted without reading the user, so anything that changes
+    // roles or takes access away has to come through here, or RoleServiceImpl for renamed roles
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        user.setTokensRevokedAt(LocalDateTime.now());
+
+        tokenRevocations.revoked(user.getId(), user.getTokenVersion());
+        customUserDetailsService.evict(user.getEmail());
+    }
+
+    @Override
+    public Response<?> flushPrincipalCache() {
+        log.info("Inside flushPrincipalCache()");
+
+        customUserDetailsService.flushEverywhere();
+
+        return Response.builder()
+                .statusCode(HttpStatus.OK.value())
+                .message("Principal cache flushed on all instances")
+                .build();
+    }
+
     @Override
     public Response<List<UserDTO>> getAllPilots() {
         log.info("Inside getAllPilots()");
 
         List<UserDTO> pilots = userRepo.findByRoleName("PILOT").stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
+                .map(userMapper::toDTO)
                 .toList();
 
         return Response.<List<UserDTO>>builder()
@@ -87,9 +151,9 @@ public class UserServiceImpl implements UserService {
     public Response<UserDTO> getAccountDetails() {
         log.info("Inside getAccountDetails()");
 
-        User user = currentUser();
+        User user = currentUserResolver.user();
 
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        UserDTO userDTO = userMapper.toDTO(user);
 
         return Response.<UserDTO>builder()
                 .statusCode(HttpStatus.OK.value())
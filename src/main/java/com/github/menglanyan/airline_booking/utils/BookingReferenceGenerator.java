@@ -0,0 +1,144 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import com.github.menglanyan.airline_booking.entities.ReferenceCounter;
+import com.github.menglanyan.airline_booking.repo.ReferenceCounterRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generates 8 character booking references that are unique across all app instances.
+// Each instance takes blocks of counter values from the reference_counters table and hands them out
+// from memory, so only one in BLOCK_SIZE references touches the database. The counter value is scrambled
+// with a bijection, so consecutive bookings don't get guessable consecutive references, and then written
+// in Crockford base32 straight into a char array.
+@Component
+@Slf4j
+public class BookingReferenceGenerator {
+
+    private static final String COUNTER_NAME = "booking_reference";
+
+    private static final int BLOCK_SIZE = 1000;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // Crockford letters that are not hex digits. References used to be 8 hex characters from a UUID,
+    // starting with one of these guarantees a new reference never equals an old one.
+    private static final char[] FIRST_CHARS = "GHJKMNPQRSTVWXYZ".toCharArray();
+
+    // 4 bits for the first character, 5 bits for each of the other 7
+    private static final int VALUE_BITS = 39;
+
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+
+    private final BlockSource blockSource;
+
+    private volatile Block currentBlock = new Block(0, 0);
+
+    @FunctionalInterface
+    public interface BlockSource {
+
+        // Returns the first value of a range of blockSize values that nobody else will ever get
+        long allocate(int blockSize);
+    }
+
+    @Autowired
+    public BookingReferenceGenerator(ReferenceCounterRepo referenceCounterRepo,
+                                     PlatformTransactionManager transactionManager) {
+        // Own transaction, so the counter row is unlocked right away instead of when the booking commits
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.blockSource = blockSize -> allocateFromDatabase(referenceCounterRepo, transactionTemplate, blockSize);
+    }
+
+    public BookingReferenceGenerator(BlockSource blockSource) {
+        this.blockSource = blockSource;
+    }
+
+    public String nextReference() {
+        return encode(nextValue());
+    }
+
+    private long nextValue() {
+        while (true) {
+            Block block = currentBlock;
+            long value = block.next.getAndIncrement();
+            if (value < block.end) {
+                return value;
+            }
+
+            // Block used up, only one thread fetches the next one, the others pick it up when they retry
+            synchronized (this) {
+                if (currentBlock == block) {
+                    long start = blockSource.allocate(BLOCK_SIZE);
+                    currentBlock = new Block(start, start + BLOCK_SIZE);
+                }
+            }
+        }
+    }
+
+    static String encode(long value) {
+        long scrambled = scramble(value);
+
+        char[] chars = new char[8];
+        for (int i = 7; i > 0; i--) {
+            chars[i] = ALPHABET[(int) (scrambled & 31)];
+            scrambled >>>= 5;
+        }
+        chars[0] = FIRST_CHARS[(int) (scrambled & 15)];
+
+        return new String(chars);
+    }
+
+    // Every step is invertible on 39 bits (odd multiplier, xor-shift), so distinct values stay distinct
+    private static long scramble(long value) {
+        long x = value & VALUE_MASK;
+        x = (x * 0x5DEECE66DL) & VALUE_MASK;
+        x ^= x >>> 19;
+        x = (x * 0x2545F4914F6CDD1DL) & VALUE_MASK;
+        x ^= x >>> 17;
+        return x;
+    }
+
+    private static long allocateFromDatabase(ReferenceCounterRepo referenceCounterRepo,
+                                             TransactionTemplate transactionTemplate, int blockSize) {
+        try {
+            return allocateOnce(referenceCounterRepo, transactionTemplate, blockSize);
+        } catch (DataIntegrityViolationException ex) {
+            // Another instance created the counter row at the same time, it exists now
+            log.info("Reference counter created concurrently, retrying block allocation");
+            return allocateOnce(referenceCounterRepo, transactionTemplate, blockSize);
+        }
+    }
+
+    private static long allocateOnce(ReferenceCounterRepo referenceCounterRepo,
+                                     TransactionTemplate transactionTemplate, int blockSize) {
+        Long start = transactionTemplate.execute(status -> {
+            ReferenceCounter counter = referenceCounterRepo.findForUpdate(COUNTER_NAME)
+                    .orElseGet(() -> referenceCounterRepo.saveAndFlush(new ReferenceCounter(COUNTER_NAME, 0)));
+
+            long blockStart = counter.getNextValue();
+            counter.setNextValue(blockStart + blockSize);
+            return blockStart;
+        });
+        return start;
+    }
+
+    private static final class Block {
+
+        private final AtomicLong next;
+
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
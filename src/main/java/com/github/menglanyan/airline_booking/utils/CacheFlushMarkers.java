@@ -0,0 +1,49 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import com.github.menglanyan.airline_booking.entities.CacheFlushMarker;
+import com.github.menglanyan.airline_booking.repo.CacheFlushMarkerRepo;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+// One row per in-memory cache in cache_flush_markers. Bumping its generation asks every instance to drop
+// that cache, each instance compares the generation with the one it last saw when it checks.
+@Component
+public class CacheFlushMarkers {
+
+    private final CacheFlushMarkerRepo cacheFlushMarkerRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CacheFlushMarkers(CacheFlushMarkerRepo cacheFlushMarkerRepo,
+                             PlatformTransactionManager transactionManager) {
+        this.cacheFlushMarkerRepo = cacheFlushMarkerRepo;
+        // Own transaction, other instances should see the flush even if the caller's transaction is still open
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void increment(String name) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> incrementGeneration(name));
+        } catch (DataIntegrityViolationException ex) {
+            // Another instance created the marker at the same time
+            transactionTemplate.executeWithoutResult(status -> incrementGeneration(name));
+        }
+    }
+
+    // 0 until the cache was flushed for the first time
+    public long generation(String name) {
+        return cacheFlushMarkerRepo.findGeneration(name).orElse(0L);
+    }
+
+    private void incrementGeneration(String name) {
+        if (cacheFlushMarkerRepo.incrementGeneration(name, LocalDateTime.now()) == 0) {
+            cacheFlushMarkerRepo.saveAndFlush(new CacheFlushMarker(name, 1, LocalDateTime.now()));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.repo.RoleRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Roles and airports almost never change but are looked up by name and IATA code on every registration and
+// flight creation. All of them are kept in memory, loaded at startup and reloaded whenever RoleServiceImpl or
+// AirportServiceImpl change one, on the other instances once they see the flush marker. A name or code this
+// instance doesn't know yet, e.g. one just added elsewhere, is looked up in the database.
+// Airports are kept in an array indexed by their IATA code packed into an int, so a lookup allocates nothing.
+// The entities handed out are detached copies shared by all callers: fine to reference, never to modify.
+// A reload that finds airports with a new IATA code publishes AirportCodesChanged, for FlightSearchIndex.
+@Component
+@Slf4j
+public class ReferenceDataCache {
+
+    static final String CACHE_NAME = "reference-data";
+
+    public static final int NO_IATA_KEY = -1;
+
+    // Three letters of 5 bits each
+    private static final int IATA_KEY_SPACE = 1 << 15;
+
+    private final RoleRepo roleRepo;
+
+    private final AirportRepo airportRepo;
+
+    private final CacheFlushMarkers cacheFlushMarkers;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Replaced as a whole on reload, null until first loaded
+    private volatile Snapshot snapshot;
+
+    // Generation of the flush marker the snapshot is up to date with, null until first checked
+    private volatile Long loadedGeneration;
+
+    public ReferenceDataCache(RoleRepo roleRepo, AirportRepo airportRepo, CacheFlushMarkers cacheFlushMarkers,
+                              PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher eventPublisher) {
+        this.roleRepo = roleRepo;
+        this.airportRepo = airportRepo;
+        this.cacheFlushMarkers = cacheFlushMarkers;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        checkFlushMarker();
+    }
+
+    // Role names are stored upper case
+    public Optional<Role> findRole(String name) {
+        Role role = snapshot().rolesByName().get(name);
+        return role != null ? Optional.of(role) : roleRepo.findByName(name);
+    }
+
+    public Optional<Airport> findAirport(String iataCode) {
+        int key = iataKey(iataCode);
+        if (key == NO_IATA_KEY) {
+            return airportRepo.findByIataCode(iataCode);
+        }
+        Airport airport = snapshot().airportsByIata()[key];
+        return airport != null ? Optional.of(airport) : airportRepo.findByIataCode(iataCode);
+    }
+
+    // Called after a role or airport was saved. Inside a transaction the reload waits until it commits,
+    // otherwise it would read the old rows.
+    public void changed() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    flushEverywhere();
+                }
+            });
+        } else {
+            flushEverywhere();
+        }
+    }
+
+    // Called by ReferenceDataRefreshJob
+    public void checkFlushMarker() {
+        long generation = cacheFlushMarkers.generation(CACHE_NAME);
+        if (loadedGeneration == null || generation != loadedGeneration) {
+            reload();
+            loadedGeneration = generation;
+        }
+    }
+
+    // Packs a code of three ASCII letters, either case, into 15 bits. NO_IATA_KEY for anything else.
+    public static int iataKey(CharSequence code) {
+        if (code == null || code.length() != 3) {
+            return NO_IATA_KEY;
+        }
+        int key = 0;
+        for (int i = 0; i < 3; i++) {
+            // Setting bit 5 lower-cases ASCII letters and leaves everything else outside a-z
+            int letter = (code.charAt(i) | 0x20) - 'a';
+            if (letter < 0 || letter >= 26) {
+                return NO_IATA_KEY;
+            }
+            key = key << 5 | letter;
+        }
+        return key;
+    }
+
+    private void flushEverywhere() {
+        cacheFlushMarkers.increment(CACHE_NAME);
+        reload();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            // Only before ApplicationReadyEvent, e.g. from a CommandLineRunner
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    // Synchronized so an older snapshot can't replace a newer one
+    private synchronized void reload() {
+        List<Role> roles = transactionTemplate.execute(status -> roleRepo.findAll());
+        List<Airport> airports = transactionTemplate.execute(status -> airportRepo.findAll());
+
+        Map<String, Role> rolesByName = new HashMap<>();
+        for (Role role : roles) {
+            if (role.getName() != null) {
+                rolesByName.put(role.getName(), new Role(role.getId(), role.getName()));
+            }
+        }
+
+        Airport[] airportsByIata = new Airport[IATA_KEY_SPACE];
+        for (Airport airport : airports) {
+            int key = iataKey(airport.getIataCode());
+            if (key != NO_IATA_KEY) {
+                airportsByIata[key] = new Airport(airport.getId(), airport.getName(), airport.getCity(),
+                        airport.getCountry(), airport.getIataCode());
+            }
+        }
+
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(rolesByName, airportsByIata);
+        log.info("Loaded {} roles and {} airports into the reference data cache", roles.size(), airports.size());
+
+        if (previous != null) {
+            Map<String, String> newCodesByOldCode = changedIataCodes(previous.airportsByIata(), airportsByIata);
+            if (!newCodesByOldCode.isEmpty()) {
+                eventPublisher.publishEvent(new AirportCodesChanged(newCodesByOldCode));
+            }
+        }
+    }
+
+    private static Map<String, String> changedIataCodes(Airport[] before, Airport[] after) {
+        Map<Long, String> codesById = new HashMap<>();
+        for (Airport airport : before) {
+            if (airport != null) {
+                codesById.put(airport.getId(), airport.getIataCode());
+            }
+        }
+        Map<String, String> newCodesByOldCode = new HashMap<>();
+        for (Airport airport : after) {
+            String oldCode = airport != null ? codesById.get(airport.getId()) : null;
+            if (oldCode != null && !oldCode.equals(airport.getIataCode())) {
+                newCodesByOldCode.put(oldCode, airport.getIataCode());
+            }
+        }
+        return newCodesByOldCode;
+    }
+
+    // Airports that kept their id but got a new IATA code, on this instance once it has reloaded
+    public record AirportCodesChanged(Map<String, String> newCodesByOldCode) {
+    }
+
+    private record Snapshot(Map<String, Role> rolesByName, Airport[] airportsByIata) {
+    }
+}
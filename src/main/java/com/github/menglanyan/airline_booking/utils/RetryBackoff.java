@@ -0,0 +1,43 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+// Exponential backoff with jitter: the delay doubles with every attempt up to maxDelay, and a random
+// amount of up to half of it is taken off. Messages that failed together, e.g. while the SMTP server
+// throttled us, spread out instead of all coming back at the same moment.
+public final class RetryBackoff {
+
+    private final Duration baseDelay;
+
+    private final Duration maxDelay;
+
+    // Null for the calling thread's ThreadLocalRandom
+    private final RandomGenerator random;
+
+    public RetryBackoff(Duration baseDelay, Duration maxDelay) {
+        this(baseDelay, maxDelay, null);
+    }
+
+    public RetryBackoff(Duration baseDelay, Duration maxDelay, RandomGenerator random) {
+        if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("Backoff needs 0 <= baseDelay <= maxDelay");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    // attempt is the number of the attempt that just failed, starting at 1
+    public Duration delayAfter(int attempt) {
+        long baseMillis = baseDelay.toMillis();
+        // Never shifted into the sign bit, maxDelay is reached long before that
+        int doublings = Math.min(Math.max(attempt - 1, 0), Long.numberOfLeadingZeros(baseMillis) - 1);
+        long ceilingMillis = Math.min(baseMillis << doublings, maxDelay.toMillis());
+
+        RandomGenerator jitter = random != null ? random : ThreadLocalRandom.current();
+        long jitterMillis = jitter.nextLong(ceilingMillis / 2 + 1);
+        return Duration.ofMillis(ceilingMillis - jitterMillis);
+    }
+}
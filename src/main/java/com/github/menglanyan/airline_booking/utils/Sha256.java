@@ -0,0 +1,23 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Hex SHA-256 of a string's UTF-8 bytes, for ids and keys derived from content: idempotency keys, email
+// layouts, parsed tokens
+public final class Sha256 {
+
+    private Sha256() {
+    }
+
+    public static String hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.menglanyan.airline_booking.benchmarks;
+
+import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.FlightDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.mappers.AirportMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.BookingMapper;
+import com.github.menglanyan.airline_booking.mappers.BookingMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.FlightMapper;
+import com.github.menglanyan.airline_booking.mappers.FlightMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.UserMapperImpl;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Maps a full page of bookings (100, with user, roles, flight, airports, pilot and passengers), the way
+// GET /api/bookings does.
+// Run with:
+// mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//     -Dexec.args="-cp %classpath com.github.menglanyan.airline_booking.benchmarks.BookingMapperBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingMapperBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private ModelMapper modelMapper;
+
+    private BookingMapper bookingMapper;
+
+    private FlightMapper flightMapper;
+
+    private List<Booking> bookings;
+
+    private List<Flight> flights;
+
+    @Setup
+    public void setup() {
+        // Same configuration as the ModelMapper bean the services used before
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration()
+                .setFieldMatchingEnabled(true)
+                .setFieldAccessLevel(org.modelmapper.config.Configuration.AccessLevel.PRIVATE)
+                .setMatchingStrategy(MatchingStrategies.STANDARD);
+        modelMapper.typeMap(Booking.class, BookingDTO.class)
+                .addMappings(mapper -> mapper.<List<BookingDTO>>skip((dest, value) -> dest.getFlight().setBooking(value)));
+
+        UserMapperImpl userMapper = new UserMapperImpl();
+        PassengerMapperImpl passengerMapper = new PassengerMapperImpl();
+        flightMapper = new FlightMapperImpl(new AirportMapperImpl(), userMapper, passengerMapper);
+        bookingMapper = new BookingMapperImpl(flightMapper, userMapper, passengerMapper);
+
+        createBookings();
+    }
+
+    @Benchmark
+    public List<BookingDTO> modelMapperBookings() {
+        return bookings.stream()
+                .map(booking -> {
+                    BookingDTO bookingDTO = modelMapper.map(booking, BookingDTO.class);
+                    bookingDTO.getFlight().setBooking(null);
+                    return bookingDTO;
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public List<BookingDTO> generatedMapperBookings() {
+        return bookings.stream()
+                .map(bookingMapper::toDTO)
+                .toList();
+    }
+
+    // Flights with their bookings, like GET /api/flights
+    @Benchmark
+    public List<FlightDTO> modelMapperFlights() {
+        return flights.stream()
+                .map(flight -> {
+                    FlightDTO flightDTO = modelMapper.map(flight, FlightDTO.class);
+                    flightDTO.getBooking().forEach(bookingDTO -> bookingDTO.setFlight(null));
+                    return flightDTO;
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public List<FlightDTO> generatedMapperFlights() {
+        return flights.stream()
+                .map(flightMapper::toDTO)
+                .toList();
+    }
+
+    private void createBookings() {
+        Role customerRole = new Role(1L, "CUSTOMER");
+        Role pilotRole = new Role(2L, "PILOT");
+        Airport miami = new Airport(1L, "Miami International", City.MIAMI, Country.USA, "MIA");
+        Airport dallas = new Airport(2L, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW");
+        User pilot = user(1L, "pilot@example.com", pilotRole);
+
+        bookings = new ArrayList<>();
+        flights = new ArrayList<>();
+
+        // Two bookings per flight, every booking by a different customer
+        for (int i = 0; i < PAGE_SIZE / 2; i++) {
+            Flight flight = new Flight();
+            flight.setId((long) i);
+            flight.setFlightNumber("BM" + i);
+            flight.setStatus(FlightStatus.SCHEDULED);
+            flight.setDepartureAirport(miami);
+            flight.setArrivalAirport(dallas);
+            flight.setDepartureTime(LocalDateTime.of(2030, 3, 1, 8, 0));
+            flight.setArrivalTime(LocalDateTime.of(2030, 3, 1, 11, 0));
+            flight.setBasePrice(new BigDecimal("250.00"));
+            flight.setCapacity(180);
+            flight.setAssignedPilot(pilot);
+            flights.add(flight);
+
+            for (int j = 0; j < 2; j++) {
+                Booking booking = new Booking();
+                booking.setId((long) bookings.size());
+                booking.setBookingReference("GBENCH" + bookings.size());
+                booking.setUser(user(100L + bookings.size(), "customer" + bookings.size() + "@example.com",
+                        customerRole));
+                booking.setFlight(flight);
+                booking.setBookingDate(LocalDateTime.of(2030, 2, 1, 12, 0));
+                booking.setStatus(BookingStatus.CONFIRMED);
+                for (int k = 0; k < 2; k++) {
+                    Passenger passenger = new Passenger();
+                    passenger.setId((long) (bookings.size() * 2 + k));
+                    passenger.setBooking(booking);
+                    passenger.setFirstName("First" + k);
+                    passenger.setLastName("Last" + k);
+                    passenger.setPassportNumber("P" + bookings.size() + k);
+                    passenger.setType(PassengerType.ADULT);
+                    passenger.setSeatNumber((k + 1) + "A");
+                    booking.getPassengers().add(passenger);
+                }
+                flight.getBooking().add(booking);
+                bookings.add(booking);
+            }
+        }
+    }
+
+    private static User user(Long id, String email, Role role) {
+        User user = new User();
+        user.setId(id);
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        user.setActive(true);
+        user.setRoles(new ArrayList<>(List.of(role)));
+        user.setCreatedAt(LocalDateTime.of(2029, 1, 1, 0, 0));
+        return user;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BookingMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
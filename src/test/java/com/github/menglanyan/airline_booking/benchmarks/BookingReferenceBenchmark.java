@@ -0,0 +1,58 @@
+package com.github.menglanyan.airline_booking.benchmarks;
+
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Run with:
+// mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//     -Dexec.args="-cp %classpath com.github.menglanyan.airline_booking.benchmarks.BookingReferenceBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingReferenceBenchmark {
+
+    private BookingReferenceGenerator generator;
+
+    @Setup
+    public void setup() {
+        // Blocks come from memory here, in the app only one in a thousand references hits the database
+        generator = new BookingReferenceGenerator(new AtomicLong()::getAndAdd);
+    }
+
+    // What BookingServiceImpl used to do
+    @Benchmark
+    public String uuidSubstring() {
+        return UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    }
+
+    @Benchmark
+    public String blockCounterBase32() {
+        return generator.nextReference();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String blockCounterBase32Contended() {
+        return generator.nextReference();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BookingReferenceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.menglanyan.airline_booking.benchmarks;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.mail.BookingTicketRenderer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Renders the ticket emails of a full 300 seat flight. singlePassTemplate is how tickets were rendered
+// before, the whole of booking_ticket_single_pass.html (the old template, kept under test resources) per
+// ticket. fragmentCachedRenderer renders only the booking's parts and reuses the flight details; a fresh
+// renderer per invocation, so every run pays for rendering the flight details once.
+// Run with:
+// mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//     -Dexec.args="-cp %classpath com.github.menglanyan.airline_booking.benchmarks.BookingTicketRenderBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingTicketRenderBenchmark {
+
+    private static final int SEATS = 300;
+
+    private static final String VIEW_BOOKING_URL = "http://localhost:3000/my-bookings";
+
+    private TemplateEngine templateEngine;
+
+    private List<Booking> bookings;
+
+    @Setup
+    public void setup() {
+        ClassLoaderTemplateResolver applicationTemplates = templateResolver("templates/", 1);
+        ClassLoaderTemplateResolver benchmarkTemplates = templateResolver("benchmarks/templates/", 2);
+
+        SpringTemplateEngine springTemplateEngine = new SpringTemplateEngine();
+        springTemplateEngine.addTemplateResolver(applicationTemplates);
+        springTemplateEngine.addTemplateResolver(benchmarkTemplates);
+        templateEngine = springTemplateEngine;
+
+        createBookings();
+    }
+
+    @Benchmark
+    public List<String> singlePassTemplate() {
+        List<String> tickets = new ArrayList<>(SEATS);
+        for (Booking booking : bookings) {
+            // Same variables as EmailNotificationServiceImpl set before
+            Map<String, Object> templateVariables = new HashMap<>();
+            templateVariables.put("userName", booking.getUser().getName());
+            templateVariables.put("bookingReference", booking.getBookingReference());
+            templateVariables.put("flightNumber", booking.getFlight().getFlightNumber());
+            templateVariables.put("departureAirportIataCode", booking.getFlight().getDepartureAirport().getIataCode());
+            templateVariables.put("departureAirportName", booking.getFlight().getDepartureAirport().getName());
+            templateVariables.put("departureAirportCity", booking.getFlight().getDepartureAirport().getCity());
+            templateVariables.put("departureTime", booking.getFlight().getDepartureTime());
+            templateVariables.put("arrivalAirportIataCode", booking.getFlight().getArrivalAirport().getIataCode());
+            templateVariables.put("arrivalAirportName", booking.getFlight().getArrivalAirport().getName());
+            templateVariables.put("arrivalAirportCity", booking.getFlight().getArrivalAirport().getCity());
+            templateVariables.put("arrivalTime", booking.getFlight().getArrivalTime());
+            templateVariables.put("basePrice", booking.getFlight().getBasePrice());
+            templateVariables.put("passengers", booking.getPassengers());
+            templateVariables.put("viewBookingUrl", VIEW_BOOKING_URL);
+
+            Context context = new Context();
+            templateVariables.forEach(context::setVariable);
+            tickets.add(templateEngine.process("booking_ticket_single_pass", context));
+        }
+        return tickets;
+    }
+
+    @Benchmark
+    public List<String> fragmentCachedRenderer() {
+        BookingTicketRenderer renderer = new BookingTicketRenderer(templateEngine, VIEW_BOOKING_URL, 1000);
+
+        List<String> tickets = new ArrayList<>(SEATS);
+        for (Booking booking : bookings) {
+            tickets.add(renderer.render(booking).body());
+        }
+        return tickets;
+    }
+
+    private static ClassLoaderTemplateResolver templateResolver(String prefix, int order) {
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix(prefix);
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCharacterEncoding("UTF-8");
+        templateResolver.setOrder(order);
+        templateResolver.setCheckExistence(true);
+        return templateResolver;
+    }
+
+    // One booking per seat, most with a single passenger and every fifth a couple
+    private void createBookings() {
+        Flight flight = new Flight();
+        flight.setId(1L);
+        flight.setFlightNumber("BM300");
+        flight.setDepartureAirport(new Airport(1L, "Miami International", City.MIAMI, Country.USA, "MIA"));
+        flight.setArrivalAirport(new Airport(2L, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW"));
+        flight.setDepartureTime(LocalDateTime.of(2030, 3, 1, 8, 0));
+        flight.setArrivalTime(LocalDateTime.of(2030, 3, 1, 11, 0));
+        flight.setBasePrice(new BigDecimal("250.00"));
+        flight.setCapacity(SEATS);
+
+        bookings = new ArrayList<>();
+        int seat = 0;
+        while (seat < SEATS) {
+            User user = new User();
+            user.setName("Customer " + bookings.size());
+            user.setEmail("customer" + bookings.size() + "@example.com");
+
+            Booking booking = new Booking();
+            booking.setBookingReference("GBENCH" + bookings.size());
+            booking.setUser(user);
+            booking.setFlight(flight);
+
+            int passengers = bookings.size() % 5 == 4 ? 2 : 1;
+            for (int k = 0; k < passengers && seat < SEATS; k++, seat++) {
+                Passenger passenger = new Passenger();
+                passenger.setFirstName("First" + seat);
+                passenger.setLastName("Last" + seat);
+                passenger.setPassportNumber("P" + seat);
+                passenger.setType(PassengerType.ADULT);
+                passenger.setSeatNumber((seat / 6 + 1) + String.valueOf((char) ('A' + seat % 6)));
+                booking.getPassengers().add(passenger);
+            }
+            bookings.add(booking);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BookingTicketRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.menglanyan.airline_booking.benchmarks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The flight search and pilot schedule queries on two million generated flights: 50 airports, 2000 pilots,
+// a year of departures, one in twenty cancelled. Runs against H2, the plans logged at setup show which index
+// each query reads.
+// Run with:
+// mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//     -Dexec.args="-cp %classpath com.github.menglanyan.airline_booking.benchmarks.FlightSearchQueryBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+@Slf4j
+public class FlightSearchQueryBenchmark {
+
+    private static final int FLIGHTS = 2_000_000;
+
+    private static final int AIRPORTS = 50;
+
+    private static final int PILOTS = 2000;
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+    // Before: the derived query with the airports and the pilot joined, every column of all three
+    private static final String FULL_ROW_SEARCH = "SELECT f.*, d.*, a.*, p.* FROM flights f "
+            + "JOIN airports d ON d.id = f.departure_airport_id JOIN airports a ON a.id = f.arrival_airport_id "
+            + "LEFT JOIN users p ON p.id = f.assigned_pilot_id "
+            + "WHERE d.iata_code = ? AND a.iata_code = ? AND f.status = ? "
+            + "AND f.departure_time BETWEEN ? AND ?";
+
+    // After: FlightRepo.searchSummaries, the airport ids come from the reference data cache
+    private static final String SUMMARY_SEARCH = "SELECT f.id, f.flight_number, f.status, d.iata_code, "
+            + "a.iata_code, f.departure_time, f.arrival_time, f.base_price, f.capacity, f.seats_sold FROM flights f "
+            + "JOIN airports d ON d.id = f.departure_airport_id JOIN airports a ON a.id = f.arrival_airport_id "
+            + "WHERE f.departure_airport_id = ? AND f.arrival_airport_id = ? AND f.status = ? "
+            + "AND f.departure_time >= ? AND f.departure_time < ? ORDER BY f.departure_time";
+
+    // FlightRepo.findByAssignedPilotIdOrderByDepartureTimeDesc
+    private static final String PILOT_SCHEDULE = "SELECT f.*, d.*, a.* FROM flights f "
+            + "JOIN airports d ON d.id = f.departure_airport_id JOIN airports a ON a.id = f.arrival_airport_id "
+            + "WHERE f.assigned_pilot_id = ? ORDER BY f.departure_time DESC";
+
+    // Without the indexes every query scans all flights
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Connection connection;
+
+    private PreparedStatement fullRowSearch;
+
+    private PreparedStatement summarySearch;
+
+    private PreparedStatement pilotSchedule;
+
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection(
+                "jdbc:h2:mem:flight-search-" + indexed + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE airports (id BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                    + "iata_code VARCHAR(3) NOT NULL UNIQUE)");
+            statement.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, name VARCHAR(255), "
+                    + "email VARCHAR(255) UNIQUE)");
+            statement.execute("CREATE TABLE flights (id BIGINT PRIMARY KEY, flight_number VARCHAR(255) NOT NULL "
+                    + "UNIQUE, version BIGINT DEFAULT 0 NOT NULL, status VARCHAR(255), departure_airport_id BIGINT, "
+                    + "arrival_airport_id BIGINT, departure_time TIMESTAMP(6), arrival_time TIMESTAMP(6), "
+                    + "base_price DECIMAL(38, 2), capacity INT DEFAULT 180 NOT NULL, "
+                    + "seats_sold INT DEFAULT 0 NOT NULL, assigned_pilot_id BIGINT)");
+
+            // Codes AAA, AAB, ... so each airport has a unique one
+            statement.execute("INSERT INTO airports SELECT X, 'Airport ' || X, 'A' || CHAR(65 + X / 26) "
+                    + "|| CHAR(65 + MOD(X, 26)) FROM SYSTEM_RANGE(1, " + AIRPORTS + ")");
+            statement.execute("INSERT INTO users SELECT X, 'Pilot ' || X, 'pilot' || X || '@example.com' "
+                    + "FROM SYSTEM_RANGE(1, " + PILOTS + ")");
+            // Every route in both directions, departures scattered over the year's minutes
+            statement.execute("INSERT INTO flights (id, flight_number, status, departure_airport_id, "
+                    + "arrival_airport_id, departure_time, arrival_time, base_price, capacity, seats_sold, "
+                    + "assigned_pilot_id) SELECT X, 'BM' || X, "
+                    + "CASEWHEN(MOD(X, 20) = 0, 'CANCELLED', 'SCHEDULED'), "
+                    + "MOD(X, " + AIRPORTS + ") + 1, "
+                    + "MOD(MOD(X, " + AIRPORTS + ") + 1 + MOD(X / " + AIRPORTS + ", " + (AIRPORTS - 1) + "), "
+                    + AIRPORTS + ") + 1, "
+                    + "DATEADD('MINUTE', MOD(X * 7919, 525600), TIMESTAMP '" + FIRST_DAY + " 00:00:00'), "
+                    + "DATEADD('MINUTE', MOD(X * 7919, 525600) + 180, TIMESTAMP '" + FIRST_DAY + " 00:00:00'), "
+                    + "100 + MOD(X, 400), 180, MOD(X, 180), MOD(X * 31, " + PILOTS + ") + 1 "
+                    + "FROM SYSTEM_RANGE(1, " + FLIGHTS + ")");
+
+            if (indexed) {
+                // Same as the @Index definitions on Flight
+                statement.execute("CREATE INDEX idx_flights_route_status_departure_time ON flights "
+                        + "(departure_airport_id, arrival_airport_id, status, departure_time)");
+                statement.execute("CREATE INDEX idx_flights_assigned_pilot_id_departure_time ON flights "
+                        + "(assigned_pilot_id, departure_time)");
+            }
+            statement.execute("ANALYZE");
+        }
+
+        fullRowSearch = connection.prepareStatement(FULL_ROW_SEARCH);
+        summarySearch = connection.prepareStatement(SUMMARY_SEARCH);
+        pilotSchedule = connection.prepareStatement(PILOT_SCHEDULE);
+
+        logPlan("full row search", FULL_ROW_SEARCH, "'AAB'", "'AAC'", "'SCHEDULED'",
+                "TIMESTAMP '2030-06-01 00:00:00'", "TIMESTAMP '2030-06-01 23:59:59'");
+        logPlan("summary search", SUMMARY_SEARCH, "1", "2", "'SCHEDULED'",
+                "TIMESTAMP '2030-06-01 00:00:00'", "TIMESTAMP '2030-06-02 00:00:00'");
+        logPlan("pilot schedule", PILOT_SCHEDULE, "1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void fullRowSearch(Blackhole blackhole) throws SQLException {
+        LocalDate day = randomDay();
+        fullRowSearch.setString(1, iataCode(randomAirport(0)));
+        fullRowSearch.setString(2, iataCode(randomAirport(1)));
+        fullRowSearch.setString(3, "SCHEDULED");
+        fullRowSearch.setTimestamp(4, Timestamp.valueOf(day.atStartOfDay()));
+        fullRowSearch.setTimestamp(5, Timestamp.valueOf(day.atTime(23, 59, 59)));
+        consume(fullRowSearch, blackhole);
+    }
+
+    @Benchmark
+    public void summarySearch(Blackhole blackhole) throws SQLException {
+        LocalDate day = randomDay();
+        summarySearch.setLong(1, randomAirport(0));
+        summarySearch.setLong(2, randomAirport(1));
+        summarySearch.setString(3, "SCHEDULED");
+        summarySearch.setTimestamp(4, Timestamp.valueOf(day.atStartOfDay()));
+        summarySearch.setTimestamp(5, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        consume(summarySearch, blackhole);
+    }
+
+    @Benchmark
+    public void pilotSchedule(Blackhole blackhole) throws SQLException {
+        pilotSchedule.setLong(1, random.nextInt(PILOTS) + 1);
+        consume(pilotSchedule, blackhole);
+    }
+
+    // Departures from even and arrivals at odd airport ids, so the two always differ
+    private int randomAirport(int offset) {
+        return (random.nextInt(AIRPORTS / 2) * 2 + offset) % AIRPORTS + 1;
+    }
+
+    private static String iataCode(int airport) {
+        return "A" + (char) ('A' + airport / 26) + (char) ('A' + airport % 26);
+    }
+
+    private LocalDate randomDay() {
+        return FIRST_DAY.plusDays(random.nextInt(365));
+    }
+
+    private static void consume(PreparedStatement query, Blackhole blackhole) throws SQLException {
+        try (ResultSet rows = query.executeQuery()) {
+            int columns = rows.getMetaData().getColumnCount();
+            while (rows.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    blackhole.consume(rows.getObject(i));
+                }
+            }
+        }
+    }
+
+    private void logPlan(String name, String sql, String... values) throws SQLException {
+        String explained = sql;
+        for (String value : values) {
+            explained = explained.replaceFirst("\\?", value);
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("EXPLAIN " + explained)) {
+            plan.next();
+            log.info("Plan of the {}, {}:\n{}", name, indexed ? "indexed" : "not indexed", plan.getString(1));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FlightSearchQueryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.menglanyan.airline_booking.benchmarks;
+
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.security.JwtUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The token work AuthFilter does per request, without the user lookup.
+// Run with:
+// mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//     -Dexec.args="-cp %classpath com.github.menglanyan.airline_booking.benchmarks.JwtParseBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtParseBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-that-is-at-least-32-chars-long";
+
+    private SecretKey key;
+
+    private JwtParser parser;
+
+    private JwtUtils jwtUtils;
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        key = new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        parser = Jwts.parser().verifyWith(key).build();
+        jwtUtils = new JwtUtils(SECRET, 10_000);
+        token = jwtUtils.generateToken(user());
+    }
+
+    // What AuthFilter used to do: subject, then subject and expiry again in isTokenValid, each with a new parser
+    @Benchmark
+    public boolean threeParsesWithNewParsers() {
+        String email = parseWithNewParser().getSubject();
+        return email.equals(parseWithNewParser().getSubject())
+                && !parseWithNewParser().getExpiration().before(new Date());
+    }
+
+    // A token seen for the first time
+    @Benchmark
+    public Claims oneParseWithPrebuiltParser() {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    // Every later request with the same token
+    @Benchmark
+    public Claims verifiedTokenCacheHit() {
+        return jwtUtils.parseToken(token);
+    }
+
+    private static User user() {
+        Role customer = new Role();
+        customer.setName("CUSTOMER");
+
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("alice@example.com");
+        user.setRoles(List.of(customer));
+        return user;
+    }
+
+    private Claims parseWithNewParser() {
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtParseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
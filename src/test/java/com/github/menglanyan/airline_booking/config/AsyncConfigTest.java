@@ -0,0 +1,172 @@
+package com.github.menglanyan.airline_booking.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringJUnitConfig
+class AsyncConfigTest {
+
+    @Autowired private AsyncProbe asyncProbe;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AsyncConfig asyncConfig = new AsyncConfig(meterRegistry);
+    private final List<ThreadPoolTaskExecutor> executors = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executors.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    @Test
+    void discardingExecutor_dropsWorkBeyondItsQueue_andCountsIt() throws Exception {
+        ThreadPoolTaskExecutor executor = executor("mail", 1, 1, new ThreadPoolExecutor.DiscardPolicy());
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+            runs.incrementAndGet();
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            executor.execute(runs::incrementAndGet);
+        }
+
+        assertEquals(1.0, gauge("async.executor.active", "mail"));
+        assertEquals(1.0, gauge("async.executor.queued", "mail"));
+        assertEquals(4.0, meterRegistry.get("async.task.rejected").tag("executor", "mail").counter().count());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void abortingExecutor_rejectsTheCaller_whenFull() throws Exception {
+        ThreadPoolTaskExecutor executor = executor("background", 1, 2, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch running = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+        executor.execute(() -> { });
+
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+        assertEquals(1.0, meterRegistry.get("async.task.rejected").tag("executor", "background").counter().count());
+    }
+
+    @Test
+    void recordsQueueWaitAndExecutionTime() throws Exception {
+        ThreadPoolTaskExecutor executor = executor("timed", 1, 10, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch running = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            running.countDown();
+            sleep(50);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        // Queued behind the first task, so it waits about as long as that one runs
+        executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        // The future completes before the task's timers are recorded
+        executor.shutdown();
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, meterRegistry.get("async.task.execution").tag("executor", "timed").timer().count());
+        assertTrue(meterRegistry.get("async.task.execution").tag("executor", "timed").timer()
+                .totalTime(TimeUnit.MILLISECONDS) >= 50);
+        assertTrue(meterRegistry.get("async.task.wait").tag("executor", "timed").timer()
+                .max(TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    @Test
+    void asyncMethods_runOnTheirWorkloadsExecutor() throws Exception {
+        assertTrue(asyncProbe.ticketMailThread().get(5, TimeUnit.SECONDS).startsWith("ticket-mail-"));
+        assertTrue(asyncProbe.defaultThread().get(5, TimeUnit.SECONDS).startsWith("background-"));
+    }
+
+    private ThreadPoolTaskExecutor executor(String name, int threads, int queueCapacity,
+                                            RejectedExecutionHandler rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = asyncConfig.boundedExecutor(name, threads, queueCapacity, rejectionPolicy);
+        executor.initialize();
+        executors.add(executor);
+        return executor;
+    }
+
+    private double gauge(String gauge, String executor) {
+        return meterRegistry.get(gauge).tag("executor", executor).gauge().value();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Configuration
+    @EnableAsync
+    @Import(AsyncConfig.class)
+    static class AsyncTestConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        AsyncProbe asyncProbe() {
+            return new AsyncProbe();
+        }
+    }
+
+    static class AsyncProbe {
+
+        @Async(AsyncConfig.TICKET_MAIL_EXECUTOR)
+        public CompletableFuture<String> ticketMailThread() {
+            return CompletableFuture.completedFuture(Thread.currentThread().getName());
+        }
+
+        @Async
+        public CompletableFuture<String> defaultThread() {
+            return CompletableFuture.completedFuture(Thread.currentThread().getName());
+        }
+    }
+}
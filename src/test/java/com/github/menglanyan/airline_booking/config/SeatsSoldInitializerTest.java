@@ -0,0 +1,83 @@
+package com.github.menglanyan.airline_booking.config;
+
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(SeatsSoldInitializer.class)
+class SeatsSoldInitializerTest {
+
+    @Autowired private SeatsSoldInitializer initializer;
+    @Autowired private TestEntityManager entityManager;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void flightsBookedBeforeSeatsSoldExisted_countTheirPassengers_otherFlightsKeepTheirCount() {
+        // Booked before the column was added, so still at 0
+        Flight legacy = flight("SSI001", 0);
+        booking(legacy, BookingStatus.CONFIRMED, 2);
+        booking(legacy, BookingStatus.PENDING, 1);
+        booking(legacy, BookingStatus.CANCELLED, 3);
+        // Already counted by reserveSeats, e.g. the oldest booking was cancelled without releasing its seats
+        Flight counted = flight("SSI002", 4);
+        booking(counted, BookingStatus.CONFIRMED, 1);
+        Flight empty = flight("SSI003", 0);
+        entityManager.flush();
+
+        initializer.backfillSeatsSold();
+
+        assertEquals(3, seatsSold(legacy));
+        assertEquals(4, seatsSold(counted));
+        assertEquals(0, seatsSold(empty));
+
+        // Nothing left to do on the next startup
+        jdbcTemplate.update("UPDATE flights SET seats_sold = 5 WHERE id = ?", legacy.getId());
+        initializer.backfillSeatsSold();
+        assertEquals(5, seatsSold(legacy));
+    }
+
+    private Flight flight(String flightNumber, int seatsSold) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(flightNumber);
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureTime(LocalDateTime.now().plusDays(3));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(3).plusHours(2));
+        flight.setBasePrice(new BigDecimal("100.00"));
+        flight.setCapacity(180);
+        flight.setSeatsSold(seatsSold);
+        return entityManager.persist(flight);
+    }
+
+    private void booking(Flight flight, BookingStatus status, int passengers) {
+        Booking booking = new Booking();
+        booking.setBookingReference(flight.getFlightNumber() + status);
+        booking.setFlight(flight);
+        booking.setStatus(status);
+        booking.setBookingDate(LocalDateTime.now());
+        for (int i = 0; i < passengers; i++) {
+            Passenger passenger = new Passenger();
+            passenger.setBooking(booking);
+            booking.getPassengers().add(passenger);
+        }
+        entityManager.persist(booking);
+    }
+
+    private int seatsSold(Flight flight) {
+        return jdbcTemplate.queryForObject("SELECT seats_sold FROM flights WHERE id = ?", Integer.class,
+                flight.getId());
+    }
+}
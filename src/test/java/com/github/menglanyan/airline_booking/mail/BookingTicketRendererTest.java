@@ -0,0 +1,128 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.Year;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BookingTicketRendererTest {
+
+    private TemplateEngine templateEngine;
+    private BookingTicketRenderer renderer;
+    private Flight flight;
+
+    @BeforeEach
+    void setup() {
+        templateEngine = spy(templateEngine());
+        renderer = new BookingTicketRenderer(templateEngine, "http://localhost:3000/my-bookings", 100);
+
+        flight = new Flight();
+        flight.setId(1L);
+        flight.setFlightNumber("TR100");
+        flight.setDepartureAirport(new Airport(1L, "Miami International", City.MIAMI, Country.USA, "MIA"));
+        flight.setArrivalAirport(new Airport(2L, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW"));
+        flight.setDepartureTime(LocalDateTime.of(2030, 3, 1, 8, 0));
+        flight.setArrivalTime(LocalDateTime.of(2030, 3, 1, 11, 0));
+        flight.setBasePrice(new BigDecimal("250.00"));
+    }
+
+    @Test
+    void ticket_containsTheFlightAndTheBookingsOwnDetails() {
+        String ticket = renderer.render(booking("alice", "GREF0001", "Alice", "12A")).body();
+
+        assertTrue(ticket.contains("Hello <strong>alice</strong>"));
+        assertTrue(ticket.contains("<strong>GREF0001</strong>"));
+        assertTrue(ticket.contains("Flight: <span>TR100</span>"));
+        assertTrue(ticket.contains("<span class=\"airport-code\">MIA</span>"));
+        assertTrue(ticket.contains("01 Mar 2030 08:00"));
+        assertTrue(ticket.contains("Alice Traveller"));
+        assertTrue(ticket.contains("<span class=\"detail-value\">12A</span>"));
+        assertTrue(ticket.contains("href=\"http://localhost:3000/my-bookings\""));
+        // The section comes in as markup, not escaped text
+        assertFalse(ticket.contains("&lt;"));
+        assertFalse(ticket.contains("ticket-content"));
+        assertTrue(ticket.trim().startsWith("<!DOCTYPE html>"));
+        assertTrue(ticket.trim().endsWith("</html>"));
+        assertTrue(ticket.contains("&copy; <span>" + Year.now() + "</span>"));
+    }
+
+    @Test
+    void layoutAndFlightDetails_areRenderedOnce_forAllTicketsOfAFlight() {
+        String first = renderer.render(booking("alice", "GREF0001", "Alice", "12A")).body();
+        String second = renderer.render(booking("bob", "GREF0002", "Bob", "12B")).body();
+
+        verify(templateEngine, times(1)).process(eq(BookingTicketRenderer.FLIGHT_DETAILS_TEMPLATE), any(IContext.class));
+        verify(templateEngine, times(1)).process(eq(BookingTicketRenderer.TICKET_TEMPLATE), any(IContext.class));
+        verify(templateEngine, times(2)).process(eq(BookingTicketRenderer.CONTENT_TEMPLATE), any(IContext.class));
+        assertTrue(second.contains("Bob Traveller"));
+        assertFalse(second.contains("Alice Traveller"));
+        assertEquals(flightSection(first), flightSection(second));
+    }
+
+    @Test
+    void rescheduledFlight_isRenderedAgain() {
+        renderer.render(booking("alice", "GREF0001", "Alice", "12A"));
+
+        flight.setDepartureTime(LocalDateTime.of(2030, 3, 1, 9, 30));
+        String ticket = renderer.render(booking("bob", "GREF0002", "Bob", "12B")).body();
+
+        verify(templateEngine, times(2)).process(eq(BookingTicketRenderer.FLIGHT_DETAILS_TEMPLATE), any(IContext.class));
+        assertTrue(ticket.contains("01 Mar 2030 09:30"));
+    }
+
+    private Booking booking(String userName, String reference, String passengerName, String seat) {
+        User user = new User();
+        user.setName(userName);
+        user.setEmail(userName + "@example.com");
+
+        Booking booking = new Booking();
+        booking.setBookingReference(reference);
+        booking.setUser(user);
+        booking.setFlight(flight);
+
+        Passenger passenger = new Passenger();
+        passenger.setFirstName(passengerName);
+        passenger.setLastName("Traveller");
+        passenger.setType(PassengerType.ADULT);
+        passenger.setSeatNumber(seat);
+        booking.getPassengers().add(passenger);
+        return booking;
+    }
+
+    private static String flightSection(String ticket) {
+        return ticket.substring(ticket.indexOf("Flight Details"), ticket.indexOf("Passenger Details"));
+    }
+
+    // Resolves the application's templates the way Boot configures them
+    static TemplateEngine templateEngine() {
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("templates/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCharacterEncoding("UTF-8");
+
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        return templateEngine;
+    }
+}
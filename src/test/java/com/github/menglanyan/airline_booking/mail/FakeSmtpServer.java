@@ -0,0 +1,143 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Just enough SMTP for JavaMail to deliver to. Every connection waits handshakeMillis before the greeting,
+// standing in for the TCP, STARTTLS and AUTH round trips of a real server. Recipients containing "reject"
+// are refused, ones containing "hangup" make the server close the connection. Logins are accepted until
+// rejectLogins() is called.
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final long handshakeMillis;
+
+    private final Set<Socket> openConnections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicInteger messages = new AtomicInteger();
+
+    private volatile boolean unavailable;
+
+    private volatile boolean rejectingLogins;
+
+    FakeSmtpServer(long handshakeMillis) throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        this.handshakeMillis = handshakeMillis;
+        Thread.ofPlatform().daemon().name("fake-smtp-accept").start(this::accept);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int messages() {
+        return messages.get();
+    }
+
+    // Like a server timing out idle clients, without telling them
+    void dropConnections() throws IOException {
+        for (Socket socket : openConnections) {
+            socket.close();
+        }
+    }
+
+    // New connections get a 421 and are closed, like a server that is shutting down
+    void refuseConnections() throws IOException {
+        unavailable = true;
+        dropConnections();
+    }
+
+    // Like credentials revoked while connections are open
+    void rejectLogins() {
+        rejectingLogins = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                openConnections.add(socket);
+                Thread.ofPlatform().daemon().start(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+
+            if (unavailable) {
+                reply(out, "421 localhost Service not available");
+                return;
+            }
+
+            Thread.sleep(handshakeMillis);
+            reply(out, "220 localhost fake ESMTP");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(out, "250-localhost");
+                    reply(out, "250 AUTH PLAIN");
+                } else if (command.startsWith("AUTH")) {
+                    reply(out, rejectingLogins ? "535 Authentication failed" : "235 Authentication successful");
+                } else if (command.startsWith("RCPT") && command.contains("HANGUP")) {
+                    return;
+                } else if (command.startsWith("RCPT") && command.contains("REJECT")) {
+                    reply(out, "550 No such user");
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // message content is not kept
+                    }
+                    messages.incrementAndGet();
+                    reply(out, "250 OK queued");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    // MAIL, RCPT, RSET, NOOP
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // dropped by dropConnections() or by the client
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openConnections.remove(socket);
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
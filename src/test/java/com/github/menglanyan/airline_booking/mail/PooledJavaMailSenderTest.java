@@ -0,0 +1,170 @@
+package com.github.menglanyan.airline_booking.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledJavaMailSenderTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledJavaMailSenderTest.class);
+
+    // A TLS and AUTH handshake with a remote provider easily takes this long
+    private static final long HANDSHAKE_MILLIS = 20;
+
+    private FakeSmtpServer smtpServer;
+    private PooledJavaMailSender pooledSender;
+
+    @BeforeEach
+    void setup() throws Exception {
+        smtpServer = new FakeSmtpServer(HANDSHAKE_MILLIS);
+        pooledSender = configure(new PooledJavaMailSender(2));
+    }
+
+    @AfterEach
+    void shutdown() throws Exception {
+        pooledSender.destroy();
+        smtpServer.close();
+    }
+
+    @Test
+    void reusesItsConnection_acrossSends() throws Exception {
+        pooledSender.send(messages(pooledSender, 5));
+        pooledSender.send(messages(pooledSender, 5));
+        pooledSender.send(message(pooledSender, "single@example.com"));
+
+        assertEquals(11, smtpServer.messages());
+        assertEquals(1, smtpServer.connections());
+    }
+
+    @Test
+    void reconnectsTransparently_whenTheServerDropsTheConnection() throws Exception {
+        pooledSender.send(messages(pooledSender, 3));
+
+        smtpServer.dropConnections();
+        pooledSender.send(messages(pooledSender, 3));
+
+        assertEquals(6, smtpServer.messages());
+        assertEquals(2, smtpServer.connections());
+    }
+
+    @Test
+    void reportsRefusedMessages_andSendsTheRest() throws Exception {
+        MimeMessage refused = message(pooledSender, "reject@example.com");
+
+        MailSendException ex = assertThrows(MailSendException.class, () -> pooledSender.send(
+                message(pooledSender, "a@example.com"), refused, message(pooledSender, "b@example.com")));
+
+        assertEquals(1, ex.getFailedMessages().size());
+        assertTrue(ex.getFailedMessages().containsKey(refused));
+        assertEquals(2, smtpServer.messages());
+        // the connection is still fine and stays in the pool
+        pooledSender.send(message(pooledSender, "c@example.com"));
+        assertEquals(1, smtpServer.connections());
+    }
+
+    @Test
+    void failsEveryMessage_whenTheServerIsUnavailable() throws Exception {
+        pooledSender.send(messages(pooledSender, 1));
+        smtpServer.refuseConnections();
+
+        MailSendException ex = assertThrows(MailSendException.class,
+                () -> pooledSender.send(messages(pooledSender, 3)));
+
+        assertEquals(3, ex.getFailedMessages().size());
+        assertEquals(1, smtpServer.messages());
+    }
+
+    @Test
+    void failsOnlyTheUnsentMessages_whenLoginFailsOnAReconnect() throws Exception {
+        pooledSender.setUsername("noreply@example.com");
+        pooledSender.setPassword("secret");
+        pooledSender.getJavaMailProperties().setProperty("mail.smtp.auth", "true");
+        pooledSender.send(messages(pooledSender, 1));
+        smtpServer.rejectLogins();
+
+        MimeMessage sent = message(pooledSender, "a@example.com");
+        MimeMessage hungUp = message(pooledSender, "hangup@example.com");
+        MimeMessage notSent = message(pooledSender, "b@example.com");
+        MailSendException ex = assertThrows(MailSendException.class,
+                () -> pooledSender.send(sent, hungUp, notSent));
+
+        assertEquals(2, ex.getFailedMessages().size());
+        assertTrue(ex.getFailedMessages().containsKey(hungUp));
+        assertTrue(ex.getFailedMessages().containsKey(notSent));
+        assertEquals(2, smtpServer.messages());
+    }
+
+    @Test
+    void pooledBatches_sendManyTimesFasterThanConnectionPerMessage() throws Exception {
+        int count = 50;
+
+        // Before: one send() per mail, each one connecting and disconnecting
+        JavaMailSenderImpl plainSender = configure(new JavaMailSenderImpl());
+        MimeMessage[] plainMessages = messages(plainSender, count);
+        long start = System.nanoTime();
+        for (MimeMessage message : plainMessages) {
+            plainSender.send(message);
+        }
+        double plainPerSecond = count / seconds(start);
+
+        // After: batches of 10 over pooled connections
+        MimeMessage[] pooledMessages = messages(pooledSender, count);
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += 10) {
+            pooledSender.send(Arrays.copyOfRange(pooledMessages, i, i + 10));
+        }
+        double pooledPerSecond = count / seconds(start);
+
+        log.info("Messages per second: {} connecting per message, {} pooled", Math.round(plainPerSecond),
+                Math.round(pooledPerSecond));
+        assertEquals(2 * count, smtpServer.messages());
+        assertTrue(pooledPerSecond > 5 * plainPerSecond,
+                "pooled " + pooledPerSecond + "/s vs " + plainPerSecond + "/s");
+    }
+
+    private <T extends JavaMailSenderImpl> T configure(T sender) {
+        sender.setHost("localhost");
+        sender.setPort(smtpServer.port());
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.from", "noreply@example.com");
+        sender.setJavaMailProperties(properties);
+        return sender;
+    }
+
+    private static MimeMessage[] messages(JavaMailSender sender, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> message(sender, "user" + i + "@example.com"))
+                .toArray(MimeMessage[]::new);
+    }
+
+    private static MimeMessage message(JavaMailSender sender, String recipient) {
+        try {
+            MimeMessage mimeMessage = sender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
+            helper.setTo(recipient);
+            helper.setSubject("Your Flight Booking Ticket");
+            helper.setText("<p>ticket</p>", true);
+            return mimeMessage;
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000_000.0;
+    }
+}
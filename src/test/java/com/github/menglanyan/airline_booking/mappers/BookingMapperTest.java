@@ -0,0 +1,82 @@
+package com.github.menglanyan.airline_booking.mappers;
+
+import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.FlightDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingMapperTest {
+
+    private FlightMapper flightMapper;
+    private BookingMapper bookingMapper;
+    private Booking booking;
+
+    @BeforeEach
+    void setup() {
+        UserMapper userMapper = new UserMapperImpl();
+        PassengerMapper passengerMapper = new PassengerMapperImpl();
+        flightMapper = new FlightMapperImpl(new AirportMapperImpl(), userMapper, passengerMapper);
+        bookingMapper = new BookingMapperImpl(flightMapper, userMapper, passengerMapper);
+
+        User user = new User();
+        user.setId(7L);
+        user.setEmail("customer@example.com");
+        user.setPassword("$2a$10$hash");
+
+        Flight flight = new Flight();
+        flight.setId(3L);
+        flight.setFlightNumber("MP100");
+        flight.setDepartureAirport(new Airport(1L, "Miami International", City.MIAMI, Country.USA, "MIA"));
+        flight.setArrivalAirport(new Airport(2L, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW"));
+
+        booking = new Booking();
+        booking.setId(11L);
+        booking.setBookingReference("MAPPER01");
+        booking.setStatus(BookingStatus.CONFIRMED);
+        booking.setUser(user);
+        booking.setFlight(flight);
+        flight.getBooking().add(booking);
+
+        Passenger passenger = new Passenger();
+        passenger.setId(5L);
+        passenger.setFirstName("Alice");
+        passenger.setType(PassengerType.ADULT);
+        passenger.setBooking(booking);
+        booking.getPassengers().add(passenger);
+    }
+
+    @Test
+    void bookingDTO_hasFlightWithoutBookings() {
+        BookingDTO dto = bookingMapper.toDTO(booking);
+
+        assertEquals("MAPPER01", dto.getBookingReference());
+        assertEquals("MP100", dto.getFlight().getFlightNumber());
+        assertEquals("MIA", dto.getFlight().getDepartureAirportIataCode());
+        assertEquals("DFW", dto.getFlight().getArrivalAirport().getIataCode());
+        assertNull(dto.getFlight().getBooking());
+        assertEquals("Alice", dto.getPassengers().get(0).getFirstName());
+        assertEquals("customer@example.com", dto.getUser().getEmail());
+        assertNull(dto.getUser().getPassword());
+    }
+
+    @Test
+    void flightDTO_hasBookingsWithoutFlight() {
+        FlightDTO dto = flightMapper.toDTO(booking.getFlight());
+
+        assertEquals(1, dto.getBooking().size());
+        assertEquals("MAPPER01", dto.getBooking().get(0).getBookingReference());
+        assertNull(dto.getBooking().get(0).getFlight());
+        assertNull(flightMapper.toDTOWithoutBookings(booking.getFlight()).getBooking());
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.config.JpaBatchingConfig;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(JpaBatchingConfig.class)
+class BookingInsertStatementsTest {
+
+    @Autowired private BookingRepo bookingRepo;
+    @Autowired private PassengerRepo passengerRepo;
+    @Autowired private TestEntityManager entityManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void ninePassengerBooking_isInsertedWithOneStatementPerTable() {
+        // warm-up bookings allocate the id blocks, a fresh pooled sequence hands out a single id first
+        saveBooking("WARMUP01", 9);
+        saveBooking("WARMUP02", 9);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        saveBooking("BATCH001", 9);
+        entityManager.flush();
+
+        assertEquals(10, statistics.getEntityInsertCount());
+        // one insert for the booking and a single batched insert for all nine passengers
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    // Same calls as BookingServiceImpl.createBooking
+    private void saveBooking(String reference, int passengerCount) {
+        Booking booking = new Booking();
+        booking.setBookingReference(reference);
+        booking.setBookingDate(LocalDateTime.now());
+        booking.setStatus(BookingStatus.CONFIRMED);
+        Booking savedBooking = bookingRepo.save(booking);
+
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < passengerCount; i++) {
+            Passenger passenger = new Passenger();
+            passenger.setFirstName("First" + i);
+            passenger.setLastName("Last" + i);
+            passenger.setType(PassengerType.ADULT);
+            passenger.setBooking(savedBooking);
+            passengers.add(passenger);
+        }
+        passengerRepo.saveAll(passengers);
+        savedBooking.setPassengers(passengers);
+    }
+}
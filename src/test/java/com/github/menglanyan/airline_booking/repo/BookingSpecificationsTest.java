@@ -0,0 +1,124 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BookingSpecificationsTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Autowired private BookingRepo bookingRepo;
+    @Autowired private FlightRepo flightRepo;
+    @Autowired private UserRepo userRepo;
+
+    private Flight flightA;
+    private Flight flightB;
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setup() {
+        flightA = flightRepo.save(flight("PAGE001"));
+        flightB = flightRepo.save(flight("PAGE002"));
+        alice = userRepo.save(user("alice@example.com"));
+        bob = userRepo.save(user("bob@example.com"));
+
+        // 30 bookings, one a day, alternating flights and users, every third one cancelled
+        for (int i = 0; i < 30; i++) {
+            Booking booking = new Booking();
+            booking.setBookingReference("PAGE" + i);
+            booking.setFlight(i % 2 == 0 ? flightA : flightB);
+            booking.setUser(i % 3 == 0 ? bob : alice);
+            booking.setStatus(i % 3 == 2 ? BookingStatus.CANCELLED : BookingStatus.CONFIRMED);
+            booking.setBookingDate(START.plusDays(i));
+            bookingRepo.save(booking);
+        }
+    }
+
+    @Test
+    void pagesThroughAllBookings_newestFirst_withoutGapsOrOverlaps() {
+        List<Booking> all = bookingRepo.findAll(Sort.by(Sort.Direction.DESC, "id"));
+
+        List<Booking> paged = new ArrayList<>();
+        Long cursor = null;
+        List<Booking> page;
+        do {
+            page = page(new BookingFilter(), cursor, 7);
+            paged.addAll(page);
+            cursor = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+        } while (page.size() == 7);
+
+        assertEquals(all.stream().map(Booking::getId).toList(), paged.stream().map(Booking::getId).toList());
+    }
+
+    @Test
+    void combinesFilters() {
+        BookingFilter filter = BookingFilter.builder()
+                .status(BookingStatus.CONFIRMED)
+                .flightId(flightA.getId())
+                .userId(alice.getId())
+                .from(START.plusDays(10))
+                .to(START.plusDays(20))
+                .build();
+
+        List<Booking> bookings = page(filter, null, 100);
+
+        // days 10 to 19 on flight A (even days), for alice (not a multiple of 3), confirmed (i % 3 != 2)
+        assertEquals(List.of("PAGE16", "PAGE10"), bookings.stream().map(Booking::getBookingReference).toList());
+    }
+
+    @Test
+    void cursorContinuesBelowTheLastId() {
+        BookingFilter filter = BookingFilter.builder().userId(bob.getId()).build();
+
+        List<Booking> first = page(filter, null, 4);
+        List<Booking> second = page(filter, first.get(3).getId(), 4);
+
+        assertEquals(4, first.size());
+        assertEquals(4, second.size());
+        assertTrue(second.get(0).getId() < first.get(3).getId());
+        assertTrue(second.stream().allMatch(booking -> booking.getUser().getId().equals(bob.getId())));
+    }
+
+    private List<Booking> page(BookingFilter filter, Long cursor, int size) {
+        return bookingRepo.findBy(BookingSpecifications.matching(filter, cursor),
+                query -> query.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(size).all());
+    }
+
+    private Flight flight(String flightNumber) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(flightNumber);
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureTime(START.plusMonths(1));
+        flight.setArrivalTime(START.plusMonths(1).plusHours(2));
+        flight.setBasePrice(new BigDecimal("100.00"));
+        flight.setCapacity(100);
+        return flight;
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        return user;
+    }
+}
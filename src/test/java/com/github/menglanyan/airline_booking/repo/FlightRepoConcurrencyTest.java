@@ -0,0 +1,99 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every reservation has to commit on its own, like concurrent POST /api/bookings requests would
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FlightRepoConcurrencyTest {
+
+    @Autowired private FlightRepo flightRepo;
+
+    @Test
+    void reserveSeats_neverOversells_underConcurrentRequests() throws Exception {
+        Flight flight = flightRepo.save(flight("HOT001", 150));
+
+        int threads = 32;
+        int requests = 400;
+        AtomicInteger seatsGranted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < requests; i++) {
+            // mix of single travellers and small groups
+            int seats = i % 3 + 1;
+            futures.add(executor.submit(() -> {
+                start.await();
+                if (flightRepo.reserveSeats(flight.getId(), seats) == 1) {
+                    seatsGranted.addAndGet(seats);
+                } else {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int seatsSold = flightRepo.findById(flight.getId()).orElseThrow().getSeatsSold();
+        assertEquals(seatsGranted.get(), seatsSold);
+        assertTrue(seatsSold <= 150, "sold " + seatsSold + " seats on a 150 seat flight");
+        // demand is far above capacity, so the flight must end up (almost) full and later requests rejected
+        assertTrue(seatsSold > 150 - 3);
+        assertTrue(rejected.get() > 0);
+    }
+
+    @Test
+    void releaseSeats_makesSeatsAvailableAgain() {
+        Flight flight = flightRepo.save(flight("HOT002", 2));
+
+        assertEquals(1, flightRepo.reserveSeats(flight.getId(), 2));
+        assertEquals(0, flightRepo.reserveSeats(flight.getId(), 1));
+
+        assertEquals(1, flightRepo.releaseSeats(flight.getId(), 1));
+        assertEquals(1, flightRepo.reserveSeats(flight.getId(), 1));
+        assertEquals(2, flightRepo.findById(flight.getId()).orElseThrow().getSeatsSold());
+    }
+
+    @Test
+    void updateCapacity_rejectedBelowSeatsSold() {
+        Flight flight = flightRepo.save(flight("HOT003", 10));
+        flightRepo.reserveSeats(flight.getId(), 6);
+
+        assertEquals(0, flightRepo.updateCapacity(flight.getId(), 5));
+        assertEquals(1, flightRepo.updateCapacity(flight.getId(), 6));
+    }
+
+    private Flight flight(String flightNumber, int capacity) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(flightNumber);
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureTime(LocalDateTime.now().plusDays(1));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(1).plusHours(2));
+        flight.setBasePrice(new BigDecimal("100.00"));
+        flight.setCapacity(capacity);
+        return flight;
+    }
+}
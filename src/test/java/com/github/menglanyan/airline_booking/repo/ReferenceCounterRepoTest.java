@@ -0,0 +1,35 @@
+package com.github.menglanyan.airline_booking.repo;
+
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(BookingReferenceGenerator.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReferenceCounterRepoTest {
+
+    @Autowired private BookingReferenceGenerator generator;
+    @Autowired private ReferenceCounterRepo referenceCounterRepo;
+
+    @Test
+    void generator_allocatesBlocksFromTheCounterRow() {
+        Set<String> references = new HashSet<>();
+        for (int i = 0; i < 1500; i++) {
+            references.add(generator.nextReference());
+        }
+
+        assertEquals(1500, references.size());
+        // two blocks of 1000 taken so far
+        assertEquals(2000, referenceCounterRepo.findById("booking_reference").orElseThrow().getNextValue());
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.menglanyan.airline_booking.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryOnConflictAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FlakyService service;
+    private FlakyService proxy;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new FlakyService();
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(service);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new RetryOnConflictAspect(meterRegistry));
+        proxy = factory.getProxy();
+    }
+
+    @Test
+    void retries_untilConflictGoesAway() {
+        service.conflictsLeft.set(2);
+
+        assertEquals("done", proxy.update());
+        assertEquals(3, service.calls.get());
+        assertEquals(2.0, meterRegistry.get("service.retry.attempts")
+                .tag("method", "FlakyService.update").counter().count());
+    }
+
+    @Test
+    void givesUp_afterMaxAttempts() {
+        service.conflictsLeft.set(10);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> proxy.update());
+        assertEquals(3, service.calls.get());
+        assertEquals(1.0, meterRegistry.get("service.retry.exhausted")
+                .tag("method", "FlakyService.update").counter().count());
+    }
+
+    @Test
+    void doesNotRetry_otherFailures() {
+        assertThrows(IllegalStateException.class, () -> proxy.fail());
+        assertEquals(1, service.calls.get());
+        assertTrue(meterRegistry.find("service.retry.attempts").counters().isEmpty());
+    }
+
+    @Test
+    void isRetryable_recognisesLockAndSerializationFailures() {
+        assertTrue(RetryOnConflictAspect.isRetryable(new OptimisticLockException("stale")));
+        assertTrue(RetryOnConflictAspect.isRetryable(new CannotAcquireLockException("deadlock")));
+        assertTrue(RetryOnConflictAspect.isRetryable(
+                new RuntimeException(new SQLException("Deadlock found", "40001", 1213))));
+        assertFalse(RetryOnConflictAspect.isRetryable(new SQLException("Duplicate entry", "23000", 1062)));
+        assertFalse(RetryOnConflictAspect.isRetryable(new IllegalArgumentException()));
+    }
+
+    static class FlakyService {
+
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger conflictsLeft = new AtomicInteger();
+
+        @RetryOnConflict(initialBackoffMillis = 1, maxBackoffMillis = 2)
+        public String update() {
+            calls.incrementAndGet();
+            if (conflictsLeft.getAndDecrement() > 0) {
+                throw new ObjectOptimisticLockingFailureException(Object.class, 1L);
+            }
+            return "done";
+        }
+
+        @RetryOnConflict
+        public void fail() {
+            calls.incrementAndGet();
+            throw new IllegalStateException("not a conflict");
+        }
+    }
+}
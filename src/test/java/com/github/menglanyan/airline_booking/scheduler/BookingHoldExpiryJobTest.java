@@ -0,0 +1,134 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest
+@Import({BookingHoldExpiryJob.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+// Small batches, so the test also covers paging through several of them
+@TestPropertySource(properties = "bookingHoldExpiryBatchSize=2")
+class BookingHoldExpiryJobTest {
+
+    @Autowired private BookingHoldExpiryJob job;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private BookingRepo bookingRepo;
+    @Autowired private FlightRepo flightRepo;
+    @Autowired private MeterRegistry meterRegistry;
+
+    @MockitoBean private FlightSearchIndex flightSearchIndex;
+
+    @Test
+    void expireHolds_cancelsExpiredHolds_andReleasesTheirSeats() {
+        Flight flight = flightRepo.save(flight("HOLD001"));
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Booking> expired = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            expired.add(hold(flight, "EXPIRED" + i, now.minusMinutes(1), 2));
+        }
+        Booking open = hold(flight, "OPEN0001", now.plusMinutes(10), 3);
+        flightRepo.reserveSeats(flight.getId(), 5 * 2 + 3);
+
+        job.expireHolds();
+
+        for (Booking booking : expired) {
+            Booking reloaded = bookingRepo.findById(booking.getId()).orElseThrow();
+            assertEquals(BookingStatus.CANCELLED, reloaded.getStatus());
+            assertNull(reloaded.getHoldExpiresAt());
+            assertTrue(reloaded.getVersion() > booking.getVersion());
+        }
+        assertEquals(BookingStatus.PENDING, bookingRepo.findById(open.getId()).orElseThrow().getStatus());
+        assertEquals(3, flightRepo.findById(flight.getId()).orElseThrow().getSeatsSold());
+        verify(flightSearchIndex, times(3)).seatsChanged(eq(flight.getId()), intThat(seats -> seats < 0));
+
+        // nothing left to expire, running again must not release seats twice
+        job.expireHolds();
+        assertEquals(3, flightRepo.findById(flight.getId()).orElseThrow().getSeatsSold());
+    }
+
+    @Test
+    void holdsWhoseSeatsCantBeReleased_stayPending_withoutHoldingUpOtherFlights() {
+        Flight undercounted = flightRepo.save(flight("HOLD002"));
+        Flight flight = flightRepo.save(flight("HOLD003"));
+        LocalDateTime now = LocalDateTime.now();
+
+        // Holds 2 seats, but the flight only has 1 sold
+        Booking stuck = hold(undercounted, "STUCK001", now.minusMinutes(2), 2);
+        flightRepo.reserveSeats(undercounted.getId(), 1);
+        Booking expired = hold(flight, "EXPIRED9", now.minusMinutes(1), 2);
+        flightRepo.reserveSeats(flight.getId(), 2);
+
+        job.expireHolds();
+
+        assertEquals(BookingStatus.PENDING, bookingRepo.findById(stuck.getId()).orElseThrow().getStatus());
+        assertEquals(1, flightRepo.findById(undercounted.getId()).orElseThrow().getSeatsSold());
+        assertEquals(BookingStatus.CANCELLED, bookingRepo.findById(expired.getId()).orElseThrow().getStatus());
+        assertEquals(0, flightRepo.findById(flight.getId()).orElseThrow().getSeatsSold());
+        assertEquals(1.0, meterRegistry.get("booking.hold.release.failures").counter().count());
+        verify(flightSearchIndex, never()).seatsChanged(eq(undercounted.getId()), anyInt());
+
+        // Out of the way of the other tests
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                bookingRepo.updateStatusIfCurrent(stuck.getId(), BookingStatus.PENDING, BookingStatus.CANCELLED));
+    }
+
+    private Booking hold(Flight flight, String reference, LocalDateTime holdExpiresAt, int seats) {
+        Booking booking = new Booking();
+        booking.setBookingReference(reference);
+        booking.setFlight(flight);
+        booking.setBookingDate(LocalDateTime.now());
+        booking.setStatus(BookingStatus.PENDING);
+        booking.setHoldExpiresAt(holdExpiresAt);
+        for (int i = 0; i < seats; i++) {
+            Passenger passenger = new Passenger();
+            passenger.setFirstName("Passenger" + i);
+            passenger.setBooking(booking);
+            booking.getPassengers().add(passenger);
+        }
+        // passengers are cascaded from the booking
+        return bookingRepo.save(booking);
+    }
+
+    private Flight flight(String flightNumber) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(flightNumber);
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureTime(LocalDateTime.now().plusDays(1));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(1).plusHours(2));
+        flight.setBasePrice(new BigDecimal("100.00"));
+        flight.setCapacity(100);
+        return flight;
+    }
+}
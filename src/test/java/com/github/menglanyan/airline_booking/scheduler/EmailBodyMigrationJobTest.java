@@ -0,0 +1,59 @@
+package com.github.menglanyan.airline_booking.scheduler;
+
+import com.github.menglanyan.airline_booking.repo.EmailNotificationRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(EmailBodyMigrationJob.class)
+@TestPropertySource(properties = "emailBodyMigrationBatchSize=2")
+class EmailBodyMigrationJobTest {
+
+    @Autowired private EmailBodyMigrationJob emailBodyMigrationJob;
+    @Autowired private EmailNotificationRepo emailNotificationRepo;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setup() {
+        emailNotificationRepo.deleteAll();
+    }
+
+    @AfterEach
+    void dropLegacyColumn() {
+        jdbcTemplate.execute("ALTER TABLE email_notifications DROP COLUMN IF EXISTS body");
+    }
+
+    @Test
+    void bodiesStoredBeforeCompression_areMovedToTheCompressedColumn() {
+        // The table as it was before, with rows written back then
+        jdbcTemplate.execute("ALTER TABLE email_notifications ADD COLUMN body CLOB");
+        for (long id = 1; id <= 5; id++) {
+            jdbcTemplate.update("INSERT INTO email_notifications (id, subject, recipient_email, body, is_html) " +
+                    "VALUES (?, 'Welcome', 'alice@example.com', ?, TRUE)", id, "<p>Welcome number " + id + "</p>");
+        }
+
+        emailBodyMigrationJob.compressLegacyBodies();
+
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM email_notifications WHERE body IS NOT NULL", Integer.class));
+        for (long id = 1; id <= 5; id++) {
+            assertEquals("<p>Welcome number " + id + "</p>", emailNotificationRepo.findById(id).orElseThrow().getBody());
+        }
+    }
+
+    @Test
+    void doesNothing_whenTheTableNeverHadTheOldColumn() {
+        assertDoesNotThrow(() -> emailBodyMigrationJob.compressLegacyBodies());
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.menglanyan.airline_booking.search;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FlightSearchIndexTest {
+
+    private static final LocalDate TOMORROW = LocalDate.now().plusDays(1);
+
+    @Autowired private FlightRepo flightRepo;
+    @Autowired private AirportRepo airportRepo;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final AtomicInteger flightNumbers = new AtomicInteger();
+
+    private Airport departure;
+    private Airport arrival;
+    private FlightSearchIndex index;
+
+    @BeforeEach
+    void setup() {
+        executor.setCorePoolSize(2);
+        executor.initialize();
+
+        // Other tests' flights stay, only the ones on this test's route are removed
+        flightRepo.deleteAll(flightRepo.findAll().stream()
+                .filter(flight -> flight.getFlightNumber().startsWith("IDX"))
+                .toList());
+        departure = airportRepo.findByIataCode("QXA").orElseGet(() -> airportRepo.save(
+                new Airport(null, "Index Departure", City.MIAMI, Country.USA, "QXA")));
+        arrival = airportRepo.findByIataCode("QXB").orElseGet(() -> airportRepo.save(
+                new Airport(null, "Index Arrival", City.DALLAS, Country.USA, "QXB")));
+
+        index = new FlightSearchIndex(flightRepo, transactionManager, executor, meterRegistry, true, 2);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void searches_goToTheDatabase_untilTheIndexIsLoaded() {
+        flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+
+        assertTrue(index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).isEmpty());
+
+        index.refresh();
+
+        assertEquals(1, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().size());
+        // Past days and codes that can't be packed are left to the database
+        assertTrue(index.search("QXA", "QXB", FlightStatus.SCHEDULED, LocalDate.now().minusDays(1)).isEmpty());
+        assertTrue(index.search("QX1", "QXB", FlightStatus.SCHEDULED, TOMORROW).isEmpty());
+        assertEquals(3.0, meterRegistry.get("flight.search.index.lookups").tag("result", "fallback")
+                .counter().count());
+    }
+
+    @Test
+    void loadedIndex_answersByRouteDayAndStatus_sortedByDeparture_withoutQueries() {
+        List<Flight> flights = new ArrayList<>();
+        // Spread over many ids, so each of the 8 id ranges loads some of them
+        for (int i = 0; i < 40; i++) {
+            LocalDate day = TOMORROW.plusDays(i % 2);
+            FlightStatus status = i % 5 == 0 ? FlightStatus.CANCELLED : FlightStatus.SCHEDULED;
+            flights.add(flight(day.atTime(23 - i / 2, 0), status));
+        }
+        flights.add(flight(LocalDate.now().minusDays(1).atTime(9, 0), FlightStatus.SCHEDULED));
+        flightRepo.saveAll(flights);
+
+        index.refresh();
+        statistics().clear();
+
+        List<FlightSummary> scheduled = index.search("qxa", "qxb", FlightStatus.SCHEDULED, TOMORROW).orElseThrow();
+        List<FlightSummary> cancelled = index.search("QXA", "QXB", FlightStatus.CANCELLED, TOMORROW).orElseThrow();
+        List<FlightSummary> otherWay = index.search("QXB", "QXA", FlightStatus.SCHEDULED, TOMORROW).orElseThrow();
+
+        assertEquals(0, statistics().getPrepareStatementCount());
+        assertEquals(16, scheduled.size());
+        assertEquals(4, cancelled.size());
+        assertTrue(otherWay.isEmpty());
+        for (int i = 1; i < scheduled.size(); i++) {
+            assertTrue(scheduled.get(i - 1).departureTime().isBefore(scheduled.get(i).departureTime()));
+        }
+        assertEquals(TOMORROW, scheduled.get(0).departureTime().toLocalDate());
+        assertEquals("QXA", scheduled.get(0).departureAirportIataCode());
+    }
+
+    @Test
+    void savedFlights_moveInTheIndex_onceTheirTransactionCommits() {
+        index.refresh();
+        Flight flight = flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+        index.flightSaved(flight);
+
+        assertEquals(flight.getId(), index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW)
+                .orElseThrow().get(0).id());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Flight existing = flightRepo.findById(flight.getId()).orElseThrow();
+            existing.setDepartureTime(TOMORROW.plusDays(1).atTime(9, 0));
+            flightRepo.save(existing);
+            index.flightSaved(existing);
+
+            assertEquals(1, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().size());
+        });
+
+        assertTrue(index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().isEmpty());
+        assertEquals(1, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW.plusDays(1))
+                .orElseThrow().size());
+    }
+
+    @Test
+    void refresh_picksUpChangesMadeElsewhere_andCountsThem() {
+        Flight flight = flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+        index.refresh();
+
+        // A booking and a flight created on another instance, neither went through this index
+        flightRepo.reserveSeats(flight.getId(), 3);
+        flightRepo.save(flight(TOMORROW.atTime(12, 0), FlightStatus.SCHEDULED));
+        assertEquals(0, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0)
+                .seatsSold());
+
+        index.refresh();
+
+        List<FlightSummary> flights = index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow();
+        assertEquals(2, flights.size());
+        assertEquals(3, flights.get(0).seatsSold());
+        assertEquals(2.0, meterRegistry.get("flight.search.index.corrections").counter().count());
+    }
+
+    @Test
+    void refresh_afterTheFirstLoad_onlyReadsFlightsUpdatedSince() {
+        List<Flight> flights = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            flights.add(flight(TOMORROW.atTime(8 + i, 0), FlightStatus.SCHEDULED));
+        }
+        flightRepo.saveAll(flights);
+        // Every flight last changed well before the sync overlap
+        jdbcTemplate.update("UPDATE flights SET updated_at = ?", LocalDateTime.now().minusHours(1));
+        index.refresh();
+
+        flightRepo.reserveSeats(flights.get(4).getId(), 2);
+        statistics().clear();
+        index.refresh();
+
+        long rowsRead = Arrays.stream(statistics().getQueries())
+                .mapToLong(query -> statistics().getQueryStatistics(query).getExecutionRowCount())
+                .sum();
+        assertEquals(1, rowsRead);
+        assertEquals(2, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(4)
+                .seatsSold());
+        assertEquals(1.0, meterRegistry.get("flight.search.index.corrections").counter().count());
+    }
+
+    @Test
+    void seatsChanged_updatesTheIndex_onceTheirTransactionCommits() {
+        Flight flight = flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+        index.refresh();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            flightRepo.reserveSeats(flight.getId(), 3);
+            index.seatsChanged(flight.getId(), 3);
+
+            assertEquals(0, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0)
+                    .seatsSold());
+        });
+        assertEquals(3, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0)
+                .seatsSold());
+
+        // Rolled back, so the index keeps what was committed
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            flightRepo.releaseSeats(flight.getId(), 1);
+            index.seatsChanged(flight.getId(), -1);
+            status.setRollbackOnly();
+        });
+        assertEquals(3, index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0)
+                .seatsSold());
+    }
+
+    @Test
+    void savedFlights_keepTheSeatsSold_byBookingsWhileTheyWereChanged() {
+        Flight flight = flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+        index.refresh();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Flight existing = flightRepo.findById(flight.getId()).orElseThrow();
+
+            // A booking commits after the flight was read, before the change to it commits
+            TransactionTemplate booking = new TransactionTemplate(transactionManager);
+            booking.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            booking.executeWithoutResult(bookingStatus -> {
+                flightRepo.reserveSeats(flight.getId(), 3);
+                index.seatsChanged(flight.getId(), 3);
+            });
+
+            existing.setArrivalTime(existing.getArrivalTime().plusMinutes(30));
+            flightRepo.save(existing);
+            index.flightSaved(existing);
+        });
+
+        FlightSummary indexed = index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0);
+        assertEquals(3, indexed.seatsSold());
+        assertEquals(TOMORROW.atTime(12, 30), indexed.arrivalTime());
+    }
+
+    @Test
+    void airportCodesChanged_movesTheirFlightsToTheNewCode() {
+        flightRepo.save(flight(TOMORROW.atTime(9, 0), FlightStatus.SCHEDULED));
+        index.refresh();
+
+        index.onAirportCodesChanged(new ReferenceDataCache.AirportCodesChanged(Map.of("QXB", "QXC")));
+
+        assertTrue(index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().isEmpty());
+        FlightSummary moved = index.search("QXA", "QXC", FlightStatus.SCHEDULED, TOMORROW).orElseThrow().get(0);
+        assertEquals("QXA", moved.departureAirportIataCode());
+        assertEquals("QXC", moved.arrivalAirportIataCode());
+    }
+
+    @Test
+    void summariesOfSavedFlights_equalTheOnesLoaded() {
+        Flight flight = flight(TOMORROW.atTime(9, 0, 0, 123_456_789), FlightStatus.SCHEDULED);
+        flight.setBasePrice(new BigDecimal("99.5"));
+        flight = flightRepo.save(flight);
+        index.flightSaved(flight);
+
+        index.refresh();
+
+        assertEquals(FlightSummary.of(flight), index.search("QXA", "QXB", FlightStatus.SCHEDULED, TOMORROW)
+                .orElseThrow().get(0));
+    }
+
+    private Flight flight(LocalDateTime departureTime, FlightStatus status) {
+        Flight flight = new Flight();
+        flight.setFlightNumber("IDX" + flightNumbers.incrementAndGet());
+        flight.setStatus(status);
+        flight.setDepartureAirport(departure);
+        flight.setArrivalAirport(arrival);
+        flight.setDepartureTime(departureTime);
+        flight.setArrivalTime(departureTime.plusHours(3));
+        flight.setBasePrice(new BigDecimal("120.00"));
+        flight.setCapacity(180);
+        return flight;
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
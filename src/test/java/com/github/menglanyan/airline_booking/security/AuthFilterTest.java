@@ -0,0 +1,152 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.exceptions.CustomAuthenticationEntryPoint;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AuthFilterTest {
+
+    private static final String SECRET = "test-secret-key-that-is-at-least-32-chars-long";
+
+    private final JwtUtils jwtUtils = new JwtUtils(SECRET, 100);
+    private final UserRepo userRepo = mock(UserRepo.class);
+    private final CustomUserDetailsService customUserDetailsService = mock(CustomUserDetailsService.class);
+    private final TokenRevocations tokenRevocations = new TokenRevocations(userRepo);
+    private final AuthFilter authFilter = new AuthFilter(jwtUtils, customUserDetailsService, tokenRevocations,
+            new CustomAuthenticationEntryPoint(new ObjectMapper()));
+
+    // Loaded at startup like in the application
+    @BeforeEach
+    void loadRevocations() {
+        tokenRevocations.onApplicationReady();
+        clearInvocations(userRepo);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void tokensWithRoles_authenticateWithoutLoadingTheUser() throws Exception {
+        MockHttpServletResponse response = filter(jwtUtils.generateToken(user(0, "PILOT")));
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertEquals(200, response.getStatus());
+        assertEquals(new TokenUser(42L, "alice@example.com", List.of("PILOT")), authentication.getPrincipal());
+        assertEquals("alice@example.com", authentication.getName());
+        assertEquals(List.of("PILOT"), authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+        verifyNoInteractions(customUserDetailsService, userRepo);
+    }
+
+    @Test
+    void tokensOlderThanARevocation_areRejected_newerOnesAreNot() throws Exception {
+        String oldToken = jwtUtils.generateToken(user(0, "ADMIN"));
+        String newToken = jwtUtils.generateToken(user(1, "CUSTOMER"));
+        tokenRevocations.revoked(42L, 1);
+
+        MockHttpServletResponse response = filter(oldToken);
+        assertEquals(401, response.getStatus());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+
+        assertEquals(200, filter(newToken).getStatus());
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void revocationsFromOtherInstances_applyAfterTheNextRefresh() throws Exception {
+        String token = jwtUtils.generateToken(user(0, "ADMIN"));
+        assertEquals(200, filter(token).getStatus());
+
+        when(userRepo.findByTokensRevokedAtGreaterThanEqual(any())).thenReturn(List.of(tokenVersion(42L, 1)));
+        tokenRevocations.refresh();
+
+        assertEquals(401, filter(token).getStatus());
+    }
+
+    @Test
+    void tokensWithOnlyAnEmail_areCheckedAgainstTheUser() throws Exception {
+        String token = Jwts.builder()
+                .subject("alice@example.com")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"))
+                .compact();
+        User user = user(0, "CUSTOMER");
+        when(customUserDetailsService.loadUserByUsername("alice@example.com"))
+                .thenReturn(AuthUser.builder().user(user).build());
+
+        filter(token);
+        assertInstanceOf(AuthUser.class, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+
+        SecurityContextHolder.clearContext();
+        user.setActive(false);
+
+        filter(token);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private MockHttpServletResponse filter(String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/bookings/me");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authFilter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static User user(int tokenVersion, String roleName) {
+        Role role = new Role();
+        role.setName(roleName);
+
+        User user = new User();
+        user.setId(42L);
+        user.setEmail("alice@example.com");
+        user.setRoles(List.of(role));
+        user.setActive(true);
+        user.setTokenVersion(tokenVersion);
+        return user;
+    }
+
+    private static UserRepo.TokenVersion tokenVersion(Long id, int version) {
+        return new UserRepo.TokenVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public int getTokenVersion() {
+                return version;
+            }
+
+            @Override
+            public LocalDateTime getTokensRevokedAt() {
+                return LocalDateTime.now();
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
+import com.github.menglanyan.airline_booking.repo.CacheFlushMarkerRepo;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import com.github.menglanyan.airline_booking.utils.CacheFlushMarkers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// Two services on one database stand in for two app instances
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomUserDetailsServiceTest {
+
+    private static final String EMAIL = "alice@example.com";
+
+    @Autowired private CacheFlushMarkerRepo cacheFlushMarkerRepo;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private final UserRepo userRepo = mock(UserRepo.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CustomUserDetailsService instanceA;
+    private CustomUserDetailsService instanceB;
+
+    @BeforeEach
+    void setup() {
+        cacheFlushMarkerRepo.deleteAll();
+        when(userRepo.findByEmail(EMAIL)).thenAnswer(inv -> Optional.of(user("Alice")));
+
+        instanceA = service(meterRegistry);
+        instanceB = service(new SimpleMeterRegistry());
+        instanceA.checkFlushMarker();
+        instanceB.checkFlushMarker();
+    }
+
+    @Test
+    void loadsEachPrincipalOnce_andCountsHitsAndMisses() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(EMAIL, instanceA.loadUserByUsername(EMAIL).getUsername());
+        }
+
+        verify(userRepo, times(1)).findByEmail(EMAIL);
+        assertEquals(4.0, meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void unknownUsers_areNotCached() {
+        when(userRepo.findByEmail("nobody@example.com")).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> instanceA.loadUserByUsername("nobody@example.com"));
+        assertThrows(NotFoundException.class, () -> instanceA.loadUserByUsername("nobody@example.com"));
+
+        verify(userRepo, times(2)).findByEmail("nobody@example.com");
+    }
+
+    @Test
+    void evictionInsideATransaction_happensOnceItCommits() {
+        instanceA.loadUserByUsername(EMAIL);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            instanceA.evict(EMAIL);
+            // Still the old row until the change is committed
+            instanceA.loadUserByUsername(EMAIL);
+            verify(userRepo, times(1)).findByEmail(EMAIL);
+        });
+
+        instanceA.loadUserByUsername(EMAIL);
+        verify(userRepo, times(2)).findByEmail(EMAIL);
+    }
+
+    @Test
+    void flushEverywhere_reachesOtherInstances_onTheirNextCheck() {
+        instanceA.loadUserByUsername(EMAIL);
+        instanceB.loadUserByUsername(EMAIL);
+        when(userRepo.findByEmail(EMAIL)).thenAnswer(inv -> Optional.of(user("Alice Smith")));
+
+        instanceA.flushEverywhere();
+        instanceA.flushEverywhere();
+
+        assertEquals("Alice Smith", ((AuthUser) instanceA.loadUserByUsername(EMAIL)).getUser().getName());
+        assertEquals("Alice", ((AuthUser) instanceB.loadUserByUsername(EMAIL)).getUser().getName());
+
+        instanceB.checkFlushMarker();
+
+        assertEquals("Alice Smith", ((AuthUser) instanceB.loadUserByUsername(EMAIL)).getUser().getName());
+        assertEquals(2L, cacheFlushMarkerRepo.findGeneration(CustomUserDetailsService.CACHE_NAME).orElseThrow());
+    }
+
+    private CustomUserDetailsService service(SimpleMeterRegistry registry) {
+        return new CustomUserDetailsService(userRepo, new CacheFlushMarkers(cacheFlushMarkerRepo, transactionManager),
+                registry, 60, 100);
+    }
+
+    private static User user(String name) {
+        Role customer = new Role();
+        customer.setName("CUSTOMER");
+
+        User user = new User();
+        user.setName(name);
+        user.setEmail(EMAIL);
+        user.setRoles(List.of(customer));
+        user.setActive(true);
+        return user;
+    }
+}
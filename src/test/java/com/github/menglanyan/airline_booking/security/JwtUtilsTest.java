@@ -0,0 +1,107 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilsTest {
+
+    private static final String SECRET = "test-secret-key-that-is-at-least-32-chars-long";
+
+    private final JwtUtils jwtUtils = new JwtUtils(SECRET, 100);
+
+    @Test
+    void parseToken_returnsTheClaims_onFirstAndRepeatedCalls() {
+        String token = jwtUtils.generateToken(user("alice@example.com"));
+
+        assertEquals("alice@example.com", jwtUtils.parseToken(token).getSubject());
+        assertEquals("alice@example.com", jwtUtils.parseToken(token).getSubject());
+    }
+
+    @Test
+    void tokens_carryUserIdRolesAndVersion() {
+        User user = user("alice@example.com");
+        user.setTokenVersion(3);
+
+        Claims claims = jwtUtils.parseToken(jwtUtils.generateToken(user));
+
+        assertEquals(new TokenUser(42L, "alice@example.com", List.of("CUSTOMER", "PILOT")),
+                jwtUtils.getTokenUser(claims));
+        assertEquals(3, jwtUtils.getTokenVersion(claims));
+    }
+
+    @Test
+    void tokensWithOnlyAnEmail_haveNoTokenUser() {
+        Claims claims = jwtUtils.parseToken(Jwts.builder()
+                .subject("alice@example.com")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(key())
+                .compact());
+
+        assertNull(jwtUtils.getTokenUser(claims));
+        assertEquals(0, jwtUtils.getTokenVersion(claims));
+    }
+
+    @Test
+    void tamperedTokens_areRejected_evenAfterTheOriginalWasVerified() {
+        String token = jwtUtils.generateToken(user("alice@example.com"));
+        jwtUtils.parseToken(token);
+
+        String[] parts = token.split("\\.");
+        String otherPayload = jwtUtils.generateToken(user("mallory@example.com")).split("\\.")[1];
+
+        assertThrows(JwtException.class, () -> jwtUtils.parseToken(parts[0] + "." + otherPayload + "." + parts[2]));
+    }
+
+    @Test
+    void tokensSignedWithAnotherKey_areRejected() {
+        String token = new JwtUtils("another-secret-key-that-is-at-least-32-chars", 100)
+                .generateToken(user("alice@example.com"));
+
+        assertThrows(JwtException.class, () -> jwtUtils.parseToken(token));
+    }
+
+    @Test
+    void cachedTokens_stillExpire() throws Exception {
+        String token = Jwts.builder()
+                .subject("alice@example.com")
+                .expiration(new Date(System.currentTimeMillis() + 1000))
+                .signWith(key())
+                .compact();
+        jwtUtils.parseToken(token);
+
+        Thread.sleep(1100);
+
+        assertThrows(ExpiredJwtException.class, () -> jwtUtils.parseToken(token));
+        assertThrows(ExpiredJwtException.class, () -> jwtUtils.parseToken(token));
+    }
+
+    private static SecretKey key() {
+        return new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    private static User user(String email) {
+        Role customer = new Role();
+        customer.setName("CUSTOMER");
+        Role pilot = new Role();
+        pilot.setName("PILOT");
+
+        User user = new User();
+        user.setId(42L);
+        user.setEmail(email);
+        user.setRoles(List.of(customer, pilot));
+        return user;
+    }
+}
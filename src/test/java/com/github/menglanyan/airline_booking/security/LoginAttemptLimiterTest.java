@@ -0,0 +1,76 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginAttemptLimiterTest {
+
+    private static final long WINDOW_MILLIS = 60_000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Starts at a window boundary
+    private final AtomicLong now = new AtomicLong(100 * WINDOW_MILLIS);
+    private final LoginAttemptLimiter limiter = new LoginAttemptLimiter(meterRegistry,
+            Duration.ofMillis(WINDOW_MILLIS), 5, 3, 1000, now::get);
+
+    @Test
+    void ipIsLimited_onlyOnItsFailures() {
+        // Many users signing in fine from behind the same address
+        for (int i = 0; i < 20; i++) {
+            limiter.checkAttempt("user" + i + "@example.com", "203.0.113.7");
+        }
+
+        for (int i = 0; i < 5; i++) {
+            limiter.recordFailure("user" + i + "@example.com", "203.0.113.7");
+        }
+
+        assertThrows(TooManyRequestsException.class,
+                () -> limiter.checkAttempt("other@example.com", "203.0.113.7"));
+        assertDoesNotThrow(() -> limiter.checkAttempt("other@example.com", "198.51.100.1"));
+        assertEquals(1.0, meterRegistry.get("auth.login.rejected").tag("limit", "ip").counter().count());
+    }
+
+    @Test
+    void accountIsLimited_onlyOnItsFailures_fromAnyIp() {
+        for (int i = 0; i < 3; i++) {
+            limiter.checkAttempt("alice@example.com", "198.51.100." + i);
+            limiter.checkAttempt("alice@example.com", "198.51.100." + i);
+        }
+        assertDoesNotThrow(() -> limiter.checkAttempt("alice@example.com", "198.51.100.9"));
+
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("Alice@example.com", "198.51.100." + i);
+        }
+
+        assertThrows(TooManyRequestsException.class,
+                () -> limiter.checkAttempt("alice@example.com", "198.51.100.10"));
+        assertEquals(1.0, meterRegistry.get("auth.login.rejected").tag("limit", "account").counter().count());
+    }
+
+    @Test
+    void olderFailures_countLessAsTheWindowSlides() {
+        for (int i = 0; i < 5; i++) {
+            limiter.recordFailure(null, "203.0.113.7");
+        }
+
+        // Half way into the next window half of the previous window's failures still count, 2.5 of 5
+        now.addAndGet(WINDOW_MILLIS + WINDOW_MILLIS / 2);
+        for (int i = 0; i < 2; i++) {
+            limiter.checkAttempt(null, "203.0.113.7");
+            limiter.recordFailure(null, "203.0.113.7");
+        }
+        assertDoesNotThrow(() -> limiter.checkAttempt(null, "203.0.113.7"));
+        limiter.recordFailure(null, "203.0.113.7");
+        assertThrows(TooManyRequestsException.class, () -> limiter.checkAttempt(null, "203.0.113.7"));
+
+        // A whole window later nothing from before counts
+        now.addAndGet(2 * WINDOW_MILLIS);
+        assertDoesNotThrow(() -> limiter.checkAttempt(null, "203.0.113.7"));
+    }
+}
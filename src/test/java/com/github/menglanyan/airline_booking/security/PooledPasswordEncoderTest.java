@@ -0,0 +1,93 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.exceptions.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledPasswordEncoderTest {
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void hashesAndVerifies_onThePool() {
+        PooledPasswordEncoder encoder = encoder(new BCryptPasswordEncoder(4), 1, Duration.ofSeconds(5));
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(encoder.matches("secret", hash));
+        assertFalse(encoder.matches("wrong", hash));
+    }
+
+    @Test
+    void turnsCallersAway_whenThePoolAndItsQueueAreFull() throws Exception {
+        CountDownLatch hashing = new CountDownLatch(1);
+        PooledPasswordEncoder encoder = encoder(blockingEncoder(hashing), 1, Duration.ofSeconds(5));
+
+        Thread.ofPlatform().start(() -> encoder.encode("first"));
+        assertTrue(hashing.await(5, TimeUnit.SECONDS));
+        Thread.ofPlatform().start(() -> encoder.encode("queued"));
+        waitForQueued(1);
+
+        assertThrows(TooManyRequestsException.class, () -> encoder.encode("third"));
+    }
+
+    @Test
+    void givesUp_whenTheHashIsNotDoneInTime() {
+        PooledPasswordEncoder encoder = encoder(blockingEncoder(new CountDownLatch(1)), 1, Duration.ofMillis(50));
+
+        assertThrows(TooManyRequestsException.class, () -> encoder.matches("secret", "hash"));
+    }
+
+    private PooledPasswordEncoder encoder(PasswordEncoder delegate, int queueCapacity, Duration timeout) {
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.initialize();
+        return new PooledPasswordEncoder(delegate, executor, timeout);
+    }
+
+    // Hashes only once the test is done, stands in for a slow BCrypt
+    private PasswordEncoder blockingEncoder(CountDownLatch hashing) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                hashing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "hash";
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encode(rawPassword).equals(encodedPassword);
+            }
+        };
+    }
+
+    private void waitForQueued(int tasks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getQueueSize() < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(tasks, executor.getQueueSize());
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.menglanyan.airline_booking.security;
+
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TokenRevocationsTest {
+
+    private final UserRepo userRepo = mock(UserRepo.class);
+
+    private final MutableClock clock = new MutableClock();
+
+    private final TokenRevocations tokenRevocations = new TokenRevocations(userRepo, clock);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void revocationInsideATransaction_appliesOnlyOnceItCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        tokenRevocations.revoked(42L, 2);
+        assertFalse(tokenRevocations.isRevoked(42L, 1));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertTrue(tokenRevocations.isRevoked(42L, 1));
+        assertFalse(tokenRevocations.isRevoked(42L, 2));
+    }
+
+    @Test
+    void rolledBackRevocation_rejectsNothing() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        tokenRevocations.revoked(42L, 2);
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertFalse(tokenRevocations.isRevoked(42L, 1));
+    }
+
+    @Test
+    void tokens_areRejected_untilTheRevocationsCouldBeLoaded() {
+        when(userRepo.findByTokensRevokedAtGreaterThanEqual(any()))
+                .thenThrow(new DataAccessResourceFailureException("Database down"))
+                .thenReturn(List.of());
+
+        assertTrue(tokenRevocations.isRevoked(42L, 1));
+        assertFalse(tokenRevocations.isRevoked(42L, 1));
+    }
+
+    @Test
+    void refresh_dropsRevocations_olderThanAnyTokenStillValid() {
+        when(userRepo.findByTokensRevokedAtGreaterThanEqual(any())).thenReturn(List.of(
+                revoked(1L, LocalDateTime.now().minus(JwtUtils.EXPIRATION_TIME).plusDays(1)),
+                revoked(2L, LocalDateTime.now().minusDays(1))));
+        tokenRevocations.refresh();
+        assertTrue(tokenRevocations.isRevoked(1L, 1));
+        assertTrue(tokenRevocations.isRevoked(2L, 1));
+
+        when(userRepo.findByTokensRevokedAtGreaterThanEqual(any())).thenReturn(List.of());
+        tokenRevocations.refresh();
+        assertTrue(tokenRevocations.isRevoked(1L, 1));
+
+        // Two days later user 1's revocation is older than any token still valid
+        clock.advance(Duration.ofDays(2));
+        tokenRevocations.refresh();
+        assertFalse(tokenRevocations.isRevoked(1L, 1));
+        assertTrue(tokenRevocations.isRevoked(2L, 1));
+    }
+
+    private static UserRepo.TokenVersion revoked(Long userId, LocalDateTime revokedAt) {
+        return new UserRepo.TokenVersion() {
+            @Override
+            public Long getId() {
+                return userId;
+            }
+
+            @Override
+            public int getTokenVersion() {
+                return 2;
+            }
+
+            @Override
+            public LocalDateTime getTokensRevokedAt() {
+                return revokedAt;
+            }
+        };
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
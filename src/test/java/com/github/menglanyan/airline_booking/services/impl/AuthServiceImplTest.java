@@ -9,9 +9,11 @@ import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.AuthMethod;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
-import com.github.menglanyan.airline_booking.repo.RoleRepo;
+import com.github.menglanyan.airline_booking.exceptions.TooManyRequestsException;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
 import com.github.menglanyan.airline_booking.security.JwtUtils;
+import com.github.menglanyan.airline_booking.security.LoginAttemptLimiter;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -34,10 +36,11 @@ import static org.mockito.Mockito.*;
 class AuthServiceImplTest {
 
     @Mock private UserRepo userRepo;
-    @Mock private RoleRepo roleRepo;
+    @Mock private ReferenceDataCache referenceDataCache;
     @Mock private PasswordEncoder passwordEncoder;
     @Mock private JwtUtils jwtUtils;
     @Mock private EmailNotificationServiceImpl emailNotificationService;
+    @Mock private LoginAttemptLimiter loginAttemptLimiter;
 
     @InjectMocks AuthServiceImpl authService;
 
@@ -60,14 +63,14 @@ class AuthServiceImplTest {
         Role pilot = new Role();
         pilot.setName("PILOT");
 
-        when(roleRepo.findByName("CUSTOMER")).thenReturn(Optional.of(customer));
-        when(roleRepo.findByName("ADMIN")).thenReturn(Optional.of(admin));
-        when(roleRepo.findByName("PILOT")).thenReturn(Optional.of(pilot));
+        when(referenceDataCache.findRole("CUSTOMER")).thenReturn(Optional.of(customer));
+        when(referenceDataCache.findRole("ADMIN")).thenReturn(Optional.of(admin));
+        when(referenceDataCache.findRole("PILOT")).thenReturn(Optional.of(pilot));
 
         when(passwordEncoder.encode("password")).thenReturn("ENC");
         when(userRepo.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
 
-        Response<?> resp = authService.register(req);
+        Response<?> resp = authService.register(req, "203.0.113.7");
 
         assertEquals(HttpStatus.OK.value(), resp.getStatusCode());
         ArgumentCaptor<User> captor = ArgumentCaptor.forClass(User.class);
@@ -84,7 +87,7 @@ class AuthServiceImplTest {
         saved.getRoles().forEach(r -> roleNames.add(r.getName()));
         assertTrue(roleNames.containsAll(List.of("CUSTOMER","ADMIN","PILOT")));
 
-        verify(emailNotificationService).sendWelcomeEmail(saved);
+        verify(emailNotificationService).queueWelcomeEmail(saved);
     }
 
     @Test
@@ -94,8 +97,9 @@ class AuthServiceImplTest {
 
         when(userRepo.existsByEmail("dup@example.com")).thenReturn(true);
 
-        assertThrows(BadRequestException.class, () -> authService.register(req));
-        verifyNoMoreInteractions(roleRepo, passwordEncoder, userRepo);
+        assertThrows(BadRequestException.class, () -> authService.register(req, "203.0.113.7"));
+        verifyNoMoreInteractions(referenceDataCache, passwordEncoder, userRepo);
+        verify(loginAttemptLimiter).recordFailure(null, "203.0.113.7");
     }
 
     @Test
@@ -115,9 +119,9 @@ class AuthServiceImplTest {
 
         when(userRepo.findByEmail("a@example.com")).thenReturn(Optional.of(u));
         when(passwordEncoder.matches("raw", "ENC")).thenReturn(true);
-        when(jwtUtils.generateToken("a@example.com")).thenReturn("JWT");
+        when(jwtUtils.generateToken(u)).thenReturn("JWT");
 
-        Response<LoginResponse> resp = authService.login(req);
+        Response<LoginResponse> resp = authService.login(req, "203.0.113.7");
 
         assertEquals(HttpStatus.OK.value(), resp.getStatusCode());
         assertEquals("Login Successful", resp.getMessage());
@@ -138,7 +142,8 @@ class AuthServiceImplTest {
 
         when(userRepo.findByEmail("a@example.com")).thenReturn(Optional.of(u));
 
-        assertThrows(NotFoundException.class, () -> authService.login(req));
+        assertThrows(NotFoundException.class, () -> authService.login(req, "203.0.113.7"));
+        verify(loginAttemptLimiter).recordFailure("a@example.com", "203.0.113.7");
     }
 
     @Test
@@ -155,6 +160,20 @@ class AuthServiceImplTest {
         when(userRepo.findByEmail("a@example.com")).thenReturn(Optional.of(u));
         when(passwordEncoder.matches("raw", "ENC")).thenReturn(false);
 
-        assertThrows(BadRequestException.class, () -> authService.login(req));
+        assertThrows(BadRequestException.class, () -> authService.login(req, "203.0.113.7"));
+        verify(loginAttemptLimiter).recordFailure("a@example.com", "203.0.113.7");
+    }
+
+    @Test
+    void login_rejectedByTheLimiter_neverHashes() {
+        LoginRequest req = new LoginRequest();
+        req.setEmail("a@example.com");
+        req.setPassword("raw");
+
+        doThrow(new TooManyRequestsException("Too many sign-in attempts"))
+                .when(loginAttemptLimiter).checkAttempt("a@example.com", "203.0.113.7");
+
+        assertThrows(TooManyRequestsException.class, () -> authService.login(req, "203.0.113.7"));
+        verifyNoInteractions(userRepo, passwordEncoder);
     }
 }
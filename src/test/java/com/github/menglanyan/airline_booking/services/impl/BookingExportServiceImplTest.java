@@ -0,0 +1,152 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.ExportFormat;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BookingExportServiceImplTest {
+
+    private static final LocalDateTime BOOKED_AT = LocalDateTime.of(2030, 1, 1, 9, 30);
+
+    @Autowired private EntityManager entityManager;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private BookingRepo bookingRepo;
+    @Autowired private FlightRepo flightRepo;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private BookingExportServiceImpl service;
+    private Flight flight;
+
+    @BeforeEach
+    void setup() {
+        service = new BookingExportServiceImpl(entityManager, objectMapper, transactionManager);
+        // small fetch size, so the scroll goes back to the database several times
+        ReflectionTestUtils.setField(service, "fetchSize", 3);
+        flight = flightRepo.save(flight());
+    }
+
+    @Test
+    void ndjson_writesOneLinePerBooking_withItsPassengers() throws Exception {
+        booking("EXPORT01", BookingStatus.CONFIRMED, passenger("Alice", "1A"), passenger("Bob", "1B"));
+        booking("EXPORT02", BookingStatus.CANCELLED);
+        booking("EXPORT03", BookingStatus.CONFIRMED, passenger("Carol", "2C"));
+
+        String[] lines = export(new BookingFilter(), ExportFormat.NDJSON).split("\n");
+
+        assertEquals(3, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("EXPORT01", first.get("bookingReference").asText());
+        assertEquals("CONFIRMED", first.get("status").asText());
+        assertEquals("HOT001", first.get("flightNumber").asText());
+        assertEquals(BOOKED_AT.toString(), first.get("bookingDate").asText());
+        assertEquals(2, first.get("passengers").size());
+        assertEquals("1B", first.get("passengers").get(1).get("seatNumber").asText());
+        assertEquals(0, objectMapper.readTree(lines[1]).get("passengers").size());
+        assertEquals("Carol", objectMapper.readTree(lines[2]).get("passengers").get(0).get("firstName").asText());
+    }
+
+    @Test
+    void csv_writesOneLinePerPassenger_andEscapesFields() {
+        booking("EXPORT01", BookingStatus.CONFIRMED, passenger("Alice", "1A"), passenger("Bob \"Bobby\", Jr", "1B"));
+        booking("EXPORT02", BookingStatus.CANCELLED);
+
+        String[] lines = export(new BookingFilter(), ExportFormat.CSV).split("\r\n");
+
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("booking_id,booking_reference,status"));
+        assertTrue(lines[1].contains(",EXPORT01,CONFIRMED,") && lines[1].contains(",Alice,"));
+        assertTrue(lines[2].contains(",\"Bob \"\"Bobby\"\", Jr\","));
+        assertTrue(lines[3].endsWith(",EXPORT02,CANCELLED," + BOOKED_AT + ",HOT001,,,,,,"));
+    }
+
+    @Test
+    void appliesFilters() {
+        booking("EXPORT01", BookingStatus.CONFIRMED, passenger("Alice", "1A"));
+        booking("EXPORT02", BookingStatus.CANCELLED, passenger("Bob", "1B"));
+
+        String ndjson = export(BookingFilter.builder().status(BookingStatus.CANCELLED).build(), ExportFormat.NDJSON);
+
+        assertEquals(1, ndjson.split("\n").length);
+        assertTrue(ndjson.contains("EXPORT02"));
+    }
+
+    @Test
+    void export_doesNotLoadEntities() {
+        for (int i = 0; i < 50; i++) {
+            booking("BULK" + i, BookingStatus.CONFIRMED, passenger("A" + i, "1A"), passenger("B" + i, "1B"));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        String ndjson = export(new BookingFilter(), ExportFormat.NDJSON);
+
+        assertEquals(50, ndjson.split("\n").length);
+        // rows are scalars, the persistence context doesn't grow with the export
+        assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+    }
+
+    private String export(BookingFilter filter, ExportFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportBookings(filter, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private void booking(String reference, BookingStatus status, Passenger... passengers) {
+        Booking booking = new Booking();
+        booking.setBookingReference(reference);
+        booking.setFlight(flight);
+        booking.setStatus(status);
+        booking.setBookingDate(BOOKED_AT);
+        for (Passenger passenger : List.of(passengers)) {
+            passenger.setBooking(booking);
+            booking.getPassengers().add(passenger);
+        }
+        bookingRepo.save(booking);
+    }
+
+    private static Passenger passenger(String firstName, String seatNumber) {
+        Passenger passenger = new Passenger();
+        passenger.setFirstName(firstName);
+        passenger.setLastName("Traveller");
+        passenger.setType(PassengerType.ADULT);
+        passenger.setSeatNumber(seatNumber);
+        return passenger;
+    }
+
+    private static Flight flight() {
+        Flight flight = new Flight();
+        flight.setFlightNumber("HOT001");
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureTime(BOOKED_AT.plusDays(30));
+        flight.setArrivalTime(BOOKED_AT.plusDays(30).plusHours(2));
+        flight.setBasePrice(new BigDecimal("100.00"));
+        flight.setCapacity(200);
+        return flight;
+    }
+}
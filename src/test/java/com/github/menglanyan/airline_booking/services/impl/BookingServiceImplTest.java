@@ -1,31 +1,46 @@
 package com.github.menglanyan.airline_booking.services.impl;
 
+import com.github.menglanyan.airline_booking.dtos.BatchBookingResult;
 import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.CreateBatchBookingRequest;
 import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
 import com.github.menglanyan.airline_booking.dtos.PassengerDTO;
 import com.github.menglanyan.airline_booking.dtos.Response;
 import com.github.menglanyan.airline_booking.entities.Booking;
 import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
 import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.BookingStatus;
 import com.github.menglanyan.airline_booking.enums.FlightStatus;
 import com.github.menglanyan.airline_booking.enums.PassengerType;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
+import com.github.menglanyan.airline_booking.mappers.AirportMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.BookingMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.FlightMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.UserMapperImpl;
 import com.github.menglanyan.airline_booking.repo.BookingRepo;
 import com.github.menglanyan.airline_booking.repo.FlightRepo;
 import com.github.menglanyan.airline_booking.repo.PassengerRepo;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
 import com.github.menglanyan.airline_booking.services.EmailNotificationService;
 import com.github.menglanyan.airline_booking.services.UserService;
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -38,28 +53,35 @@ class BookingServiceImplTest {
     @Mock private FlightRepo flightRepo;
     @Mock private PassengerRepo passengerRepo;
     @Mock private EmailNotificationService emailService;
+    @Mock private FlightSearchIndex flightSearchIndex;
 
-    // use real mapper for simplicity
-    private ModelMapper modelMapper;
     private BookingServiceImpl service;
 
     @BeforeEach
     void setup() {
-        modelMapper = new ModelMapper();
-        service = new BookingServiceImpl(bookingRepo, userService, flightRepo, passengerRepo, modelMapper, emailService);
+        // real mappers, they are plain generated code
+        UserMapperImpl userMapper = new UserMapperImpl();
+        PassengerMapperImpl passengerMapper = new PassengerMapperImpl();
+        FlightMapperImpl flightMapper = new FlightMapperImpl(new AirportMapperImpl(), userMapper, passengerMapper);
+        BookingMapperImpl bookingMapper = new BookingMapperImpl(flightMapper, userMapper, passengerMapper);
+        AtomicLong counter = new AtomicLong();
+        BookingReferenceGenerator referenceGenerator = new BookingReferenceGenerator(counter::getAndAdd);
+        service = new BookingServiceImpl(bookingRepo, userService, flightRepo, passengerRepo, bookingMapper,
+                passengerMapper, emailService, referenceGenerator, flightSearchIndex);
     }
 
     @Test
     void createBooking_success_withPassengers() {
         User user = new User();
         user.setId(1L);
-        when(userService.currentUser()).thenReturn(user);
+        when(userService.currentUserReference()).thenReturn(user);
 
         Flight flight = new Flight(); flight.setId(10L); flight.setStatus(FlightStatus.SCHEDULED);
         when(flightRepo.findById(10L)).thenReturn(Optional.of(flight));
 
         Booking saved = new Booking(); saved.setId(100L);
         when(bookingRepo.save(any())).thenReturn(saved);
+        when(flightRepo.reserveSeats(10L, 2)).thenReturn(1);
 
         CreateBookingRequest req = new CreateBookingRequest();
         req.setFlightId(10L);
@@ -72,12 +94,29 @@ class BookingServiceImplTest {
         assertEquals(200, resp.getStatusCode());
         verify(bookingRepo).save(any(Booking.class));
         verify(passengerRepo).saveAll(anyList());
-        verify(emailService).sendBookingTicketEmail(saved);
+        verify(flightRepo).reserveSeats(10L, 2);
+        verify(emailService).queueBookingTicketEmail(saved);
+    }
+
+    @Test
+    void createBooking_reject_soldOutFlight() {
+        User user = new User(); when(userService.currentUserReference()).thenReturn(user);
+        Flight flight = new Flight(); flight.setId(11L); flight.setStatus(FlightStatus.SCHEDULED);
+        when(flightRepo.findById(11L)).thenReturn(Optional.of(flight));
+        when(bookingRepo.save(any())).thenReturn(new Booking());
+        when(flightRepo.reserveSeats(11L, 1)).thenReturn(0);
+
+        CreateBookingRequest req = new CreateBookingRequest();
+        req.setFlightId(11L);
+        req.setPassengers(List.of(new PassengerDTO(null, "Alice", "Judien", "A123", PassengerType.ADULT, "1A", null)));
+
+        assertThrows(BadRequestException.class, () -> service.createBooking(req));
+        verifyNoInteractions(emailService);
     }
 
     @Test
     void createBooking_reject_nonScheduledFlight() {
-        User user = new User(); when(userService.currentUser()).thenReturn(user);
+        User user = new User(); when(userService.currentUserReference()).thenReturn(user);
         Flight cancelled = new Flight(); cancelled.setStatus(FlightStatus.CANCELLED);
         when(flightRepo.findById(99L)).thenReturn(Optional.of(cancelled));
 
@@ -88,6 +127,123 @@ class BookingServiceImplTest {
         verifyNoInteractions(passengerRepo, emailService);
     }
 
+    @Test
+    void createBookings_reportsResultPerItem_andSendsOneEmailJob() {
+        User user = new User(); when(userService.currentUserReference()).thenReturn(user);
+
+        Flight open = new Flight(); open.setId(1L); open.setStatus(FlightStatus.SCHEDULED);
+        Flight full = new Flight(); full.setId(2L); full.setStatus(FlightStatus.SCHEDULED);
+        Flight delayed = new Flight(); delayed.setId(3L); delayed.setStatus(FlightStatus.DELAYED);
+        when(flightRepo.findAllById(anyCollection())).thenReturn(List.of(open, full, delayed));
+        when(flightRepo.reserveSeats(1L, 2)).thenReturn(1);
+        when(flightRepo.reserveSeats(2L, 1)).thenReturn(0);
+
+        PassengerDTO alice = new PassengerDTO(null, "Alice", "Judien", "A123", PassengerType.ADULT, "1A", null);
+        PassengerDTO bob = new PassengerDTO(null, "Bob", "Uilrich", "B456", PassengerType.ADULT, "1B", null);
+
+        CreateBatchBookingRequest req = new CreateBatchBookingRequest(List.of(
+                new CreateBookingRequest(2L, List.of(alice)),
+                new CreateBookingRequest(1L, List.of(alice, bob)),
+                new CreateBookingRequest(3L, List.of(bob)),
+                new CreateBookingRequest(404L, List.of(bob))
+        ));
+
+        Response<List<BatchBookingResult>> resp = service.createBookings(req);
+        List<BatchBookingResult> results = resp.getData();
+
+        assertEquals(200, resp.getStatusCode());
+        assertEquals(4, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertNotNull(results.get(1).getBookingReference());
+        assertFalse(results.get(2).isSuccess());
+        assertFalse(results.get(3).isSuccess());
+        assertEquals("Flight Not Found", results.get(3).getMessage());
+
+        // only one flight lookup, one insert call per table and one email job for the whole batch
+        verify(flightRepo, never()).findById(any());
+        verify(bookingRepo).saveAll(argThat(bookings -> ((List<?>) bookings).size() == 1));
+        verify(passengerRepo).saveAll(argThat(passengers -> ((List<?>) passengers).size() == 2));
+        verify(emailService).queueBookingTicketEmails(anyList());
+        verify(emailService, never()).queueBookingTicketEmail(any());
+    }
+
+    @Test
+    void holdBooking_createsPendingBookingWithExpiry() {
+        ReflectionTestUtils.setField(service, "bookingHoldTtlMinutes", 15L);
+        User user = new User(); when(userService.currentUserReference()).thenReturn(user);
+        Flight flight = new Flight(); flight.setId(10L); flight.setStatus(FlightStatus.SCHEDULED);
+        when(flightRepo.findById(10L)).thenReturn(Optional.of(flight));
+        when(bookingRepo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(flightRepo.reserveSeats(10L, 1)).thenReturn(1);
+
+        CreateBookingRequest req = new CreateBookingRequest(10L,
+                List.of(new PassengerDTO(null, "Alice", "Judien", "A123", PassengerType.ADULT, "1A", null)));
+
+        var resp = service.holdBooking(req);
+        assertEquals(200, resp.getStatusCode());
+        assertTrue(resp.getData().getHoldExpiresAt().isAfter(LocalDateTime.now().plusMinutes(14)));
+
+        ArgumentCaptor<Booking> captor = ArgumentCaptor.forClass(Booking.class);
+        verify(bookingRepo).save(captor.capture());
+        assertEquals(BookingStatus.PENDING, captor.getValue().getStatus());
+        // the ticket only goes out once the hold is confirmed
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void confirmBooking_success() {
+        User user = new User(); user.setId(1L); when(userService.currentUserId()).thenReturn(1L);
+        Booking b = new Booking(); b.setId(9L); b.setUser(user); b.setStatus(BookingStatus.PENDING);
+        b.setHoldExpiresAt(LocalDateTime.now().plusMinutes(5));
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+        when(bookingRepo.save(b)).thenReturn(b);
+
+        var resp = service.confirmBooking(9L);
+        assertEquals(200, resp.getStatusCode());
+        assertEquals(BookingStatus.CONFIRMED, b.getStatus());
+        assertNull(b.getHoldExpiresAt());
+        verify(emailService).queueBookingTicketEmail(b);
+    }
+
+    @Test
+    void confirmBooking_reject_expiredHold() {
+        User user = new User(); user.setId(1L); when(userService.currentUserId()).thenReturn(1L);
+        Booking b = new Booking(); b.setId(9L); b.setUser(user); b.setStatus(BookingStatus.PENDING);
+        b.setHoldExpiresAt(LocalDateTime.now().minusSeconds(1));
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+
+        assertThrows(BadRequestException.class, () -> service.confirmBooking(9L));
+        verify(bookingRepo, never()).save(any());
+    }
+
+    @Test
+    void confirmBooking_reject_pendingWithoutHoldExpiry() {
+        User user = new User(); user.setId(1L); when(userService.currentUserId()).thenReturn(1L);
+        Booking b = new Booking(); b.setId(9L); b.setUser(user); b.setStatus(BookingStatus.PENDING);
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+
+        assertThrows(BadRequestException.class, () -> service.confirmBooking(9L));
+        verify(bookingRepo, never()).save(any());
+    }
+
+    @Test
+    void updateBookingStatus_toPending_startsANewHold_thatCanBeConfirmed() {
+        ReflectionTestUtils.setField(service, "bookingHoldTtlMinutes", 15L);
+        User user = new User(); user.setId(1L); when(userService.currentUserId()).thenReturn(1L);
+        Booking b = new Booking(); b.setId(9L); b.setUser(user); b.setStatus(BookingStatus.CONFIRMED);
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+        when(bookingRepo.save(b)).thenReturn(b);
+
+        service.updateBookingStatus(9L, BookingStatus.PENDING);
+
+        assertEquals(BookingStatus.PENDING, b.getStatus());
+        assertTrue(b.getHoldExpiresAt().isAfter(LocalDateTime.now().plusMinutes(14)));
+
+        assertEquals(200, service.confirmBooking(9L).getStatusCode());
+        assertEquals(BookingStatus.CONFIRMED, b.getStatus());
+    }
+
     @Test
     void getBookingById_success() {
         Booking b = new Booking();
@@ -103,26 +259,47 @@ class BookingServiceImplTest {
 
     @Test
     void getAllBookings_success() {
-        Booking b1 = new Booking(); b1.setId(1L); b1.setFlight(new Flight());
-        Booking b2 = new Booking(); b2.setId(2L); b2.setFlight(new Flight());
-        when(bookingRepo.findAll(Sort.by(Sort.Direction.DESC, "id"))).thenReturn(List.of(b1, b2));
+        Booking b1 = new Booking(); b1.setId(2L); b1.setFlight(new Flight());
+        Booking b2 = new Booking(); b2.setId(1L); b2.setFlight(new Flight());
+        when(bookingRepo.findBy(ArgumentMatchers.<Specification<Booking>>any(), any())).thenReturn(List.of(b1, b2));
 
-        var resp = service.getAllBookings();
+        var resp = service.getAllBookings(new BookingFilter(), null, 20);
         assertEquals(200, resp.getStatusCode());
-        assertEquals(2, resp.getData().size());
+        assertEquals(2, resp.getData().getItems().size());
+        assertNull(resp.getData().getNextCursor());
+    }
+
+    @Test
+    void getAllBookings_morePages_returnsCursorOfLastItem() {
+        Booking b1 = new Booking(); b1.setId(9L); b1.setFlight(new Flight());
+        Booking b2 = new Booking(); b2.setId(7L); b2.setFlight(new Flight());
+        Booking b3 = new Booking(); b3.setId(4L); b3.setFlight(new Flight());
+        when(bookingRepo.findBy(ArgumentMatchers.<Specification<Booking>>any(), any())).thenReturn(List.of(b1, b2, b3));
+
+        var resp = service.getAllBookings(new BookingFilter(), 10L, 2);
+        assertEquals(2, resp.getData().getItems().size());
+        assertEquals(7L, resp.getData().getNextCursor());
+    }
+
+    @Test
+    void getAllBookings_pageSizeTooLarge_throws() {
+        assertThrows(BadRequestException.class, () -> service.getAllBookings(new BookingFilter(), null, 1000));
+        verifyNoInteractions(bookingRepo);
     }
 
     @Test
     void getMyBookings_success() {
-        User u = new User(); u.setId(5L);
-        when(userService.currentUser()).thenReturn(u);
+        when(userService.currentUserId()).thenReturn(5L);
 
         Booking b = new Booking(); b.setId(3L); b.setFlight(new Flight());
-        when(bookingRepo.findByUserIdOrderByIdDesc(5L)).thenReturn(List.of(b));
+        when(bookingRepo.findBy(ArgumentMatchers.<Specification<Booking>>any(), any())).thenReturn(List.of(b));
 
-        var resp = service.getMyBookings();
+        // a user id sent by the client is replaced with the current user's
+        BookingFilter filter = BookingFilter.builder().userId(99L).build();
+        var resp = service.getMyBookings(filter, null, 20);
         assertEquals(200, resp.getStatusCode());
-        assertEquals(1, resp.getData().size());
+        assertEquals(1, resp.getData().getItems().size());
+        assertEquals(5L, filter.getUserId());
     }
 
     @Test
@@ -135,4 +312,46 @@ class BookingServiceImplTest {
         verify(bookingRepo).save(b);
         assertEquals(BookingStatus.CANCELLED, b.getStatus());
     }
+
+    @Test
+    void updateBookingStatus_cancel_releasesSeats() {
+        Flight f = new Flight(); f.setId(4L);
+        Booking b = new Booking(); b.setId(9L); b.setFlight(f); b.setStatus(BookingStatus.CONFIRMED);
+        b.setPassengers(List.of(new Passenger(), new Passenger()));
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+        when(flightRepo.releaseSeats(4L, 2)).thenReturn(1);
+
+        service.updateBookingStatus(9L, BookingStatus.CANCELLED);
+        verify(flightRepo).releaseSeats(4L, 2);
+        verify(flightSearchIndex).seatsChanged(4L, -2);
+
+        // cancelling twice must not give the seats back again
+        service.updateBookingStatus(9L, BookingStatus.CANCELLED);
+        verify(flightRepo, times(1)).releaseSeats(anyLong(), anyInt());
+    }
+
+    @Test
+    void updateBookingStatus_cancel_failsWhenNoSeatsCanBeReleased() {
+        Flight f = new Flight(); f.setId(4L);
+        Booking b = new Booking(); b.setId(9L); b.setFlight(f); b.setStatus(BookingStatus.CONFIRMED);
+        b.setPassengers(List.of(new Passenger(), new Passenger()));
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+        when(flightRepo.releaseSeats(4L, 2)).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> service.updateBookingStatus(9L, BookingStatus.CANCELLED));
+        assertEquals(BookingStatus.CONFIRMED, b.getStatus());
+        verify(bookingRepo, never()).save(any());
+    }
+
+    @Test
+    void updateBookingStatus_reinstate_rejectedWhenSoldOut() {
+        Flight f = new Flight(); f.setId(4L);
+        Booking b = new Booking(); b.setId(9L); b.setFlight(f); b.setStatus(BookingStatus.CANCELLED);
+        b.setPassengers(List.of(new Passenger()));
+        when(bookingRepo.findById(9L)).thenReturn(Optional.of(b));
+        when(flightRepo.reserveSeats(4L, 1)).thenReturn(0);
+
+        assertThrows(BadRequestException.class, () -> service.updateBookingStatus(9L, BookingStatus.CONFIRMED));
+        assertEquals(BookingStatus.CANCELLED, b.getStatus());
+    }
 }
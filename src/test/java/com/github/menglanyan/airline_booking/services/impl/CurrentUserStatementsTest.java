@@ -0,0 +1,209 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.github.menglanyan.airline_booking.config.JpaBatchingConfig;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
+import com.github.menglanyan.airline_booking.dtos.PassengerDTO;
+import com.github.menglanyan.airline_booking.dtos.UserDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.mappers.AirportMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.BookingMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.FlightMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.UserMapperImpl;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import com.github.menglanyan.airline_booking.security.AuthUser;
+import com.github.menglanyan.airline_booking.security.CurrentUserResolver;
+import com.github.menglanyan.airline_booking.security.CustomUserDetailsService;
+import com.github.menglanyan.airline_booking.security.TokenRevocations;
+import com.github.menglanyan.airline_booking.security.TokenUser;
+import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
+import com.github.menglanyan.airline_booking.utils.CacheFlushMarkers;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Endpoints acting for the current user must get who that is from the principal, not from another query
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({UserServiceImpl.class, CurrentUserResolver.class, BookingServiceImpl.class, FlightServiceImpl.class,
+        JpaBatchingConfig.class, BookingReferenceGenerator.class, ReferenceDataCache.class, CacheFlushMarkers.class,
+        BookingMapperImpl.class, FlightMapperImpl.class, AirportMapperImpl.class, UserMapperImpl.class,
+        PassengerMapperImpl.class})
+class CurrentUserStatementsTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2030, 3, 1, 8, 0);
+
+    @Autowired private UserServiceImpl userService;
+    @Autowired private BookingServiceImpl bookingService;
+    @Autowired private FlightServiceImpl flightService;
+    @Autowired private TestEntityManager entityManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean private EmailNotificationService emailNotificationService;
+    @MockitoBean private FlightSearchIndex flightSearchIndex;
+    @MockitoBean private PasswordEncoder passwordEncoder;
+    @MockitoBean private CustomUserDetailsService customUserDetailsService;
+    @MockitoBean private TokenRevocations tokenRevocations;
+
+    private User customer;
+    private User pilot;
+    private Flight flight;
+
+    @BeforeEach
+    void setup() {
+        Role customerRole = entityManager.persist(new Role(null, "CUSTOMER"));
+        Role pilotRole = entityManager.persist(new Role(null, "PILOT"));
+        customer = entityManager.persist(user("customer@example.com", customerRole));
+        pilot = entityManager.persist(user("pilot@example.com", pilotRole));
+
+        Airport miami = entityManager.persist(new Airport(null, "Miami International", City.MIAMI, Country.USA,
+                "MIA"));
+        Airport dallas = entityManager.persist(new Airport(null, "Dallas Fort Worth", City.DALLAS, Country.USA,
+                "DFW"));
+        flight = new Flight();
+        flight.setFlightNumber("CU100");
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureAirport(miami);
+        flight.setArrivalAirport(dallas);
+        flight.setDepartureTime(DEPARTURE);
+        flight.setArrivalTime(DEPARTURE.plusHours(6));
+        flight.setBasePrice(new BigDecimal("250.00"));
+        flight.setCapacity(180);
+        flight.setAssignedPilot(pilot);
+        entityManager.persist(flight);
+
+        Booking booking = new Booking();
+        booking.setBookingReference("CU100-1");
+        booking.setUser(customer);
+        booking.setFlight(flight);
+        booking.setBookingDate(DEPARTURE.minusDays(10));
+        entityManager.persist(booking);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getMyBookings_runsOnlyTheBookingStatements() {
+        authenticateFromToken(customer);
+
+        // the page, then passengers and user roles, the same as for getAllBookings
+        assertEquals(3, statements(() -> bookingService.getMyBookings(new BookingFilter(), null, 20)));
+    }
+
+    @Test
+    void getMyFlights_runsOnlyTheFlightStatements() {
+        authenticateFromToken(pilot);
+
+        // flights with airports and pilots joined, then the pilots' roles
+        assertEquals(2, statements(() -> flightService.getMyFlights()));
+    }
+
+    @Test
+    void createBooking_doesNotReadTheUser() {
+        authenticateFromToken(customer);
+        // Otherwise loading the flight loads its pilot
+        flight.setAssignedPilot(null);
+        CreateBookingRequest request = new CreateBookingRequest(flight.getId(), List.of(
+                new PassengerDTO(null, "Alice", "Smith", null, PassengerType.ADULT, null, null)));
+
+        statements(() -> bookingService.createBooking(request));
+
+        assertEquals(0, statistics().getEntityStatistics(User.class.getName()).getLoadCount());
+        assertEquals(2, entityManager.getEntityManager()
+                .createQuery("SELECT COUNT(b) FROM Booking b WHERE b.user.id = :userId", Long.class)
+                .setParameter("userId", customer.getId())
+                .getSingleResult());
+    }
+
+    @Test
+    void getAccountDetails_readsTheUserOnce_orNotAtAllWhenTheFilterLoadedIt() {
+        authenticateFromToken(customer);
+        assertEquals(1, statements(() -> userService.getAccountDetails()));
+
+        User loaded = entityManager.find(User.class, customer.getId());
+        entityManager.detach(loaded);
+        authenticate(AuthUser.builder().user(loaded).build());
+        assertEquals(0, statements(() -> userService.getAccountDetails()));
+        assertEquals("customer@example.com", userService.getAccountDetails().getData().getEmail());
+    }
+
+    @Test
+    void updateMyAccount_readsTheUserOnce_andUpdatesIt() {
+        authenticateFromToken(customer);
+        UserDTO userDTO = new UserDTO();
+        userDTO.setName("Alice Smith");
+
+        assertEquals(2, statements(() -> userService.updateMyAccount(userDTO)));
+        assertEquals("Alice Smith", entityManager.find(User.class, customer.getId()).getName());
+    }
+
+    private long statements(Runnable call) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics().clear();
+
+        call.run();
+        entityManager.flush();
+
+        long statements = statistics().getPrepareStatementCount();
+        entityManager.clear();
+        return statements;
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private void authenticateFromToken(User user) {
+        authenticate(new TokenUser(user.getId(), user.getEmail(), user.getRoles().stream()
+                .map(Role::getName)
+                .toList()));
+    }
+
+    private static void authenticate(Object principal) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, List.of()));
+    }
+
+    private static User user(String email, Role role) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        user.setRoles(List.of(role));
+        user.setActive(true);
+        user.setCreatedAt(LocalDateTime.now());
+        return user;
+    }
+}
@@ -0,0 +1,362 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.EmailNotification;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.EmailOutboxMessage;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.EmailDeliveryStatus;
+import com.github.menglanyan.airline_booking.enums.EmailType;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
+import com.github.menglanyan.airline_booking.mail.BookingTicketRenderer;
+import com.github.menglanyan.airline_booking.mail.EmailBodyLayoutStore;
+import com.github.menglanyan.airline_booking.mail.RenderedMail;
+import com.github.menglanyan.airline_booking.mappers.EmailOutboxMessageMapperImpl;
+import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.repo.BookingRepo;
+import com.github.menglanyan.airline_booking.repo.EmailBodyLayoutRepo;
+import com.github.menglanyan.airline_booking.repo.EmailNotificationRepo;
+import com.github.menglanyan.airline_booking.repo.EmailOutboxMessageRepo;
+import com.github.menglanyan.airline_booking.repo.FlightRepo;
+import com.github.menglanyan.airline_booking.repo.UserRepo;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.IContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Runs against the database, the outbox relies on real transactions
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({EmailNotificationServiceImpl.class, EmailBodyLayoutStore.class, EmailOutboxMessageMapperImpl.class})
+@TestPropertySource(properties = "emailMaxAttempts=3")
+class EmailNotificationServiceImplTest {
+
+    @Autowired private EmailNotificationServiceImpl emailService;
+    @Autowired private EmailOutboxMessageRepo emailOutboxMessageRepo;
+    @Autowired private EmailNotificationRepo emailNotificationRepo;
+    @Autowired private EmailBodyLayoutRepo emailBodyLayoutRepo;
+    @Autowired private BookingRepo bookingRepo;
+    @Autowired private FlightRepo flightRepo;
+    @Autowired private AirportRepo airportRepo;
+    @Autowired private UserRepo userRepo;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @MockitoBean private JavaMailSender javaMailSender;
+    @MockitoBean private TemplateEngine templateEngine;
+    @MockitoBean private BookingTicketRenderer bookingTicketRenderer;
+
+    private static final String LAYOUT_ID = "a".repeat(64);
+
+    private TransactionTemplate transactionTemplate;
+    private Flight flight;
+
+    @BeforeEach
+    void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        emailNotificationRepo.deleteAll();
+        emailOutboxMessageRepo.deleteAll();
+        bookingRepo.deleteAll();
+        flightRepo.deleteAll();
+        airportRepo.deleteAll();
+        userRepo.deleteAll();
+
+        when(javaMailSender.createMimeMessage()).thenAnswer(inv -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateEngine.process(anyString(), any(IContext.class))).thenReturn("<p>mail</p>");
+        when(bookingTicketRenderer.render(any(Booking.class))).thenAnswer(inv -> new RenderedMail(LAYOUT_ID,
+                "<html><style>.ticket {}</style>", "<p>" + inv.getArgument(0, Booking.class).getBookingReference() +
+                "</p>", "</html>"));
+
+        Airport miami = airportRepo.save(new Airport(null, "Miami International", City.MIAMI, Country.USA, "MIA"));
+        Airport dallas = airportRepo.save(new Airport(null, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW"));
+        flight = flightRepo.save(flight(miami, dallas));
+    }
+
+    @Test
+    void queuedMails_areSentByTheDispatcher_once() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueWelcomeEmail(user);
+            emailService.queueBookingTicketEmail(booking(user, "OUTBOX01"));
+        });
+
+        // Nothing goes out while the request runs
+        verify(javaMailSender, never()).send(any(MimeMessage[].class));
+
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.BOOKING_TICKET, 10));
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.BOOKING_TICKET, 10));
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+
+        verify(javaMailSender, times(2)).send(any(MimeMessage[].class));
+        assertTrue(emailOutboxMessageRepo.findAll().stream().allMatch(message -> message.getSentAt() != null));
+        assertEquals(2, emailNotificationRepo.count());
+    }
+
+    @Test
+    void rolledBackTransaction_queuesNothing() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueBookingTicketEmail(booking(user, "OUTBOX01"));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, emailOutboxMessageRepo.count());
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.BOOKING_TICKET, 10));
+        verify(javaMailSender, never()).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void queueing_requiresTheCallersTransaction() {
+        User user = userRepo.save(user("alice@example.com"));
+
+        assertThrows(IllegalTransactionStateException.class, () -> emailService.queueWelcomeEmail(user));
+    }
+
+    @Test
+    void failedMail_isRetriedWithBackoff_andSentOnceDue() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueWelcomeEmail(user);
+        });
+
+        doThrow(new MailSendException("421 Too many messages, slow down"))
+                .doNothing()
+                .when(javaMailSender).send(any(MimeMessage[].class));
+
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        EmailOutboxMessage failed = emailOutboxMessageRepo.findAll().get(0);
+        assertEquals(EmailDeliveryStatus.FAILED, failed.getStatus());
+        assertEquals(1, failed.getAttempts());
+        assertEquals("421 Too many messages, slow down", failed.getLastError());
+        assertNull(failed.getSentAt());
+        assertEquals(0, emailNotificationRepo.count());
+
+        // Not due yet, the next run leaves it alone
+        assertTrue(failed.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        verify(javaMailSender, times(1)).send(any(MimeMessage[].class));
+
+        makeDue();
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        EmailOutboxMessage sent = emailOutboxMessageRepo.findAll().get(0);
+        assertEquals(EmailDeliveryStatus.SENT, sent.getStatus());
+        assertEquals(2, sent.getAttempts());
+        assertNull(sent.getNextAttemptAt());
+        assertNotNull(sent.getSentAt());
+    }
+
+    @Test
+    void mail_isDeadAfterItsLastAttempt_andCanBeReplayed() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueWelcomeEmail(user);
+        });
+        doThrow(new MailSendException("SMTP server unavailable")).when(javaMailSender).send(any(MimeMessage[].class));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            makeDue();
+            emailService.dispatchQueuedEmails(EmailType.WELCOME, 10);
+        }
+
+        EmailOutboxMessage dead = emailOutboxMessageRepo.findAll().get(0);
+        assertEquals(EmailDeliveryStatus.DEAD, dead.getStatus());
+        assertNull(dead.getNextAttemptAt());
+        assertEquals(dead.getId(), emailService.getDeadLetters(null, 10).getData().getItems().get(0).getId());
+
+        // Dead messages are never picked up again on their own
+        makeDue();
+        emailService.dispatchQueuedEmails(EmailType.WELCOME, 10);
+        verify(javaMailSender, times(3)).send(any(MimeMessage[].class));
+
+        doNothing().when(javaMailSender).send(any(MimeMessage[].class));
+        assertEquals(EmailDeliveryStatus.QUEUED, emailService.replayDeadLetter(dead.getId()).getData().getStatus());
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        assertTrue(emailService.getDeadLetters(null, 10).getData().getItems().isEmpty());
+        assertThrows(BadRequestException.class, () -> emailService.replayDeadLetter(dead.getId()));
+    }
+
+    @Test
+    void mailOfAMissingRecipient_isDeadRightAway() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueWelcomeEmail(user);
+        });
+        userRepo.deleteAll();
+
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+
+        assertEquals(EmailDeliveryStatus.DEAD, emailOutboxMessageRepo.findAll().get(0).getStatus());
+        verify(javaMailSender, never()).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void mailLeftSendingByADeadDispatcher_isClaimedAgainOnceItsLeaseRanOut() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueWelcomeEmail(user);
+        });
+        EmailOutboxMessage abandoned = emailOutboxMessageRepo.findAll().get(0);
+        abandoned.setStatus(EmailDeliveryStatus.SENDING);
+        abandoned.setAttempts(1);
+        abandoned.setNextAttemptAt(LocalDateTime.now().plusMinutes(5));
+        emailOutboxMessageRepo.save(abandoned);
+
+        // Still leased
+        assertEquals(0, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+
+        makeDue();
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+        assertEquals(EmailDeliveryStatus.SENT, emailOutboxMessageRepo.findAll().get(0).getStatus());
+    }
+
+    @Test
+    void deadLetters_arePagedNewestFirst_andReplayedTogether() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            for (int i = 0; i < 5; i++) {
+                emailService.queueWelcomeEmail(user);
+            }
+        });
+        List<EmailOutboxMessage> messages = emailOutboxMessageRepo.findAll();
+        messages.forEach(message -> {
+            message.setStatus(EmailDeliveryStatus.DEAD);
+            message.setNextAttemptAt(null);
+        });
+        emailOutboxMessageRepo.saveAll(messages);
+
+        var firstPage = emailService.getDeadLetters(null, 3).getData();
+        var secondPage = emailService.getDeadLetters(firstPage.getNextCursor(), 3).getData();
+
+        assertEquals(3, firstPage.getItems().size());
+        assertEquals(2, secondPage.getItems().size());
+        assertNull(secondPage.getNextCursor());
+        assertTrue(firstPage.getItems().get(0).getId() > firstPage.getItems().get(2).getId());
+        assertTrue(firstPage.getItems().get(2).getId() > secondPage.getItems().get(0).getId());
+        assertThrows(BadRequestException.class, () -> emailService.getDeadLetters(null, 0));
+
+        assertEquals(5, emailService.replayDeadLetters().getData());
+        assertEquals(5, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+    }
+
+    @Test
+    void sentTickets_shareOneStoredLayout_andGiveBackTheirFullBody() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            emailService.queueBookingTicketEmail(booking(user, "OUTBOX01"));
+            emailService.queueBookingTicketEmail(booking(user, "OUTBOX02"));
+            emailService.queueWelcomeEmail(user);
+        });
+
+        assertEquals(2, emailService.dispatchQueuedEmails(EmailType.BOOKING_TICKET, 10));
+        assertEquals(1, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+
+        assertEquals(1, emailBodyLayoutRepo.count());
+        List<String> bodies = emailNotificationRepo.findAll().stream()
+                .map(notification -> emailService.getNotificationBody(notification.getId()))
+                .sorted()
+                .toList();
+        assertEquals(List.of("<html><style>.ticket {}</style><p>OUTBOX01</p></html>",
+                "<html><style>.ticket {}</style><p>OUTBOX02</p></html>", "<p>mail</p>"), bodies);
+    }
+
+    @Test
+    void oldSentEmails_arePurgedInBatches_deadOnesAreKept() {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.save(user("alice@example.com"));
+            for (int i = 0; i < 3; i++) {
+                emailService.queueWelcomeEmail(user);
+            }
+        });
+        assertEquals(3, emailService.dispatchQueuedEmails(EmailType.WELCOME, 10));
+
+        // Two of them sent long ago, one dead long ago
+        List<EmailOutboxMessage> messages = emailOutboxMessageRepo.findAll();
+        messages.forEach(message -> message.setSentAt(LocalDateTime.now().minusYears(2)));
+        messages.get(2).setStatus(EmailDeliveryStatus.DEAD);
+        emailOutboxMessageRepo.saveAll(messages);
+        List<EmailNotification> notifications = emailNotificationRepo.findAll();
+        notifications.get(0).setSentAt(LocalDateTime.now().minusYears(2));
+        notifications.get(1).setSentAt(LocalDateTime.now().minusYears(2));
+        emailNotificationRepo.saveAll(notifications);
+
+        assertEquals(1, emailService.purgeOldNotifications(1));
+        assertEquals(1, emailService.purgeOldNotifications(1));
+        assertEquals(0, emailService.purgeOldNotifications(1));
+        assertEquals(2, emailService.purgeSentOutboxMessages(10));
+
+        assertEquals(1, emailNotificationRepo.count());
+        assertEquals(EmailDeliveryStatus.DEAD, emailOutboxMessageRepo.findAll().get(0).getStatus());
+    }
+
+    // Stands in for the backoff delay or lease passing
+    private void makeDue() {
+        List<EmailOutboxMessage> messages = emailOutboxMessageRepo.findAll();
+        messages.stream()
+                .filter(message -> message.getNextAttemptAt() != null)
+                .forEach(message -> message.setNextAttemptAt(LocalDateTime.now().minusSeconds(1)));
+        emailOutboxMessageRepo.saveAll(messages);
+    }
+
+    private Booking booking(User user, String reference) {
+        Booking booking = new Booking();
+        booking.setBookingReference(reference);
+        booking.setUser(user);
+        booking.setFlight(flight);
+        booking.setStatus(BookingStatus.CONFIRMED);
+        booking.setBookingDate(LocalDateTime.now());
+        return bookingRepo.save(booking);
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        user.setRoles(new ArrayList<>(List.of()));
+        return user;
+    }
+
+    private static Flight flight(Airport departure, Airport arrival) {
+        Flight flight = new Flight();
+        flight.setFlightNumber("OB100");
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureAirport(departure);
+        flight.setArrivalAirport(arrival);
+        flight.setDepartureTime(LocalDateTime.of(2030, 3, 1, 8, 0));
+        flight.setArrivalTime(LocalDateTime.of(2030, 3, 1, 11, 0));
+        flight.setBasePrice(new BigDecimal("250.00"));
+        flight.setCapacity(180);
+        return flight;
+    }
+}
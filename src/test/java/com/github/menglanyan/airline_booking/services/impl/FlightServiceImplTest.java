@@ -10,17 +10,24 @@ import com.github.menglanyan.airline_booking.entities.User;
 import com.github.menglanyan.airline_booking.enums.FlightStatus;
 import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
 import com.github.menglanyan.airline_booking.exceptions.NotFoundException;
-import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.mappers.AirportMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.FlightMapper;
+import com.github.menglanyan.airline_booking.mappers.FlightMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.UserMapperImpl;
 import com.github.menglanyan.airline_booking.repo.FlightRepo;
 import com.github.menglanyan.airline_booking.repo.UserRepo;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import com.github.menglanyan.airline_booking.search.FlightSummary;
 import com.github.menglanyan.airline_booking.services.UserService;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 
 import java.math.BigDecimal;
@@ -36,18 +43,20 @@ import static org.mockito.Mockito.*;
 class FlightServiceImplTest {
 
     @Mock private FlightRepo flightRepo;
-    @Mock private AirportRepo airportRepo;
+    @Mock private ReferenceDataCache referenceDataCache;
     @Mock private UserRepo userRepo;
     @Mock private UserService userService;
+    @Mock private FlightSearchIndex flightSearchIndex;
 
     // use real mapper for simplicity
-    private ModelMapper modelMapper;
+    private FlightMapper flightMapper;
     private FlightServiceImpl service;
 
     @BeforeEach
     void setup() {
-        modelMapper = new ModelMapper();
-        service = new FlightServiceImpl(flightRepo, airportRepo, userRepo, modelMapper, userService);
+        flightMapper = new FlightMapperImpl(new AirportMapperImpl(), new UserMapperImpl(), new PassengerMapperImpl());
+        service = new FlightServiceImpl(flightRepo, referenceDataCache, userRepo, flightMapper, userService,
+                flightSearchIndex);
     }
 
     @Test
@@ -61,12 +70,10 @@ class FlightServiceImplTest {
         req.setBasePrice(new BigDecimal("199.99"));
         req.setPilotId(10L);
 
-        when(flightRepo.existsByFlightNumber("AB123")).thenReturn(false);
-
         Airport dep = new Airport(); dep.setIataCode("JFK");
         Airport arr = new Airport(); arr.setIataCode("LAX");
-        when(airportRepo.findByIataCode("JFK")).thenReturn(Optional.of(dep));
-        when(airportRepo.findByIataCode("LAX")).thenReturn(Optional.of(arr));
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.of(dep));
+        when(referenceDataCache.findAirport("LAX")).thenReturn(Optional.of(arr));
 
         User pilot = new User();
         pilot.setId(10L);
@@ -86,6 +93,7 @@ class FlightServiceImplTest {
         assertEquals(pilot, saved.getAssignedPilot());
         assertEquals(dep, saved.getDepartureAirport());
         assertEquals(arr, saved.getArrivalAirport());
+        verify(flightSearchIndex).flightSaved(saved);
     }
 
     @Test
@@ -102,15 +110,16 @@ class FlightServiceImplTest {
     @Test
     void createFlight_reject_duplicateFlightNumber() {
         var req = minimalCreateReq();
-        when(flightRepo.existsByFlightNumber(req.getFlightNumber())).thenReturn(true);
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.of(new Airport()));
+        when(referenceDataCache.findAirport("LAX")).thenReturn(Optional.of(new Airport()));
+        when(flightRepo.save(any(Flight.class))).thenThrow(new DataIntegrityViolationException("flight_number"));
         assertThrows(BadRequestException.class, () -> service.createFlight(req));
     }
 
     @Test
     void createFlight_reject_missingAirports() {
         var req = minimalCreateReq();
-        when(flightRepo.existsByFlightNumber(req.getFlightNumber())).thenReturn(false);
-        when(airportRepo.findByIataCode("JFK")).thenReturn(Optional.empty());
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.empty());
         assertThrows(NotFoundException.class, () -> service.createFlight(req));
     }
 
@@ -119,9 +128,8 @@ class FlightServiceImplTest {
         var req = minimalCreateReq();
         req.setPilotId(99L);
 
-        when(flightRepo.existsByFlightNumber("AB555")).thenReturn(false);
-        when(airportRepo.findByIataCode("JFK")).thenReturn(Optional.of(new Airport()));
-        when(airportRepo.findByIataCode("LAX")).thenReturn(Optional.of(new Airport()));
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.of(new Airport()));
+        when(referenceDataCache.findAirport("LAX")).thenReturn(Optional.of(new Airport()));
 
         User notPilot = new User(); notPilot.setRoles(List.of(role("CUSTOMER")));
         when(userRepo.findById(99L)).thenReturn(Optional.of(notPilot));
@@ -179,15 +187,55 @@ class FlightServiceImplTest {
 
     @Test
     void searchForFlight_success() {
-        when(flightRepo.findByDepartureAirportIataCodeAndArrivalAirportIataCodeAndStatusAndDepartureTimeBetween(
-                eq("JFK"), eq("LAX"), eq(FlightStatus.SCHEDULED), any(), any()))
-                .thenReturn(List.of(new Flight(), new Flight()));
+        LocalDateTime departure = LocalDate.now().atTime(9, 30);
+        Airport jfk = new Airport(); jfk.setId(1L); jfk.setIataCode("JFK");
+        Airport lax = new Airport(); lax.setId(2L); lax.setIataCode("LAX");
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.of(jfk));
+        when(referenceDataCache.findAirport("LAX")).thenReturn(Optional.of(lax));
+        when(flightRepo.searchSummaries(eq(1L), eq(2L), eq(FlightStatus.SCHEDULED), any(), any()))
+                .thenReturn(List.of(
+                        new FlightSummary(1L, "AB100", FlightStatus.SCHEDULED, "JFK", "LAX", departure,
+                                departure.plusHours(6), new BigDecimal("250.00"), 180, 0),
+                        new FlightSummary(2L, "AB200", FlightStatus.SCHEDULED, "JFK", "LAX", departure.plusHours(2),
+                                departure.plusHours(8), new BigDecimal("250.00"), 180, 0)));
 
         var resp = service.searchForFlight("JFK", "LAX", FlightStatus.SCHEDULED, LocalDate.now());
         assertEquals(200, resp.getStatusCode());
         assertEquals(2, resp.getData().size());
     }
 
+    @Test
+    void searchForFlight_unknownAirport_findsNothingWithoutQueries() {
+        var resp = service.searchForFlight("XXX", "LAX", FlightStatus.SCHEDULED, LocalDate.now());
+
+        assertTrue(resp.getData().isEmpty());
+        verifyNoInteractions(flightRepo, flightSearchIndex);
+    }
+
+    @Test
+    void searchForFlight_servedFromTheIndex_withoutQueries() {
+        LocalDateTime departure = LocalDate.now().atTime(9, 30);
+        FlightSummary summary = new FlightSummary(7L, "AB777", FlightStatus.SCHEDULED, "JFK", "LAX", departure,
+                departure.plusHours(6), new BigDecimal("250.00"), 180, 12);
+        when(flightSearchIndex.search("JFK", "LAX", FlightStatus.SCHEDULED, LocalDate.now()))
+                .thenReturn(Optional.of(List.of(summary)));
+        Airport jfk = new Airport(); jfk.setIataCode("JFK"); jfk.setName("John F. Kennedy");
+        Airport lax = new Airport(); lax.setIataCode("LAX");
+        when(referenceDataCache.findAirport("JFK")).thenReturn(Optional.of(jfk));
+        when(referenceDataCache.findAirport("LAX")).thenReturn(Optional.of(lax));
+
+        var resp = service.searchForFlight("JFK", "LAX", FlightStatus.SCHEDULED, LocalDate.now());
+
+        FlightDTO dto = resp.getData().get(0);
+        assertEquals(7L, dto.getId());
+        assertEquals("AB777", dto.getFlightNumber());
+        assertEquals("John F. Kennedy", dto.getDepartureAirport().getName());
+        assertEquals("LAX", dto.getArrivalAirportIataCode());
+        assertEquals(12, dto.getSeatsSold());
+        assertNull(dto.getAssignedPilot());
+        verifyNoInteractions(flightRepo);
+    }
+
     @Test
     void getAllCities_and_getAllCountries() {
         var cities = service.getAllCities();
@@ -200,8 +248,8 @@ class FlightServiceImplTest {
 
     @Test
     void getMyFlights_onlyPilotAllowed() {
-        var pilot = userWithRole(7L, "PILOT");
-        when(userService.currentUser()).thenReturn(pilot);
+        when(userService.currentUserHasRole("PILOT")).thenReturn(true);
+        when(userService.currentUserId()).thenReturn(7L);
         when(flightRepo.findByAssignedPilotIdOrderByDepartureTimeDesc(7L))
                 .thenReturn(List.of(new Flight(), new Flight()));
 
@@ -212,8 +260,7 @@ class FlightServiceImplTest {
 
     @Test
     void getMyFlights_nonPilotRejected() {
-        var customer = userWithRole(3L, "CUSTOMER");
-        when(userService.currentUser()).thenReturn(customer);
+        when(userService.currentUserHasRole("PILOT")).thenReturn(false);
         assertThrows(BadRequestException.class, () -> service.getMyFlights());
     }
 
@@ -0,0 +1,192 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.menglanyan.airline_booking.dtos.BookingHoldResponse;
+import com.github.menglanyan.airline_booking.dtos.CreateBookingRequest;
+import com.github.menglanyan.airline_booking.dtos.PassengerDTO;
+import com.github.menglanyan.airline_booking.dtos.Response;
+import com.github.menglanyan.airline_booking.entities.IdempotencyRecord;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.exceptions.BadRequestException;
+import com.github.menglanyan.airline_booking.repo.IdempotencyRecordRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the database, the duplicate detection relies on the primary key of idempotency_keys
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyServiceImplTest {
+
+    @Autowired private IdempotencyRecordRepo idempotencyRecordRepo;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private IdempotencyServiceImpl service;
+
+    @BeforeEach
+    void setup() {
+        idempotencyRecordRepo.deleteAll();
+        service = newService();
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice@example.com", null));
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void retryWithSameKey_runsActionOnce() {
+        AtomicInteger calls = new AtomicInteger();
+
+        Response<?> first = service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+        Response<?> second = service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+
+        assertEquals(1, calls.get());
+        assertEquals(first, second);
+        assertEquals(1, idempotencyRecordRepo.count());
+    }
+
+    @Test
+    void noKey_runsActionEveryTime() {
+        AtomicInteger calls = new AtomicInteger();
+
+        service.execute("createBooking", null, request(10L), () -> created(calls));
+        service.execute("createBooking", null, request(10L), () -> created(calls));
+
+        assertEquals(2, calls.get());
+        assertEquals(0, idempotencyRecordRepo.count());
+    }
+
+    @Test
+    void sameKeyForDifferentRequest_isRejected() {
+        AtomicInteger calls = new AtomicInteger();
+        service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+
+        assertThrows(BadRequestException.class,
+                () -> service.execute("createBooking", "key-1", request(11L), () -> created(calls)));
+
+        // also when the first response is only in the database
+        assertThrows(BadRequestException.class,
+                () -> newService().execute("createBooking", "key-1", request(11L), () -> created(calls)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void sameKeyFromAnotherUser_isIndependent() {
+        AtomicInteger calls = new AtomicInteger();
+        service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("bob@example.com", null));
+        service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void responseIsReplayedFromDatabase_onAnotherInstance() {
+        LocalDateTime holdExpiresAt = LocalDateTime.of(2030, 1, 1, 12, 0);
+        service.execute("holdBooking", "key-1", request(10L), () -> Response.<BookingHoldResponse>builder()
+                .statusCode(200)
+                .message("Seats held")
+                .data(new BookingHoldResponse(5L, "GABCDEFG", holdExpiresAt))
+                .build());
+
+        Response<BookingHoldResponse> replayed = newService().execute("holdBooking", "key-1", request(10L),
+                () -> fail("action must not run again"));
+
+        assertEquals(200, replayed.getStatusCode());
+        assertEquals("Seats held", replayed.getMessage());
+        JsonNode data = (JsonNode) (Object) replayed.getData();
+        assertEquals("GABCDEFG", data.get("bookingReference").asText());
+        assertEquals(5L, data.get("bookingId").asLong());
+    }
+
+    @Test
+    void failedAction_doesNotConsumeKey() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(BadRequestException.class, () -> service.execute("createBooking", "key-1", request(10L), () -> {
+            calls.incrementAndGet();
+            throw new BadRequestException("Not enough seats available on this flight");
+        }));
+        service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+
+        assertEquals(2, calls.get());
+        assertEquals(1, idempotencyRecordRepo.count());
+    }
+
+    @Test
+    void concurrentRetries_runActionOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        int threads = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Response<Void>>> futures = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                SecurityContextHolder.getContext()
+                        .setAuthentication(new TestingAuthenticationToken("alice@example.com", null));
+                start.await();
+                return service.execute("createBooking", "key-1", request(10L), () -> created(calls));
+            }));
+        }
+
+        start.countDown();
+        for (Future<Response<Void>> future : futures) {
+            assertEquals("Booking Created Successfully", future.get(30, TimeUnit.SECONDS).getMessage());
+        }
+        executor.shutdown();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void purgeExpiredKeys_deletesOnlyOldKeys() {
+        service.execute("createBooking", "key-1", request(10L), () -> created(new AtomicInteger()));
+
+        IdempotencyRecord old = new IdempotencyRecord("0".repeat(64), "0".repeat(64), 200, "old", null,
+                LocalDateTime.now().minusDays(2));
+        idempotencyRecordRepo.save(old);
+
+        assertEquals(1, service.purgeExpiredKeys(100));
+        assertEquals(1, idempotencyRecordRepo.count());
+        assertFalse(idempotencyRecordRepo.existsById(old.getId()));
+    }
+
+    private IdempotencyServiceImpl newService() {
+        return new IdempotencyServiceImpl(idempotencyRecordRepo, objectMapper, transactionManager, 24, 100);
+    }
+
+    private static Response<Void> created(AtomicInteger calls) {
+        calls.incrementAndGet();
+        return Response.<Void>builder()
+                .statusCode(200)
+                .message("Booking Created Successfully")
+                .build();
+    }
+
+    private static CreateBookingRequest request(Long flightId) {
+        return new CreateBookingRequest(flightId, List.of(
+                new PassengerDTO(null, "Alice", "Judien", "A123", PassengerType.ADULT, "1A", null)));
+    }
+}
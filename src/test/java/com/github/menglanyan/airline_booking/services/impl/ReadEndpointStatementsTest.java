@@ -0,0 +1,219 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.github.menglanyan.airline_booking.config.JpaBatchingConfig;
+import com.github.menglanyan.airline_booking.dtos.BookingDTO;
+import com.github.menglanyan.airline_booking.dtos.BookingFilter;
+import com.github.menglanyan.airline_booking.dtos.FlightDTO;
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Booking;
+import com.github.menglanyan.airline_booking.entities.Flight;
+import com.github.menglanyan.airline_booking.entities.Passenger;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.enums.BookingStatus;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.enums.FlightStatus;
+import com.github.menglanyan.airline_booking.enums.PassengerType;
+import com.github.menglanyan.airline_booking.mappers.AirportMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.BookingMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.FlightMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.PassengerMapperImpl;
+import com.github.menglanyan.airline_booking.mappers.UserMapperImpl;
+import com.github.menglanyan.airline_booking.search.FlightSearchIndex;
+import com.github.menglanyan.airline_booking.services.EmailNotificationService;
+import com.github.menglanyan.airline_booking.services.UserService;
+import com.github.menglanyan.airline_booking.utils.BookingReferenceGenerator;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+// Every read endpoint has to run the same number of statements for a few rows as for many,
+// otherwise something in the mapped object graph is loaded row by row again
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({BookingServiceImpl.class, FlightServiceImpl.class, JpaBatchingConfig.class, BookingReferenceGenerator.class,
+        BookingMapperImpl.class, FlightMapperImpl.class, AirportMapperImpl.class, UserMapperImpl.class,
+        PassengerMapperImpl.class})
+class ReadEndpointStatementsTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2030, 3, 1, 8, 0);
+
+    @Autowired private BookingServiceImpl bookingService;
+    @Autowired private FlightServiceImpl flightService;
+    @Autowired private TestEntityManager entityManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean private UserService userService;
+    @MockitoBean private EmailNotificationService emailNotificationService;
+    @MockitoBean private FlightSearchIndex flightSearchIndex;
+    @MockitoBean private ReferenceDataCache referenceDataCache;
+
+    private Role customerRole;
+    private Role pilotRole;
+    private Airport miami;
+    private Airport dallas;
+    private User pilot;
+    private User customer;
+    private int created;
+
+    @BeforeEach
+    void setup() {
+        customerRole = entityManager.persist(new Role(null, "CUSTOMER"));
+        pilotRole = entityManager.persist(new Role(null, "PILOT"));
+        miami = entityManager.persist(new Airport(null, "Miami International", City.MIAMI, Country.USA, "MIA"));
+        dallas = entityManager.persist(new Airport(null, "Dallas Fort Worth", City.DALLAS, Country.USA, "DFW"));
+        pilot = entityManager.persist(user("pilot@example.com", pilotRole));
+        customer = entityManager.persist(user("customer@example.com", customerRole));
+    }
+
+    @Test
+    void getAllBookings_runsConstantNumberOfStatements() {
+        // page with users, flights, airports and pilots joined, then passengers and user roles
+        assertStatements(3, () -> bookingService.getAllBookings(new BookingFilter(), null, 100)
+                .getData().getItems());
+    }
+
+    @Test
+    void getMyBookings_runsConstantNumberOfStatements() {
+        when(userService.currentUserId()).thenReturn(customer.getId());
+
+        assertStatements(3, () -> bookingService.getMyBookings(new BookingFilter(), null, 100)
+                .getData().getItems());
+    }
+
+    @Test
+    void getAllFlights_runsConstantNumberOfStatements() {
+        // flights with airports and pilots joined, then bookings with their users, passengers and user roles
+        assertStatements(4, () -> flightService.getAllFlights().getData());
+    }
+
+    @Test
+    void getFlightById_runsConstantNumberOfStatements() {
+        // the first statement looks up the flight id
+        assertStatements(5, () -> List.of(flightService.getFlightById(firstFlightId()).getData()));
+    }
+
+    @Test
+    void searchForFlight_runsConstantNumberOfStatements() {
+        // only the flights' own columns, the airports come from the reference data cache
+        when(referenceDataCache.findAirport("MIA")).thenReturn(Optional.of(miami));
+        when(referenceDataCache.findAirport("DFW")).thenReturn(Optional.of(dallas));
+
+        assertStatements(1, () -> flightService.searchForFlight("MIA", "DFW", FlightStatus.SCHEDULED,
+                LocalDate.from(DEPARTURE)).getData());
+    }
+
+    @Test
+    void getMyFlights_runsConstantNumberOfStatements() {
+        when(userService.currentUserHasRole("PILOT")).thenReturn(true);
+        when(userService.currentUserId()).thenReturn(pilot.getId());
+
+        assertStatements(2, () -> flightService.getMyFlights().getData());
+    }
+
+    private void assertStatements(int expected, Supplier<List<?>> call) {
+        assertEquals(expected, statementsWith(3, call), "statements with 3 flights");
+        assertEquals(expected, statementsWith(30, call), "statements with 30 flights");
+    }
+
+    // Adds flights with bookings until there are rows of each, then counts the statements of one call
+    private long statementsWith(int rows, Supplier<List<?>> call) {
+        for (int i = created; i < rows; i++) {
+            Flight flight = entityManager.persist(flight("NP" + i));
+            for (int j = 0; j < 2; j++) {
+                User user = j == 0 ? customer : entityManager.persist(user("user" + i + "@example.com",
+                        customerRole));
+                Booking booking = new Booking();
+                booking.setBookingReference("NP" + i + "-" + j);
+                booking.setUser(user);
+                booking.setFlight(flight);
+                booking.setStatus(BookingStatus.CONFIRMED);
+                booking.setBookingDate(DEPARTURE.minusDays(10));
+                for (int k = 0; k < 2; k++) {
+                    Passenger passenger = new Passenger();
+                    passenger.setFirstName("Passenger" + k);
+                    passenger.setType(PassengerType.ADULT);
+                    passenger.setBooking(booking);
+                    booking.getPassengers().add(passenger);
+                }
+                entityManager.persist(booking);
+            }
+        }
+        created = rows;
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<?> result = call.get();
+        assertFalse(result.isEmpty());
+        // the DTOs must be complete, nothing may be left to load lazily during serialization
+        result.forEach(this::assertMapped);
+
+        long statements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+        return statements;
+    }
+
+    private void assertMapped(Object dto) {
+        if (dto instanceof BookingDTO booking) {
+            assertEquals(2, booking.getPassengers().size());
+            assertNotNull(booking.getUser().getEmail());
+            assertFalse(booking.getUser().getRoles().isEmpty());
+            assertEquals("MIA", booking.getFlight().getDepartureAirport().getIataCode());
+            assertEquals("pilot@example.com", booking.getFlight().getAssignedPilot().getEmail());
+        } else if (dto instanceof FlightDTO flight) {
+            assertEquals("DFW", flight.getArrivalAirport().getIataCode());
+        }
+    }
+
+    private Long firstFlightId() {
+        return entityManager.getEntityManager()
+                .createQuery("SELECT MIN(f.id) FROM Flight f", Long.class)
+                .getSingleResult();
+    }
+
+    private Flight flight(String flightNumber) {
+        Flight flight = new Flight();
+        flight.setFlightNumber(flightNumber);
+        flight.setStatus(FlightStatus.SCHEDULED);
+        flight.setDepartureAirport(miami);
+        flight.setArrivalAirport(dallas);
+        flight.setDepartureTime(DEPARTURE);
+        flight.setArrivalTime(DEPARTURE.plusHours(6));
+        flight.setBasePrice(new BigDecimal("250.00"));
+        flight.setCapacity(180);
+        flight.setAssignedPilot(pilot);
+        return flight;
+    }
+
+    private static User user(String email, Role role) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        user.setRoles(new ArrayList<>(List.of(role)));
+        return user;
+    }
+}
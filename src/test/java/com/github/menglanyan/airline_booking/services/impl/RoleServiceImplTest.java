@@ -0,0 +1,95 @@
+package com.github.menglanyan.airline_booking.services.impl;
+
+import com.github.menglanyan.airline_booking.dtos.RoleDTO;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.entities.User;
+import com.github.menglanyan.airline_booking.enums.AuthMethod;
+import com.github.menglanyan.airline_booking.mappers.RoleMapperImpl;
+import com.github.menglanyan.airline_booking.security.CustomUserDetailsService;
+import com.github.menglanyan.airline_booking.security.TokenRevocations;
+import com.github.menglanyan.airline_booking.utils.ReferenceDataCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Import({RoleServiceImpl.class, RoleMapperImpl.class})
+class RoleServiceImplTest {
+
+    @Autowired private RoleServiceImpl roleService;
+    @Autowired private TestEntityManager entityManager;
+
+    @MockitoBean private ReferenceDataCache referenceDataCache;
+    @MockitoBean private TokenRevocations tokenRevocations;
+    @MockitoBean private CustomUserDetailsService customUserDetailsService;
+
+    private Role role;
+    private User holder;
+    private User other;
+
+    @BeforeEach
+    void setup() {
+        role = entityManager.persist(new Role(null, "DISPATCHER"));
+        Role otherRole = entityManager.persist(new Role(null, "AUDITOR"));
+        holder = entityManager.persist(user("dispatcher@example.com", role));
+        other = entityManager.persist(user("auditor@example.com", otherRole));
+    }
+
+    @Test
+    void renamingARole_revokesTheTokensOfItsHoldersOnly() {
+        RoleDTO rename = new RoleDTO();
+        rename.setId(role.getId());
+        rename.setName("Operations");
+
+        roleService.updateRole(rename);
+        entityManager.flush();
+        entityManager.clear();
+
+        User renamedHolder = entityManager.find(User.class, holder.getId());
+        assertEquals(1, renamedHolder.getTokenVersion());
+        assertNotNull(renamedHolder.getTokensRevokedAt());
+        assertEquals("OPERATIONS", renamedHolder.getRoles().get(0).getName());
+        assertEquals(0, entityManager.find(User.class, other.getId()).getTokenVersion());
+        verify(tokenRevocations).revoked(holder.getId(), 1);
+        verify(tokenRevocations, times(1)).revoked(anyLong(), anyInt());
+        verify(customUserDetailsService).flushEverywhere();
+    }
+
+    @Test
+    void savingARoleUnderItsOwnName_revokesNothing() {
+        RoleDTO same = new RoleDTO();
+        same.setId(role.getId());
+        same.setName("dispatcher");
+
+        roleService.updateRole(same);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(0, entityManager.find(User.class, holder.getId()).getTokenVersion());
+        verify(tokenRevocations, never()).revoked(anyLong(), anyInt());
+        verify(customUserDetailsService, never()).flushEverywhere();
+    }
+
+    private static User user(String email, Role role) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setProvider(AuthMethod.LOCAL);
+        user.setRoles(List.of(role));
+        user.setActive(true);
+        user.setCreatedAt(LocalDateTime.now());
+        return user;
+    }
+}
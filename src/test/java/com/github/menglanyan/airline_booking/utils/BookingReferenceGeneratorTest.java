@@ -0,0 +1,84 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingReferenceGeneratorTest {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+    @Test
+    void references_areUniqueOverTensOfMillions_acrossThreads() throws Exception {
+        int threads = 4;
+        int perThread = 5_000_000;
+
+        AtomicLong counter = new AtomicLong();
+        AtomicInteger allocations = new AtomicInteger();
+        BookingReferenceGenerator generator = new BookingReferenceGenerator(blockSize -> {
+            allocations.incrementAndGet();
+            return counter.getAndAdd(blockSize);
+        });
+
+        // references are packed back into longs, 20M strings would not fit the test heap
+        long[] packed = new long[threads * perThread];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    packed[offset + i] = pack(generator.nextReference());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Arrays.sort(packed);
+        for (int i = 1; i < packed.length; i++) {
+            assertNotEquals(packed[i - 1], packed[i], "duplicate booking reference");
+        }
+        // one database round trip per block, not per reference
+        assertTrue(allocations.get() <= packed.length / 1000 + threads);
+    }
+
+    @Test
+    void references_areDisjointFromLegacyHexReferences() {
+        BookingReferenceGenerator generator = new BookingReferenceGenerator(new AtomicLong()::getAndAdd);
+
+        for (int i = 0; i < 100_000; i++) {
+            String reference = generator.nextReference();
+            assertEquals(8, reference.length());
+            assertTrue("0123456789ABCDEF".indexOf(reference.charAt(0)) < 0, reference);
+            for (char c : reference.toCharArray()) {
+                assertTrue(ALPHABET.indexOf(c) >= 0, reference);
+            }
+        }
+    }
+
+    @Test
+    void consecutiveValues_doNotGiveConsecutiveReferences() {
+        assertNotEquals(BookingReferenceGenerator.encode(1).substring(0, 6),
+                BookingReferenceGenerator.encode(2).substring(0, 6));
+    }
+
+    private static long pack(String reference) {
+        long value = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            value = (value << 5) | ALPHABET.indexOf(reference.charAt(i));
+        }
+        return value;
+    }
+}
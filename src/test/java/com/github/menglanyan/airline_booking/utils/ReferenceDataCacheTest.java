@@ -0,0 +1,143 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import com.github.menglanyan.airline_booking.entities.Airport;
+import com.github.menglanyan.airline_booking.entities.Role;
+import com.github.menglanyan.airline_booking.enums.City;
+import com.github.menglanyan.airline_booking.enums.Country;
+import com.github.menglanyan.airline_booking.repo.AirportRepo;
+import com.github.menglanyan.airline_booking.repo.CacheFlushMarkerRepo;
+import com.github.menglanyan.airline_booking.repo.RoleRepo;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two caches on one database stand in for two app instances
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReferenceDataCacheTest {
+
+    @Autowired private RoleRepo roleRepo;
+    @Autowired private AirportRepo airportRepo;
+    @Autowired private CacheFlushMarkerRepo cacheFlushMarkerRepo;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    private final List<Object> events = new ArrayList<>();
+
+    private ReferenceDataCache instanceA;
+    private ReferenceDataCache instanceB;
+
+    @BeforeEach
+    void setup() {
+        // Other tests' rows may reference their own roles and airports, so only the ones used here are removed
+        cacheFlushMarkerRepo.deleteAll();
+        for (String code : new String[] {"QMA", "QMX", "QDF"}) {
+            airportRepo.findByIataCode(code).ifPresent(airportRepo::delete);
+        }
+        for (String name : new String[] {"TEST_CUSTOMER", "TEST_ADMIN", "TEST_PILOT"}) {
+            roleRepo.findByName(name).ifPresent(roleRepo::delete);
+        }
+        roleRepo.save(new Role(null, "TEST_CUSTOMER"));
+        airportRepo.save(new Airport(null, "Miami International", City.MIAMI, Country.USA, "QMA"));
+
+        instanceA = cache();
+        instanceB = cache();
+        instanceA.checkFlushMarker();
+        instanceB.checkFlushMarker();
+    }
+
+    @Test
+    void iataKey_packsThreeLettersOfEitherCase() {
+        assertEquals(ReferenceDataCache.iataKey("MIA"), ReferenceDataCache.iataKey("mia"));
+        assertNotEquals(ReferenceDataCache.iataKey("MIA"), ReferenceDataCache.iataKey("AIM"));
+        assertEquals(0, ReferenceDataCache.iataKey("AAA"));
+        assertEquals((25 << 10) | (25 << 5) | 25, ReferenceDataCache.iataKey("ZZZ"));
+
+        for (String invalid : new String[] {null, "", "MI", "MIAM", "M1A", "M A", "MI@", "MI[", "MIÄ"}) {
+            assertEquals(ReferenceDataCache.NO_IATA_KEY, ReferenceDataCache.iataKey(invalid), invalid);
+        }
+    }
+
+    @Test
+    void loadedRolesAndAirports_areServedWithoutQueries() {
+        statistics().clear();
+
+        assertEquals("TEST_CUSTOMER", instanceA.findRole("TEST_CUSTOMER").orElseThrow().getName());
+        assertEquals("Miami International", instanceA.findAirport("QMA").orElseThrow().getName());
+        assertEquals("QMA", instanceA.findAirport("qma").orElseThrow().getIataCode());
+
+        assertEquals(0, statistics().getPrepareStatementCount());
+    }
+
+    @Test
+    void unknownNamesAndCodes_fallBackToTheDatabase() {
+        assertTrue(instanceA.findRole("TEST_ADMIN").isEmpty());
+        assertTrue(instanceA.findAirport("QDF").isEmpty());
+
+        // Added by an instance that hasn't told anyone yet
+        roleRepo.save(new Role(null, "TEST_ADMIN"));
+        airportRepo.save(new Airport(null, "Dallas Fort Worth", City.DALLAS, Country.USA, "QDF"));
+
+        assertEquals("TEST_ADMIN", instanceA.findRole("TEST_ADMIN").orElseThrow().getName());
+        assertEquals("QDF", instanceA.findAirport("QDF").orElseThrow().getIataCode());
+    }
+
+    @Test
+    void changes_reloadThisInstanceRightAway_andOthersOnTheirNextCheck() {
+        Airport miami = airportRepo.findByIataCode("QMA").orElseThrow();
+        miami.setIataCode("QMX");
+        airportRepo.save(miami);
+
+        instanceA.changed();
+
+        assertTrue(instanceA.findAirport("QMX").isPresent());
+        assertTrue(instanceA.findAirport("QMA").isEmpty());
+        // Still the old code until it checks the flush marker
+        assertTrue(instanceB.findAirport("QMA").isPresent());
+
+        instanceB.checkFlushMarker();
+
+        assertTrue(instanceB.findAirport("QMA").isEmpty());
+        assertEquals(miami.getId(), instanceB.findAirport("QMX").orElseThrow().getId());
+        // Once per instance, each as it reloads
+        assertEquals(List.of(new ReferenceDataCache.AirportCodesChanged(Map.of("QMA", "QMX")),
+                new ReferenceDataCache.AirportCodesChanged(Map.of("QMA", "QMX"))), events);
+    }
+
+    @Test
+    void changesInsideATransaction_reloadOnceItCommits() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            roleRepo.save(new Role(null, "TEST_PILOT"));
+            instanceA.changed();
+            assertEquals(0L, cacheFlushMarkerRepo.findGeneration(ReferenceDataCache.CACHE_NAME).orElse(0L));
+        });
+
+        statistics().clear();
+        assertEquals("TEST_PILOT", instanceA.findRole("TEST_PILOT").orElseThrow().getName());
+        assertEquals(0, statistics().getPrepareStatementCount());
+        assertEquals(1L, cacheFlushMarkerRepo.findGeneration(ReferenceDataCache.CACHE_NAME).orElseThrow());
+    }
+
+    private ReferenceDataCache cache() {
+        return new ReferenceDataCache(roleRepo, airportRepo, new CacheFlushMarkers(cacheFlushMarkerRepo,
+                transactionManager), transactionManager, events::add);
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.menglanyan.airline_booking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBackoffTest {
+
+    @Test
+    void delay_doublesPerAttempt_andStopsAtTheCap() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofSeconds(30), Duration.ofHours(1), new Random(42));
+
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long ceiling = Math.min(30_000L << (attempt - 1), 3_600_000L);
+            long delay = backoff.delayAfter(attempt).toMillis();
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling, "attempt " + attempt + ": " + delay);
+        }
+        // Far past the cap, the shift must not overflow into short or negative delays
+        assertTrue(backoff.delayAfter(1000).toMillis() >= 1_800_000);
+    }
+
+    @Test
+    void delays_ofMessagesThatFailedTogether_spreadOut() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofSeconds(30), Duration.ofHours(1));
+
+        long distinct = IntStream.range(0, 100)
+                .mapToObj(i -> backoff.delayAfter(3))
+                .distinct()
+                .count();
+
+        assertTrue(distinct > 50, distinct + " distinct delays");
+    }
+
+    @Test
+    void rejectsAMaxDelayBelowTheBaseDelay() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RetryBackoff(Duration.ofMinutes(1), Duration.ofSeconds(1)));
+    }
+}